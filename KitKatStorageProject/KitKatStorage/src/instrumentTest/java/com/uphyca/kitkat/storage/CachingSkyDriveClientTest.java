@@ -0,0 +1,162 @@
+package com.uphyca.kitkat.storage;
+
+import static com.uphyca.kitkat.storage.FakeSkyDriveClient.newFile;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.impl.CachingSkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+public class CachingSkyDriveClientTest extends AndroidTestCase {
+
+    private List<Collection<String>> mRequested;
+    private List<String> mCached;
+    private List<Runnable> mRevalidations;
+    private List<String> mInvalidated;
+    private SkyDriveClient mClient;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRequested = new ArrayList<>();
+        mCached = new ArrayList<>();
+        mRevalidations = new ArrayList<>();
+        mInvalidated = new ArrayList<>();
+        // "missing" は見つからない
+        final SkyDriveClient delegate = new FakeSkyDriveClient() {
+            @Override
+            public SkyDriveObject[] getAll(Collection<String> documentIds) {
+                mRequested.add(new ArrayList<>(documentIds));
+                if (documentIds.contains("error")) {
+                    throw new IllegalStateException("error");
+                }
+                final List<SkyDriveObject> documents = new ArrayList<>();
+                for (String each : documentIds) {
+                    documents.add(each.equals("missing") ? null : newFile(each));
+                }
+                return documents.toArray(new SkyDriveObject[documents.size()]);
+            }
+
+            @Override
+            public String mkdir(String path, String name) {
+                return "folder.new";
+            }
+        };
+        final MetadataCache metadataCache = new FakeMetadataCache();
+        mClient = new CachingSkyDriveClient(delegate, metadataCache, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mRevalidations.add(command);
+            }
+        });
+    }
+
+    public void testThatGetAllShouldMergeCachedAndFetchedInOrder() throws Exception {
+        final SkyDriveObject[] documents = mClient.getAll(Arrays.asList("file.1", "cached.2", "file.3", "cached.stale.4"));
+
+        assertThat(documents).hasSize(4);
+        assertThat(documents[0].getId()).isEqualTo("file.1");
+        assertThat(documents[1].getId()).isEqualTo("cached.2");
+        assertThat(documents[2].getId()).isEqualTo("file.3");
+        assertThat(documents[3].getId()).isEqualTo("cached.stale.4");
+        // 無いものだけを一度にまとめて取得する
+        assertThat(mRequested).hasSize(1);
+        assertThat(mRequested.get(0)).containsExactly("file.1", "file.3");
+        assertThat(mCached).containsExactly("file.1", "file.3");
+        assertThat(mRevalidations).hasSize(1);
+    }
+
+    public void testThatGetAllShouldNotFetchWhenAllAreCached() throws Exception {
+        final SkyDriveObject[] documents = mClient.getAll(Arrays.asList("cached.1", "cached.2"));
+
+        assertThat(documents[0].getId()).isEqualTo("cached.1");
+        assertThat(documents[1].getId()).isEqualTo("cached.2");
+        assertThat(mRequested).isEmpty();
+    }
+
+    public void testThatGetAllShouldLeaveNullForMissingIds() throws Exception {
+        final SkyDriveObject[] documents = mClient.getAll(Arrays.asList("missing", "cached.1", "file.2"));
+
+        assertThat(documents[0]).isNull();
+        assertThat(documents[1].getId()).isEqualTo("cached.1");
+        assertThat(documents[2].getId()).isEqualTo("file.2");
+        assertThat(mCached).containsExactly("file.2");
+    }
+
+    public void testThatGetAllShouldPropagateDelegateFailures() throws Exception {
+        try {
+            mClient.getAll(Arrays.asList("cached.1", "error"));
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertThat(mCached).isEmpty();
+    }
+
+    public void testThatWritingShouldInvalidateOnlyTheGivenFolder() throws Exception {
+        // 別名の解決はキャッシュに任せるので、 get(String) でネットワークアクセスしない
+        mClient.mkdir("me/skydrive", "a");
+        assertThat(mInvalidated).containsExactly("me/skydrive");
+
+        mInvalidated.clear();
+        mClient.mkdir("folder.other", "b");
+        assertThat(mInvalidated).containsExactly("folder.other");
+    }
+
+    /**
+     * "cached." で始まるIDはキャッシュにあり、"cached.stale." で始まるIDは古い。
+     */
+    private class FakeMetadataCache implements MetadataCache {
+
+        @Override
+        public Entry<SkyDriveObject> getDocument(String documentId) {
+            if (!documentId.startsWith("cached.")) {
+                return null;
+            }
+            return new Entry<>(newFile(documentId), 0L, !documentId.startsWith("cached.stale."));
+        }
+
+        @Override
+        public Entry<SkyDriveObject[]> getChildren(String parentId) {
+            return null;
+        }
+
+        @Override
+        public void putDocument(SkyDriveObject document) {
+            mCached.add(document.getId());
+        }
+
+        @Override
+        public void putChildren(String parentId, SkyDriveObject[] children) {
+        }
+
+        @Override
+        public void touchChildren(String parentId) {
+        }
+
+        @Override
+        public void invalidateChildren(String parentId) {
+            mInvalidated.add(parentId);
+        }
+
+        @Override
+        public void removeDocument(String documentId) {
+        }
+
+        @Override
+        public void addOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        }
+
+        @Override
+        public void removeOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.uphyca.kitkat.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.app.Activity;
+import android.os.CancellationSignal;
+
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadCheckpoint;
+import com.uphyca.kitkat.storage.internal.impl.LiveSdkSkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveFile;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * テスト用の SkyDriveClient 。全てのメソッドは UnsupportedOperationException を投げるので、テストで使うものだけをオーバーライドする。
+ */
+public class FakeSkyDriveClient implements SkyDriveClient {
+
+    /**
+     * @param documentId ID
+     * @return サイズが1バイトのファイル
+     */
+    public static SkyDriveObject newFile(String documentId) {
+        return newFile(documentId, 1L);
+    }
+
+    /**
+     * @param documentId ID
+     * @param size サイズ
+     * @return ファイル
+     */
+    public static SkyDriveObject newFile(String documentId, long size) {
+        try {
+            return new SkyDriveFile(new JSONObject("{\"id\": \"" + documentId + "\", \"type\": \"file\", \"size\": " + size + ", \"updated_time\": \"2013-11-01T00:00:00+0000\"}"));
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Override
+    public void initializeIfNecessary() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void login(Activity activity, LiveSdkSkyDriveClient.SkyDriveAuthListener listener) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SkyDriveObject[] get(String documentId) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SkyDriveObject[] getAll(Collection<String> documentIds) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SkyDriveObject[] list(String folderId) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SkyDriveObject[] list(String folderId, int offset, int limit) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public File download(String documentId) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public File download(String documentId, CancellationSignal signal) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream openStream(String documentId, CancellationSignal signal) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream openStream(String documentId, long offset, CancellationSignal signal) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public InputStream openSource(String source, CancellationSignal signal) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String upload(String path, String name, File file) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String upload(String path, String name, File file, UploadCheckpoint checkpoint) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String mkdir(String path, String name) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String touch(String path, String name) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+}
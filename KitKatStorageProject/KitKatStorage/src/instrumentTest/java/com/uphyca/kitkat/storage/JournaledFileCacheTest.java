@@ -0,0 +1,123 @@
+package com.uphyca.kitkat.storage;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.FileCache;
+import com.uphyca.kitkat.storage.internal.impl.JournaledFileCache;
+
+public class JournaledFileCacheTest extends AndroidTestCase {
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "JournaledFileCacheTest");
+        deleteRecursively(mDirectory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteRecursively(mDirectory);
+        super.tearDown();
+    }
+
+    public void testThatCommittedEntryShouldBeReturned() throws Exception {
+        final FileCache cache = new JournaledFileCache(mDirectory, 1024);
+        put(cache, "a", 10);
+
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("a").length()).isEqualTo(10);
+        assertThat(cache.get("b")).isNull();
+    }
+
+    public void testThatAbortedEntryShouldNotBeReturned() throws Exception {
+        final FileCache cache = new JournaledFileCache(mDirectory, 1024);
+        final FileCache.Editor editor = cache.edit("a");
+        final OutputStream out = editor.newOutputStream();
+        out.write(new byte[10]);
+        out.close();
+        editor.abort();
+
+        assertThat(cache.get("a")).isNull();
+    }
+
+    public void testThatLeastRecentlyUsedEntryShouldBeEvicted() throws Exception {
+        final FileCache cache = new JournaledFileCache(mDirectory, 25);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        cache.get("a");
+        put(cache, "c", 10);
+
+        assertThat(cache.get("a")).isNotNull();
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("c")).isNotNull();
+    }
+
+    public void testThatEntriesShouldSurviveReopen() throws Exception {
+        final FileCache cache = new JournaledFileCache(mDirectory, 25);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        cache.get("a");
+        // 書きかけのまま終了した
+        cache.edit("c")
+             .newOutputStream()
+             .close();
+
+        final FileCache reopened = new JournaledFileCache(mDirectory, 25);
+        put(reopened, "d", 10);
+
+        assertThat(reopened.get("a")).isNotNull();
+        assertThat(reopened.get("b")).isNull();
+        assertThat(reopened.get("c")).isNull();
+        assertThat(reopened.get("d")).isNotNull();
+    }
+
+    public void testThatSuspendedEntryShouldResumeAfterReopen() throws Exception {
+        final FileCache cache = new JournaledFileCache(mDirectory, 100);
+        final FileCache.Editor editor = cache.edit("a");
+        final OutputStream out = editor.newOutputStream();
+        out.write(new byte[10]);
+        out.close();
+        editor.suspend();
+        assertThat(cache.get("a")).isNull();
+
+        final FileCache reopened = new JournaledFileCache(mDirectory, 100);
+        final FileCache.Editor resumed = reopened.edit("a");
+        assertThat(resumed.getLength()).isEqualTo(10L);
+        final OutputStream rest = resumed.newAppendingOutputStream();
+        rest.write(new byte[5]);
+        rest.close();
+        resumed.commit();
+
+        assertThat(reopened.get("a")
+                           .length()).isEqualTo(15L);
+    }
+
+    private static void put(FileCache cache, String key, int length) throws IOException {
+        final FileCache.Editor editor = cache.edit(key);
+        final OutputStream out = editor.newOutputStream();
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+        editor.commit();
+    }
+
+    private static void deleteRecursively(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File each : children) {
+                deleteRecursively(each);
+            }
+        }
+        file.delete();
+    }
+}
@@ -10,6 +10,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.Executors;
 
 import android.annotation.TargetApi;
 import android.os.AsyncTask;
@@ -17,6 +18,8 @@ import android.os.Build;
 import android.os.ParcelFileDescriptor;
 import android.test.AndroidTestCase;
 
+import com.uphyca.kitkat.storage.provider.StreamPump;
+
 /**
  * Created by masui on 11/8/13.
  */
@@ -60,4 +63,81 @@ public class ParcelFileDescriptorTest extends AndroidTestCase {
 
         assertThat(out.toString()).isEqualTo(givenData);
     }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void testThatStreamPumpShouldDeliverDataThroughReliablePipe() throws Exception {
+        final String givenData = "Hello, StreamPump.";
+        final InputStream network = new SlowInputStream(givenData.getBytes(), -1);
+        final ParcelFileDescriptor source = new StreamPump(Executors.newSingleThreadExecutor()).open(network);
+
+        final OutputStream out = new ByteArrayOutputStream();
+        drain(new FileInputStream(source.getFileDescriptor()), out);
+        source.checkError();
+        source.close();
+
+        assertThat(out.toString()).isEqualTo(givenData);
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    public void testThatStreamPumpShouldReportErrorToReader() throws Exception {
+        final String givenData = "Hello, StreamPump.";
+        final InputStream network = new SlowInputStream(givenData.getBytes(), 5);
+        final ParcelFileDescriptor source = new StreamPump(Executors.newSingleThreadExecutor()).open(network);
+
+        final OutputStream out = new ByteArrayOutputStream();
+        drain(new FileInputStream(source.getFileDescriptor()), out);
+        try {
+            source.checkError();
+            fail();
+        } catch (IOException expected) {
+        } finally {
+            source.close();
+        }
+
+        assertThat(out.toString()).isEqualTo(givenData.substring(0, 5));
+    }
+
+    private static void drain(InputStream in, OutputStream out) throws IOException {
+        final byte[] buffer = new byte[8192];
+        for (int count; (count = in.read(buffer)) > -1;) {
+            out.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Simulates network stream which delivers one byte at a time and optionally fails.
+     */
+    private static class SlowInputStream extends InputStream {
+
+        private final byte[] mData;
+        private final int mFailAt;
+        private int mPos;
+
+        SlowInputStream(byte[] data, int failAt) {
+            mData = data;
+            mFailAt = failAt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mPos == mFailAt) {
+                throw new IOException("Connection reset");
+            }
+            try {
+                Thread.sleep(10L);
+            } catch (InterruptedException ignore) {
+            }
+            return mPos < mData.length ? mData[mPos++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final int c = read();
+            if (c == -1) {
+                return -1;
+            }
+            b[off] = (byte) c;
+            return 1;
+        }
+    }
 }
@@ -0,0 +1,69 @@
+package com.uphyca.kitkat.storage;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONObject;
+
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveObjectReader;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveFile;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveFolder;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+import com.uphyca.kitkat.storage.skydrive.SkyDrivePhoto;
+
+public class SkyDriveObjectReaderTest extends AndroidTestCase {
+
+    public void testThatListShouldBeDecoded() throws Exception {
+        final SkyDriveObject[] objects = SkyDriveObjectReader.readList(stream("{\"data\": [" //
+                + "{\"id\": \"folder.1\", \"name\": \"Documents\", \"type\": \"folder\", \"count\": 3}," //
+                + "{\"id\": \"file.1\", \"name\": \"a.txt\", \"type\": \"file\", \"size\": 4294967296, \"description\": null," //
+                + " \"from\": {\"name\": \"masui\", \"id\": \"user.1\"}}" //
+                + "], \"paging\": {}}"));
+
+        assertThat(objects).hasSize(2);
+        assertThat(objects[0]).isInstanceOf(SkyDriveFolder.class);
+        assertThat(objects[0].getId()).isEqualTo("folder.1");
+        assertThat(objects[1]).isInstanceOf(SkyDriveFile.class);
+        assertThat(objects[1].getName()).isEqualTo("a.txt");
+        assertThat(((SkyDriveFile) objects[1]).getSize()).isEqualTo(4294967296L);
+        assertThat(objects[1].getDescription()).isNull();
+        assertThat(objects[1].getFrom()
+                             .getName()).isEqualTo("masui");
+    }
+
+    public void testThatPhotoShouldSurviveJsonRoundTrip() throws Exception {
+        final SkyDriveObject[] objects = SkyDriveObjectReader.readList(stream("{\"data\": [" //
+                + "{\"id\": \"file.2\", \"name\": \"a.jpg\", \"type\": \"photo\", \"size\": 1024," //
+                + " \"updated_time\": \"2013-11-02T12:34:56+0900\", \"when_taken\": null," //
+                + " \"images\": [{\"height\": 96, \"width\": 128, \"source\": \"http://example.com/a\", \"type\": \"thumbnail\"}]}" //
+                + "]}"));
+
+        final SkyDrivePhoto photo = (SkyDrivePhoto) SkyDriveObject.create(new JSONObject(objects[0].toJson()
+                                                                                                   .toString()));
+        assertThat(photo.getUpdatedAt()).isEqualTo(1383363296000L);
+        assertThat(photo.getUpdatedTime()).isEqualTo("2013-11-02T03:34:56+0000");
+        assertThat(photo.getWhenTaken()).isNull();
+        assertThat(photo.getSize()).isEqualTo(1024L);
+        assertThat(photo.getImages()).hasSize(1);
+        assertThat(photo.getImages()[0].getSource()).isEqualTo("http://example.com/a");
+        assertThat(photo.getFrom()).isNull();
+    }
+
+    public void testThatErrorShouldBeThrown() throws Exception {
+        try {
+            SkyDriveObjectReader.readList(stream("{\"error\": {\"code\": \"resource_not_found\", \"message\": \"not found\"}}"));
+            fail();
+        } catch (IOException expected) {
+            assertThat(expected.getMessage()).isEqualTo("not found");
+        }
+    }
+
+    private static InputStream stream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
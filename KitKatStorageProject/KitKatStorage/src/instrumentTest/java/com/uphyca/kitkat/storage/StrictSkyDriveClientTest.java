@@ -0,0 +1,179 @@
+package com.uphyca.kitkat.storage;
+
+import static com.uphyca.kitkat.storage.FakeSkyDriveClient.newFile;
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.CancellationSignal;
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.impl.StrictSkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+public class StrictSkyDriveClientTest extends AndroidTestCase {
+
+    private static final long TIMEOUT = 1000L;
+
+    private ExecutorService mMetadataExecutor;
+    private ExecutorService mTransferExecutor;
+    private AtomicInteger mRunning;
+    private AtomicInteger mMaxRunning;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mMetadataExecutor = Executors.newFixedThreadPool(4);
+        mTransferExecutor = Executors.newSingleThreadExecutor();
+        mRunning = new AtomicInteger();
+        mMaxRunning = new AtomicInteger();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mMetadataExecutor.shutdownNow();
+        mTransferExecutor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testThatGetAllShouldKeepTheOrderOfIds() throws Exception {
+        // 後ろのIDほど早く返す
+        final SkyDriveObject[] documents = newClient(3).getAll(Arrays.asList("file.40", "file.30", "file.20", "file.10", "file.0"));
+
+        assertThat(documents).hasSize(5);
+        assertThat(documents[0].getId()).isEqualTo("file.40");
+        assertThat(documents[1].getId()).isEqualTo("file.30");
+        assertThat(documents[2].getId()).isEqualTo("file.20");
+        assertThat(documents[3].getId()).isEqualTo("file.10");
+        assertThat(documents[4].getId()).isEqualTo("file.0");
+        assertThat(mMaxRunning.get()).isLessThanOrEqualTo(3);
+    }
+
+    public void testThatGetAllShouldLeaveNullForMissingIds() throws Exception {
+        final SkyDriveObject[] documents = newClient(3).getAll(Arrays.asList("file.0", "missing", "file.10"));
+
+        assertThat(documents).hasSize(3);
+        assertThat(documents[0].getId()).isEqualTo("file.0");
+        assertThat(documents[1]).isNull();
+        assertThat(documents[2].getId()).isEqualTo("file.10");
+    }
+
+    public void testThatGetAllShouldLeaveNullForFailedIdsWithoutThrowing() throws Exception {
+        final SkyDriveObject[] documents = newClient(3).getAll(Arrays.asList("error", "file.0", "error", "file.10"));
+
+        assertThat(documents).hasSize(4);
+        assertThat(documents[0]).isNull();
+        assertThat(documents[1].getId()).isEqualTo("file.0");
+        assertThat(documents[2]).isNull();
+        assertThat(documents[3].getId()).isEqualTo("file.10");
+    }
+
+    public void testThatGetAllShouldGiveUpAfterTimeout() throws Exception {
+        final long start = System.currentTimeMillis();
+        final SkyDriveObject[] documents = newClient(1).getAll(Arrays.asList("file.0", "file.10000", "file.0"));
+
+        assertThat(System.currentTimeMillis() - start).isLessThan(10000L);
+        assertThat(documents[0].getId()).isEqualTo("file.0");
+        assertThat(documents[1]).isNull();
+        assertThat(documents[2]).isNull();
+    }
+
+    public void testThatStreamOpenedAfterTimeoutShouldBeClosed() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        final SkyDriveClient delegate = new FakeSkyDriveClient() {
+            @Override
+            public InputStream openStream(String documentId, CancellationSignal signal) {
+                // 割り込みを無視して、タイムアウトした後で開ける
+                sleepUninterruptibly(TIMEOUT * 2);
+                return new ByteArrayInputStream(new byte[1]) {
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                };
+            }
+        };
+        try {
+            new StrictSkyDriveClient(delegate, mMetadataExecutor, mTransferExecutor, TIMEOUT, TIMEOUT, 1).openStream("file.1", new CancellationSignal());
+            fail();
+        } catch (InterruptedIOException expected) {
+        }
+        assertThat(closed.await(TIMEOUT * 4, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    public void testThatCallersCancelListenerShouldBeKept() throws Exception {
+        final SkyDriveClient delegate = new FakeSkyDriveClient() {
+            @Override
+            public InputStream openStream(String documentId, CancellationSignal signal) {
+                return new ByteArrayInputStream(new byte[1]);
+            }
+        };
+        final CancellationSignal signal = new CancellationSignal();
+        final AtomicInteger canceled = new AtomicInteger();
+        signal.setOnCancelListener(new CancellationSignal.OnCancelListener() {
+            @Override
+            public void onCancel() {
+                canceled.incrementAndGet();
+            }
+        });
+        new StrictSkyDriveClient(delegate, mMetadataExecutor, mTransferExecutor, TIMEOUT, TIMEOUT, 1).openStream("file.1", signal)
+                                                                                                       .close();
+        signal.cancel();
+
+        assertThat(canceled.get()).isEqualTo(1);
+    }
+
+    private static void sleepUninterruptibly(long millis) {
+        final long deadline = System.currentTimeMillis() + millis;
+        for (long remaining = millis; remaining > 0L; remaining = deadline - System.currentTimeMillis()) {
+            try {
+                Thread.sleep(remaining);
+            } catch (InterruptedException ignore) {
+            }
+        }
+    }
+
+    /**
+     * get(String) だけを実装した SkyDriveClient を使う。
+     * "file.<ミリ秒>" はその時間だけ待ってから返し、"missing" は見つからず、"error" は失敗する。
+     */
+    private SkyDriveClient newClient(int maxFanOut) {
+        final SkyDriveClient delegate = new FakeSkyDriveClient() {
+            @Override
+            public SkyDriveObject[] get(String documentId) {
+                final int running = mRunning.incrementAndGet();
+                try {
+                    synchronized (mMaxRunning) {
+                        mMaxRunning.set(Math.max(mMaxRunning.get(), running));
+                    }
+                    if (documentId.equals("missing")) {
+                        return new SkyDriveObject[0];
+                    }
+                    if (documentId.equals("error")) {
+                        throw new IllegalStateException(documentId);
+                    }
+                    try {
+                        Thread.sleep(Long.parseLong(documentId.substring("file.".length())));
+                    } catch (InterruptedException e) {
+                        return new SkyDriveObject[0];
+                    }
+                    return new SkyDriveObject[] {
+                        newFile(documentId)
+                    };
+                } finally {
+                    mRunning.decrementAndGet();
+                }
+            }
+        };
+        return new StrictSkyDriveClient(delegate, mMetadataExecutor, mTransferExecutor, TIMEOUT, TIMEOUT, maxFanOut);
+    }
+}
@@ -0,0 +1,38 @@
+package com.uphyca.kitkat.storage.internal.impl;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import org.json.JSONObject;
+
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveFile;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+public class FolderAliasesTest extends AndroidTestCase {
+
+    public void testThatAliasShouldResolveToTheParentOfChildren() throws Exception {
+        assertThat(FolderAliases.resolve("me/skydrive", new SkyDriveObject[] {
+                newFile("file.1", "folder.root"), //
+                newFile("file.2", "folder.root"), //
+        })).isEqualTo("folder.root");
+    }
+
+    public void testThatRealIdShouldBeKept() throws Exception {
+        assertThat(FolderAliases.resolve("folder.root", new SkyDriveObject[] {
+            newFile("file.1", "folder.root")
+        })).isEqualTo("folder.root");
+    }
+
+    public void testThatUnknownParentShouldKeepTheGivenId() throws Exception {
+        assertThat(FolderAliases.resolve("me/skydrive", new SkyDriveObject[0])).isEqualTo("me/skydrive");
+        assertThat(FolderAliases.resolve("me/skydrive", new SkyDriveObject[] {
+                newFile("file.1", "folder.a"), //
+                newFile("file.2", "folder.b"), //
+        })).isEqualTo("me/skydrive");
+    }
+
+    private static SkyDriveObject newFile(String documentId, String parentId) throws Exception {
+        return new SkyDriveFile(new JSONObject("{\"id\": \"" + documentId + "\", \"parent_id\": \"" + parentId + "\", \"type\": \"file\", \"size\": 1}"));
+    }
+}
@@ -0,0 +1,26 @@
+package com.uphyca.kitkat.storage.internal.impl;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.test.AndroidTestCase;
+
+public class SQLiteSearchIndexTest extends AndroidTestCase {
+
+    public void testThatEachTermShouldBeAPrefixPhrase() throws Exception {
+        assertThat(SQLiteSearchIndex.toMatchExpression("  report  final ")).isEqualTo("\"report*\" \"final*\"");
+    }
+
+    public void testThatOperatorsShouldBeQuoted() throws Exception {
+        assertThat(SQLiteSearchIndex.toMatchExpression("a OR -b NEAR name:c")).isEqualTo("\"a*\" \"OR*\" \"-b*\" \"NEAR*\" \"name:c*\"");
+    }
+
+    public void testThatQuotesShouldSeparateTokensInsideThePhrase() throws Exception {
+        assertThat(SQLiteSearchIndex.toMatchExpression("say\"hi\"")).isEqualTo("\"say hi*\"");
+        assertThat(SQLiteSearchIndex.toMatchExpression("\"")).isNull();
+    }
+
+    public void testThatEmptyQueryShouldBeNull() throws Exception {
+        assertThat(SQLiteSearchIndex.toMatchExpression(null)).isNull();
+        assertThat(SQLiteSearchIndex.toMatchExpression("   ")).isNull();
+    }
+}
@@ -0,0 +1,107 @@
+package com.uphyca.kitkat.storage.provider;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.FileCache;
+
+public class CacheFillingInputStreamTest extends AndroidTestCase {
+
+    public void testThatCompleteContentShouldBeCommitted() throws Exception {
+        final FakeEditor editor = new FakeEditor(0);
+        readFully(new CacheFillingInputStream(new ByteArrayInputStream(new byte[10]), editor, false, 10L));
+
+        assertThat(editor.mResult).isEqualTo("commit");
+        assertThat(editor.mOut.size()).isEqualTo(10);
+    }
+
+    public void testThatTruncatedContentShouldBeSuspended() throws Exception {
+        // 接続が切れても例外にならずに終わった場合
+        final FakeEditor editor = new FakeEditor(0);
+        readFully(new CacheFillingInputStream(new ByteArrayInputStream(new byte[7]), editor, false, 10L));
+
+        assertThat(editor.mResult).isEqualTo("suspend");
+    }
+
+    public void testThatAppendedContentShouldCountTheRemainingPart() throws Exception {
+        final FakeEditor editor = new FakeEditor(4);
+        readFully(new CacheFillingInputStream(new ByteArrayInputStream(new byte[6]), editor, true, 10L));
+
+        assertThat(editor.mResult).isEqualTo("commit");
+    }
+
+    public void testThatLongerContentShouldBeAborted() throws Exception {
+        final FakeEditor editor = new FakeEditor(0);
+        readFully(new CacheFillingInputStream(new ByteArrayInputStream(new byte[11]), editor, false, 10L));
+
+        assertThat(editor.mResult).isEqualTo("abort");
+    }
+
+    private static void readFully(InputStream in) throws IOException {
+        try {
+            final byte[] buf = new byte[3];
+            while (in.read(buf) != -1) {
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static class FakeEditor implements FileCache.Editor {
+
+        private final long mRemaining;
+        final ByteArrayOutputStream mOut = new ByteArrayOutputStream();
+        String mResult;
+
+        FakeEditor(long remaining) {
+            mRemaining = remaining;
+        }
+
+        @Override
+        public long getLength() {
+            return mRemaining;
+        }
+
+        @Override
+        public InputStream newInputStream() {
+            return new ByteArrayInputStream(new byte[(int) mRemaining]);
+        }
+
+        @Override
+        public OutputStream newOutputStream() {
+            return mOut;
+        }
+
+        @Override
+        public OutputStream newAppendingOutputStream() {
+            return mOut;
+        }
+
+        @Override
+        public void commit() {
+            finish("commit");
+        }
+
+        @Override
+        public void abort() {
+            finish("abort");
+        }
+
+        @Override
+        public void suspend() {
+            finish("suspend");
+        }
+
+        private void finish(String result) {
+            assertNull(mResult);
+            mResult = result;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.uphyca.kitkat.storage.provider;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+import android.provider.DocumentsContract;
+import android.test.AndroidTestCase;
+
+import com.uphyca.kitkat.storage.internal.DocumentsColumnMapper;
+
+public class DocumentsProjectionTest extends AndroidTestCase {
+
+    public void testThatPinnedShouldBeLeftForTheProvider() throws Exception {
+        final DocumentsProjection columns = DocumentsProjection.compile(new String[] {
+                DocumentsContract.Document.COLUMN_FLAGS, //
+                SkyDriveContract.COLUMN_PINNED, //
+        });
+
+        assertThat(columns.getColumns()[0]).isEqualTo(DocumentsColumnMapper.INDEX_FLAGS);
+        assertThat(columns.getColumns()[1]).isEqualTo(-1);
+        assertThat(columns.getPinnedPosition()).isEqualTo(1);
+    }
+
+    public void testThatPinnedShouldNotBeReturnedUnlessRequested() throws Exception {
+        final DocumentsProjection columns = DocumentsProjection.compile(new String[] {
+            DocumentsContract.Document.COLUMN_FLAGS
+        });
+
+        assertThat(columns.getPinnedPosition()).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * ドキュメントにアクセスした履歴を保存するためのインターフェイス。
+ * 件数には上限があり、超えた場合は古いものから削除される。
+ *
+ * @author masui@uphyca.com
+ */
+public interface AccessLog {
+
+    /**
+     * ドキュメントにアクセスしたことを記録する。
+     *
+     * @param documentId ID
+     */
+    void record(String documentId);
+
+    /**
+     * ドキュメントを履歴から削除する。
+     *
+     * @param documentId ID
+     */
+    void remove(String documentId);
+
+    /**
+     * 最近アクセスしたドキュメントを新しい順に返す。
+     * メタ情報がローカルに無いドキュメントは含まれない。
+     *
+     * @param limit 最大件数
+     * @return 最近アクセスしたドキュメント。結果がnullになることはない
+     */
+    SkyDriveObject[] getRecentDocuments(int limit);
+}
@@ -25,6 +25,56 @@ import android.provider.DocumentsContract;
  */
 public interface DocumentsColumnMapper<T> {
 
+    /**
+     * {@link #mapRow(Object, Object[])} が書き込む位置。
+     */
+    int INDEX_DOCUMENT_ID = 0;
+    int INDEX_MIME_TYPE = 1;
+    int INDEX_DISPLAY_NAME = 2;
+    int INDEX_SUMMARY = 3;
+    int INDEX_LAST_MODIFIED = 4;
+    int INDEX_ICON = 5;
+    int INDEX_FLAGS = 6;
+    int INDEX_SIZE = 7;
+
+    /**
+     * {@link #mapRow(Object, Object[])} が書き込むカラムの数。
+     */
+    int COLUMN_COUNT = 8;
+
+    /**
+     * {@link #mapRow(Object, Object[])} が書き込むカラムの名前。添字はINDEX_*と対応する。
+     */
+    String[] COLUMNS = new String[] {
+            DocumentsContract.Document.COLUMN_DOCUMENT_ID, //
+            DocumentsContract.Document.COLUMN_MIME_TYPE, //
+            DocumentsContract.Document.COLUMN_DISPLAY_NAME, //
+            DocumentsContract.Document.COLUMN_SUMMARY, //
+            DocumentsContract.Document.COLUMN_LAST_MODIFIED, //
+            DocumentsContract.Document.COLUMN_ICON, //
+            DocumentsContract.Document.COLUMN_FLAGS, //
+            DocumentsContract.Document.COLUMN_SIZE, //
+    };
+
+    /**
+     * 全てのカラムを一度に計算して、INDEX_*の位置に書き込む。
+     * 個別のmapメソッドを全て呼ぶのと同じ結果になるが、共通の計算は一度しかしない。
+     *
+     * @param source a source
+     * @param row 書き込み先。長さは {@link #COLUMN_COUNT} 以上
+     */
+    void mapRow(T source, Object[] row);
+
+    /**
+     * 指定のカラムだけを計算して、row[i] に columns[i] のカラムの値を書き込む。
+     * INDEX_*のどれでもない位置にはnullを書き込む。
+     *
+     * @param source a source
+     * @param columns 計算するカラムのINDEX_*
+     * @param row 書き込み先。長さは columns 以上
+     */
+    void mapRow(T source, int[] columns, Object[] row);
+
     /**
      * @see DocumentsContract.Document#COLUMN_DOCUMENT_ID
      *      <p>
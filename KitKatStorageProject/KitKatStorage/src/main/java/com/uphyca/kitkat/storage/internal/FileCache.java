@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * ダウンロードしたファイルの内容をローカルに保持するためのインターフェイス。
+ * キーには内容が変われば変わる値(IDと更新日時とサイズなど)を使うので、キャッシュされた内容を再検証する必要はない。
+ * 容量を超えた場合は、最近使われていないものから削除される。
+ * 書き込みを中断した内容は残しておき、次に同じキーに書き込む時に続きから書ける。
+ *
+ * @author masui@uphyca.com
+ */
+public interface FileCache {
+
+    /**
+     * キャッシュに書き込むためのインターフェイス。
+     * #commit() か #abort() 、 #suspend() のどれかを必ず一度だけ呼ばなければならない。
+     */
+    public interface Editor {
+
+        /**
+         * @return 前回中断した書き込みで残っている内容のバイト数。無ければ0
+         */
+        long getLength();
+
+        /**
+         * 前回中断した書き込みで残っている内容を読む。続きを書き込む前に読み終えなければならない。
+         *
+         * @return 残っている内容のストリーム
+         * @throws IOException ストリームを開けなかった場合に発生する
+         */
+        InputStream newInputStream() throws IOException;
+
+        /**
+         * 残っている内容を捨てて、最初から書き込む。
+         *
+         * @return 書き込み先のストリーム
+         * @throws IOException ストリームを開けなかった場合に発生する
+         */
+        OutputStream newOutputStream() throws IOException;
+
+        /**
+         * 残っている内容の続きに書き込む。
+         *
+         * @return 書き込み先のストリーム
+         * @throws IOException ストリームを開けなかった場合に発生する
+         */
+        OutputStream newAppendingOutputStream() throws IOException;
+
+        /**
+         * 書き込んだ内容をキャッシュに反映する。
+         *
+         * @throws IOException 反映に失敗した場合に発生する
+         */
+        void commit() throws IOException;
+
+        /**
+         * 書き込んだ内容を捨てる。
+         */
+        void abort();
+
+        /**
+         * 書き込んだ内容を残したまま書き込みを終える。キャッシュには反映しない。
+         * 残した内容は容量を超えた場合に、キャッシュされたファイルより先に削除される。
+         */
+        void suspend();
+    }
+
+    /**
+     * @return キャッシュの容量(バイト)。これより大きいファイルは保持できない
+     */
+    long getMaxSize();
+
+    /**
+     * キャッシュされたファイルを取得する。
+     *
+     * @param key キー
+     * @return キャッシュされたファイル。無い場合はnull
+     */
+    File get(String key);
+
+    /**
+     * キャッシュへの書き込みを開始する。
+     *
+     * @param key キー
+     * @return 書き込むためのインターフェイス。同じキーに書き込み中の場合はnull
+     * @throws IOException 書き込みを開始できなかった場合に発生する
+     */
+    Editor edit(String key) throws IOException;
+
+    /**
+     * キャッシュから削除する。
+     *
+     * @param key キー
+     */
+    void remove(String key);
+}
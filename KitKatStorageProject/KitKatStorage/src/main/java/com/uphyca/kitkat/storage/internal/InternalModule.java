@@ -16,16 +16,30 @@
 
 package com.uphyca.kitkat.storage.internal;
 
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import javax.inject.Singleton;
 
 import android.content.Context;
 import android.webkit.MimeTypeMap;
 
 import com.microsoft.live.LiveAuthClient;
+import com.uphyca.kitkat.storage.internal.impl.CachingSkyDriveClient;
 import com.uphyca.kitkat.storage.internal.impl.DelegatingMimeTypeResolver;
+import com.uphyca.kitkat.storage.internal.impl.IndexingMetadataCache;
+import com.uphyca.kitkat.storage.internal.impl.JournaledFileCache;
 import com.uphyca.kitkat.storage.internal.impl.LiveSdkDocumentsColumnMapper;
 import com.uphyca.kitkat.storage.internal.impl.LiveSdkSkyDriveClient;
+import com.uphyca.kitkat.storage.internal.impl.SQLiteAccessLog;
+import com.uphyca.kitkat.storage.internal.impl.SQLiteMetadataCache;
+import com.uphyca.kitkat.storage.internal.impl.SQLitePinStore;
+import com.uphyca.kitkat.storage.internal.impl.SQLiteSearchIndex;
+import com.uphyca.kitkat.storage.internal.impl.SQLiteUploadQueue;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper;
 import com.uphyca.kitkat.storage.internal.impl.StrictSkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
 
 import dagger.Module;
 import dagger.Provides;
@@ -43,6 +57,56 @@ public class InternalModule {
      */
     private static final String LIVE_CLIENT_ID = "000000004C107D21";
 
+    /**
+     * メタ情報のキャッシュを再検証せずに使う期間。
+     */
+    private static final long METADATA_FRESH_TTL = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * メタ情報のキャッシュを再検証しながら使う期間。これを過ぎたらキャッシュを使わない。
+     */
+    private static final long METADATA_MAX_STALE = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * メタ情報の取得と更新を並行して実行する数。
+     */
+    private static final int METADATA_THREADS = 4;
+
+    /**
+     * メタ情報をまとめて取得する時に並行して実行する数。一括取得の間もリストの取得ができるように、スレッドを一つ残す。
+     */
+    private static final int METADATA_FAN_OUT = METADATA_THREADS - 1;
+
+    /**
+     * ファイルの転送を並行して実行する数。
+     */
+    private static final int TRANSFER_THREADS = 2;
+
+    private static final long METADATA_TIMEOUT = TimeUnit.SECONDS.toMillis(30);
+    private static final long TRANSFER_TIMEOUT = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * ダウンロードしたファイルのキャッシュの容量。
+     */
+    private static final long FILE_CACHE_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String FILE_CACHE_DIRECTORY = "documents";
+
+    /**
+     * アクセスの履歴の最大件数。
+     */
+    private static final int ACCESS_LOG_MAX_ENTRIES = 64;
+
+    /**
+     * アップロードに失敗した後、再試行するまでの間隔。失敗が続くと倍になる。
+     */
+    private static final long UPLOAD_MIN_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    private static final long UPLOAD_MAX_BACKOFF = TimeUnit.HOURS.toMillis(1);
+
+    private static final String UPLOAD_DIRECTORY = "uploads";
+
+    private static final String PIN_DIRECTORY = "pinned";
+
     @Provides
     @Singleton
     LiveAuthClient provideLiveAuthClient(Context context) {
@@ -57,14 +121,63 @@ public class InternalModule {
 
     @Provides
     @Singleton
-    DocumentsColumnMapper provideDocumentsColumnMapper(MimeTypeResolver mimeTypeResolver) {
+    DocumentsColumnMapper<SkyDriveObject> provideDocumentsColumnMapper(MimeTypeResolver mimeTypeResolver) {
         return new LiveSdkDocumentsColumnMapper(mimeTypeResolver);
     }
 
     @Provides
     @Singleton
-    SkyDriveClient provideSkyDriveClient(Context context, LiveAuthClient liveAuthClient) {
+    SkyDriveDatabaseHelper provideSkyDriveDatabaseHelper(Context context) {
+        return new SkyDriveDatabaseHelper(context);
+    }
+
+    @Provides
+    @Singleton
+    AccessLog provideAccessLog(SkyDriveDatabaseHelper helper) {
+        return new SQLiteAccessLog(helper, ACCESS_LOG_MAX_ENTRIES);
+    }
+
+    @Provides
+    @Singleton
+    SearchIndex provideSearchIndex(SkyDriveDatabaseHelper helper) {
+        return new SQLiteSearchIndex(helper);
+    }
+
+    @Provides
+    @Singleton
+    MetadataCache provideMetadataCache(SkyDriveDatabaseHelper helper, SearchIndex searchIndex) {
+        return new IndexingMetadataCache(new SQLiteMetadataCache(helper, METADATA_FRESH_TTL, METADATA_MAX_STALE), searchIndex);
+    }
+
+    @Provides
+    @Singleton
+    FileCache provideFileCache(Context context) {
+        return new JournaledFileCache(new File(context.getCacheDir(), FILE_CACHE_DIRECTORY), FILE_CACHE_MAX_BYTES);
+    }
+
+    @Provides
+    @Singleton
+    @Remote
+    SkyDriveClient provideRemoteSkyDriveClient(Context context, LiveAuthClient liveAuthClient) {
         LiveSdkSkyDriveClient delegate = new LiveSdkSkyDriveClient(context, liveAuthClient);
-        return new StrictSkyDriveClient(delegate);
+        return new StrictSkyDriveClient(delegate, Executors.newFixedThreadPool(METADATA_THREADS), Executors.newFixedThreadPool(TRANSFER_THREADS), METADATA_TIMEOUT, TRANSFER_TIMEOUT, METADATA_FAN_OUT);
+    }
+
+    @Provides
+    @Singleton
+    SkyDriveClient provideSkyDriveClient(@Remote SkyDriveClient remote, MetadataCache metadataCache) {
+        return new CachingSkyDriveClient(remote, metadataCache, Executors.newSingleThreadExecutor());
+    }
+
+    @Provides
+    @Singleton
+    UploadQueue provideUploadQueue(Context context, SkyDriveDatabaseHelper helper, SkyDriveClient skyDriveClient) {
+        return new SQLiteUploadQueue(helper, skyDriveClient, Executors.newSingleThreadScheduledExecutor(), new File(context.getFilesDir(), UPLOAD_DIRECTORY), UPLOAD_MIN_BACKOFF, UPLOAD_MAX_BACKOFF);
+    }
+
+    @Provides
+    @Singleton
+    PinStore providePinStore(Context context, SkyDriveDatabaseHelper helper) {
+        return new SQLitePinStore(helper, new File(context.getFilesDir(), PIN_DIRECTORY));
     }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SkyDrive&trade;のメタ情報をローカルにキャッシュするためのインターフェイス。
+ * ドキュメントはIDごとに一件だけ保持され、単体の取得とディレクトリのリストの両方で共有される。
+ *
+ * @author masui@uphyca.com
+ */
+public interface MetadataCache {
+
+    /**
+     * ディレクトリのリストが変わったことを受け取るためのコールバックインターフェイス。
+     */
+    public interface OnChildrenChangedListener {
+
+        /**
+         * ディレクトリのリストがキャッシュされたか、無効になったときに呼ばれる。
+         * 呼ばれるスレッドは不定。
+         *
+         * @param parentId ディレクトリのID
+         */
+        void onChildrenChanged(String parentId);
+    }
+
+    /**
+     * キャッシュされた値と、その鮮度。
+     *
+     * @param <T> キャッシュされた値の型
+     */
+    public static final class Entry<T> {
+
+        private final T mValue;
+        private final long mFetchedAt;
+        private final boolean mFresh;
+
+        public Entry(T value, long fetchedAt, boolean fresh) {
+            mValue = value;
+            mFetchedAt = fetchedAt;
+            mFresh = fresh;
+        }
+
+        /**
+         * @return キャッシュされた値
+         */
+        public T getValue() {
+            return mValue;
+        }
+
+        /**
+         * @return ネットワークから取得した時刻(エポックミリ秒)
+         */
+        public long getFetchedAt() {
+            return mFetchedAt;
+        }
+
+        /**
+         * @return TTL内ならtrue。falseの場合は値を使いつつ再検証する
+         */
+        public boolean isFresh() {
+            return mFresh;
+        }
+    }
+
+    /**
+     * 指定のIDのドキュメントをキャッシュから取得する。
+     * キャッシュに無いか、有効期限を過ぎている場合はnullを返す。
+     *
+     * @param documentId ID
+     * @return キャッシュされたドキュメント
+     */
+    Entry<SkyDriveObject> getDocument(String documentId);
+
+    /**
+     * 指定のIDのディレクトリ配下のドキュメントをキャッシュから取得する。
+     * ディレクトリのリストがキャッシュに無いか、有効期限を過ぎている場合はnullを返す。
+     *
+     * @param parentId ディレクトリのID
+     * @return キャッシュされたドキュメントの配列
+     */
+    Entry<SkyDriveObject[]> getChildren(String parentId);
+
+    /**
+     * ドキュメントをキャッシュする。
+     *
+     * @param document ドキュメント
+     */
+    void putDocument(SkyDriveObject document);
+
+    /**
+     * ディレクトリ配下のドキュメントをキャッシュする。
+     * 以前にキャッシュしたリストは置き換えられる。
+     *
+     * @param parentId ディレクトリのID
+     * @param children ディレクトリ配下のドキュメント
+     */
+    void putChildren(String parentId, SkyDriveObject[] children);
+
+    /**
+     * ディレクトリのリストを取得し直したが変わっていなかったときに、取得した時刻だけを更新する。
+     * リストは変わらないので、変更は通知しない。
+     *
+     * @param parentId ディレクトリのID
+     */
+    void touchChildren(String parentId);
+
+    /**
+     * ディレクトリのリストを無効にする。リストは古いものとして残り、次に取得した時に再検証される。
+     *
+     * @param parentId ディレクトリのID
+     */
+    void invalidateChildren(String parentId);
+
+    /**
+     * ドキュメントをキャッシュから削除する。
+     *
+     * @param documentId ID
+     */
+    void removeDocument(String documentId);
+
+    /**
+     * ディレクトリのリストの変更を受け取るリスナーを登録する。
+     *
+     * @param listener リスナー
+     */
+    void addOnChildrenChangedListener(OnChildrenChangedListener listener);
+
+    /**
+     * 登録したリスナーを解除する。
+     *
+     * @param listener リスナー
+     */
+    void removeOnChildrenChangedListener(OnChildrenChangedListener listener);
+}
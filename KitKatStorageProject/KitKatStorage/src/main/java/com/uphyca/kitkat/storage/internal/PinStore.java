@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Set;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * オフラインでも使えるように固定したドキュメントを保存するためのインターフェイス。
+ * 固定したドキュメントとそのサブツリーの内容はキャッシュとは別の場所に保存し、容量を理由に削除しない。
+ * 固定を解除したら削除する。
+ *
+ * @author masui@uphyca.com
+ */
+public interface PinStore {
+
+    /**
+     * ドキュメントを固定する。内容は保存しないので、 #putFile(String, SkyDriveObject, InputStream) で保存する。
+     *
+     * @param documentId 固定するドキュメントかディレクトリのID
+     */
+    void pin(String documentId);
+
+    /**
+     * 固定を解除して、そのサブツリーのうち他で固定されていないものの内容を削除する。
+     *
+     * @param documentId 固定したドキュメントかディレクトリのID
+     */
+    void unpin(String documentId);
+
+    /**
+     * @return 固定したドキュメントのID。結果がnullになることはない
+     */
+    String[] getPins();
+
+    /**
+     * @param documentId ID
+     * @return 固定したドキュメントか、そのサブツリーにあればtrue
+     */
+    boolean isPinned(String documentId);
+
+    /**
+     * ネットワークにアクセスせずに、保存した内容を返す。
+     *
+     * @param documentId ID
+     * @return 保存した内容。保存していなければnull
+     */
+    File getFile(String documentId);
+
+    /**
+     * @param pinId 固定したドキュメントのID
+     * @param document サブツリーにあるドキュメント
+     * @return 保存した内容の更新日時とサイズが document と同じならtrue
+     */
+    boolean isCurrent(String pinId, SkyDriveObject document);
+
+    /**
+     * サブツリーにあるファイルの内容を保存する。書き終わるまでは前の内容が返される。
+     * 保存している間に固定が解除されていたら何もしない。
+     *
+     * @param pinId 固定したドキュメントのID
+     * @param document 保存するドキュメント
+     * @param content 内容。閉じるのは呼び出し元
+     * @throws IOException 保存に失敗した場合に発生する
+     */
+    void putFile(String pinId, SkyDriveObject document, InputStream content) throws IOException;
+
+    /**
+     * 書き込まれたドキュメントの内容を保存していれば、アップロードを待たずに置き換える。保存していなければ何もしない。
+     *
+     * @param documentId ID
+     * @param content 新しい内容
+     * @throws IOException 保存に失敗した場合に発生する
+     */
+    void replaceFile(String documentId, File content) throws IOException;
+
+    /**
+     * サブツリーにあるディレクトリを記録する。固定が解除されていたら何もしない。
+     *
+     * @param pinId 固定したドキュメントのID
+     * @param folder 記録するディレクトリ
+     */
+    void putFolder(String pinId, SkyDriveObject folder);
+
+    /**
+     * サブツリーから無くなったドキュメントを削除する。
+     *
+     * @param pinId 固定したドキュメントのID
+     * @param documentIds 今サブツリーにあるドキュメントのID
+     */
+    void retain(String pinId, Set<String> documentIds);
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+
+import javax.inject.Qualifier;
+
+/**
+ * キャッシュを通さずにSkyDrive&trade;にアクセスする SkyDriveClient を指定するための限定子。
+ *
+ * @author masui@uphyca.com
+ */
+@Qualifier
+@Documented
+@Retention(RUNTIME)
+public @interface Remote {
+}
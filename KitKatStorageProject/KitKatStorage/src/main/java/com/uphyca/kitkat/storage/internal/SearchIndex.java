@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * ドキュメントの名前と説明をローカルで検索するためのインターフェイス。
+ *
+ * @author masui@uphyca.com
+ */
+public interface SearchIndex {
+
+    /**
+     * ドキュメントをインデックスに登録する。既に登録されている場合は更新する。
+     *
+     * @param document ドキュメント
+     */
+    void index(SkyDriveObject document);
+
+    /**
+     * ディレクトリ配下のドキュメントをインデックスに登録する。
+     * 以前に同じディレクトリで登録したドキュメントのうち、含まれていないものは削除される。
+     *
+     * @param parentId ディレクトリのID
+     * @param children ディレクトリ配下のドキュメント
+     */
+    void indexChildren(String parentId, SkyDriveObject[] children);
+
+    /**
+     * ドキュメントをインデックスから削除する。
+     *
+     * @param documentId ID
+     */
+    void remove(String documentId);
+
+    /**
+     * 名前か説明が検索語で始まる単語を含むドキュメントを探す。空白で区切られた検索語は全て含むものだけを返す。
+     *
+     * @param query 検索語
+     * @param limit 最大件数
+     * @return 見つかったドキュメント。結果がnullになることはない
+     */
+    SkyDriveObject[] search(String query, int limit);
+}
@@ -18,8 +18,11 @@ package com.uphyca.kitkat.storage.internal;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 
 import android.app.Activity;
+import android.os.CancellationSignal;
 
 import com.uphyca.kitkat.storage.internal.impl.LiveSdkSkyDriveClient;
 import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
@@ -76,6 +79,40 @@ public interface SkyDriveClient {
      */
     SkyDriveObject[] get(String documentId);
 
+    /**
+     * 指定のIDのドキュメントをまとめて同期的に取得する。
+     * IDは一意なものに限る。結果は documentIds と同じ順番で、取得できなかったIDの位置はnullになる。
+     * 結果がnullになることはない。
+     *
+     * @param documentIds IDのコレクション
+     * @return IDに対応するドキュメント
+     */
+    SkyDriveObject[] getAll(Collection<String> documentIds);
+
+    /**
+     * 指定のIDのディレクトリ配下のドキュメントを同期的に取得する。
+     * 空のディレクトリの場合は空の配列を返す。
+     * 結果がnullになることはない。
+     *
+     * @param folderId ディレクトリのID
+     * @return ディレクトリ配下のドキュメント
+     * @throws IOException 取得に失敗した場合に発生する
+     */
+    SkyDriveObject[] list(String folderId) throws IOException;
+
+    /**
+     * 指定のIDのディレクトリ配下のドキュメントを、offset番目から最大limit件だけ同期的に取得する。
+     * 結果がlimit件より少なければ、それが最後のページである。
+     * 結果がnullになることはない。
+     *
+     * @param folderId ディレクトリのID
+     * @param offset 取得を始める位置
+     * @param limit 取得する最大件数
+     * @return ディレクトリ配下のドキュメント
+     * @throws IOException 取得に失敗した場合に発生する
+     */
+    SkyDriveObject[] list(String folderId, int offset, int limit) throws IOException;
+
     /**
      * 指定のIDのファイルを同期的にダウンロードする。
      * 
@@ -85,6 +122,53 @@ public interface SkyDriveClient {
      */
     File download(String documentId) throws IOException;
 
+    /**
+     * 指定のIDのファイルを同期的にダウンロードする。
+     * ダウンロード中にキャンセルされると android.os.OperationCanceledException が発生する。
+     * 
+     * @param documentId ID
+     * @param signal キャンセルを受け取るシグナル。nullでも良い
+     * @return IDに対応するドキュメントのファイル
+     * @throws IOException ダウンロードに失敗した場合に発生する
+     */
+    File download(String documentId, CancellationSignal signal) throws IOException;
+
+    /**
+     * 指定のIDのファイルの内容を読むストリームを開く。
+     * ファイル全体のダウンロードを待たずに、レスポンスが返ってきた時点で戻る。
+     * 返されたストリームは呼び出し元が閉じなければならない。
+     * 
+     * @param documentId ID
+     * @param signal キャンセルを受け取るシグナル。nullでも良い。ストリームを開いた後のキャンセルは受け取らない
+     * @return IDに対応するドキュメントの内容
+     * @throws IOException ストリームを開けなかった場合に発生する
+     */
+    InputStream openStream(String documentId, CancellationSignal signal) throws IOException;
+
+    /**
+     * 指定のIDのファイルの内容を、offsetバイト目から読むストリームを開く。
+     * 中断したダウンロードの続きや、大きなファイルの途中だけを読む場合に使い、それより前はダウンロードしない。
+     * 返されたストリームは呼び出し元が閉じなければならない。
+     * 
+     * @param documentId ID
+     * @param offset 読み始める位置。ファイルのサイズより小さくなければならない
+     * @param signal キャンセルを受け取るシグナル。nullでも良い。ストリームを開いた後のキャンセルは受け取らない
+     * @return IDに対応するドキュメントのoffsetバイト目からの内容
+     * @throws IOException ストリームを開けなかった場合に発生する
+     */
+    InputStream openStream(String documentId, long offset, CancellationSignal signal) throws IOException;
+
+    /**
+     * ドキュメントのメタ情報に含まれるURL(画像の縮小版など)の内容を読むストリームを開く。
+     * 返されたストリームは呼び出し元が閉じなければならない。
+     * 
+     * @param source URL
+     * @param signal キャンセルを受け取るシグナル。nullでも良い。ストリームを開いた後のキャンセルは受け取らない
+     * @return URLの内容
+     * @throws IOException ストリームを開けなかった場合に発生する
+     */
+    InputStream openSource(String source, CancellationSignal signal) throws IOException;
+
     /**
      * 指定のIDのディレクトリに、指定のIDのファイルをアップロードする。
      * すでに同じIDのファイルがある場合は上書きする。
@@ -97,6 +181,20 @@ public interface SkyDriveClient {
      */
     String upload(String path, String name, File file) throws IOException;
 
+    /**
+     * 指定のIDのディレクトリに、指定のIDのファイルを分割してアップロードする。
+     * checkpoint に保存された進み具合から再開し、分割したものを送るたびに進み具合を保存する。
+     * すでに同じIDのファイルがある場合は上書きする。
+     * 
+     * @param path ファイルを作成するディレクトリのID
+     * @param name アップロードするファイルのID
+     * @param file アップロードするファイルの内容。アップロードが終わるまで変更してはいけない
+     * @param checkpoint 進み具合を保存するもの
+     * @return アップロードされたファイルのID
+     * @throws IOException アップロードに失敗した場合に発生する
+     */
+    String upload(String path, String name, File file, UploadCheckpoint checkpoint) throws IOException;
+
     /**
      * 指定のIDのディレクトリに、指定の名前のディレクトリを作成する。
      * 
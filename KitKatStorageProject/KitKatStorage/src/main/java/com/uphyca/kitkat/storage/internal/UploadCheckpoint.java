@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+/**
+ * 分割してアップロードする時の進み具合を保存するためのインターフェイス。
+ * 保存した進み具合から再開するので、途中で接続が切れてもプロセスが終了しても最初からやり直さない。
+ *
+ * @author masui@uphyca.com
+ */
+public interface UploadCheckpoint {
+
+    /**
+     * @return 前回のアップロード先のURL。始めていなければnull
+     */
+    String getUploadUrl();
+
+    /**
+     * @return 前回サーバーが受け取ったバイト数
+     */
+    long getUploadedBytes();
+
+    /**
+     * 進み具合を保存する。アップロードしているスレッドから呼ばれる。
+     *
+     * @param uploadUrl アップロード先のURL。最初からやり直す場合はnull
+     * @param uploadedBytes サーバーが受け取ったバイト数
+     */
+    void save(String uploadUrl, long uploadedBytes);
+}
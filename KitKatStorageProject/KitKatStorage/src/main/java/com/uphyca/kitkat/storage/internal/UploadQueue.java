@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 編集されたファイルをバックグラウンドでアップロードするためのキュー。
+ * キューはプロセスが終了しても残り、失敗したアップロードは間隔を空けて再試行される。
+ * 同じドキュメントが何度も保存された場合は、最後の内容だけをアップロードする。
+ * 大きなファイルは分割してアップロードし、中断しても受け取られたところから再開する。
+ *
+ * @author masui@uphyca.com
+ */
+public interface UploadQueue {
+
+    /**
+     * アップロードをキューに追加する。
+     * ファイルはキューに移動されるので、呼び出し元はこれ以降ファイルを使ってはいけない。
+     *
+     * @param documentId アップロードするドキュメントのID
+     * @param parentId アップロード先のディレクトリのID
+     * @param name アップロードするファイルの名前
+     * @param file アップロードする内容
+     * @throws IOException キューに追加できなかった場合に発生する
+     */
+    void enqueue(String documentId, String parentId, String name, File file) throws IOException;
+
+    /**
+     * キューに残っているアップロードを開始する。プロセスの起動時に呼ぶ。
+     */
+    void start();
+
+    /**
+     * 再試行を待っているアップロードを今すぐ再試行する。ネットワークにつながった時に呼ぶ。
+     */
+    void retryNow();
+}
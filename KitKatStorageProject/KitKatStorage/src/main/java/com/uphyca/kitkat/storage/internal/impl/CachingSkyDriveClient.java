@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import android.app.Activity;
+import android.os.CancellationSignal;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadCheckpoint;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * メタ情報をキャッシュする実装。
+ * キャッシュが新鮮ならそれを返し、古ければそれを返しつつバックグラウンドで再検証する(stale-while-revalidate)。
+ * キャッシュに無い場合だけ、呼び出したスレッドでネットワークアクセスする。
+ *
+ * @author masui@uphyca.com
+ */
+public class CachingSkyDriveClient implements SkyDriveClient {
+
+    private final SkyDriveClient mDelegate;
+    private final MetadataCache mMetadataCache;
+    private final Executor mRevalidateExecutor;
+
+    /**
+     * 再検証中のキー。同じドキュメントの再検証を重複して実行しないために使う。
+     */
+    private final Set<String> mRevalidating = Collections.synchronizedSet(new HashSet<String>());
+
+    public CachingSkyDriveClient(SkyDriveClient delegate, MetadataCache metadataCache, Executor revalidateExecutor) {
+        mDelegate = delegate;
+        mMetadataCache = metadataCache;
+        mRevalidateExecutor = revalidateExecutor;
+    }
+
+    @Override
+    public void initializeIfNecessary() {
+        mDelegate.initializeIfNecessary();
+    }
+
+    @Override
+    public void login(Activity activity, SkyDriveAuthListener listener) {
+        mDelegate.login(activity, listener);
+    }
+
+    @Override
+    public SkyDriveObject[] get(final String documentId) {
+        final MetadataCache.Entry<SkyDriveObject> cached = mMetadataCache.getDocument(documentId);
+        if (cached == null) {
+            return fetchDocument(documentId);
+        }
+        if (!cached.isFresh()) {
+            revalidateDocument(documentId);
+        }
+        return new SkyDriveObject[] {
+            cached.getValue()
+        };
+    }
+
+    /**
+     * キャッシュに無いものだけをまとめて delegate から取得する。古いものは get と同じく一件ずつ再検証する。
+     */
+    @Override
+    public SkyDriveObject[] getAll(Collection<String> documentIds) {
+        final SkyDriveObject[] documents = new SkyDriveObject[documentIds.size()];
+        final List<String> misses = new ArrayList<>();
+        final int[] missIndices = new int[documents.length];
+        int i = 0;
+        for (String documentId : documentIds) {
+            final MetadataCache.Entry<SkyDriveObject> cached = mMetadataCache.getDocument(documentId);
+            if (cached == null) {
+                missIndices[misses.size()] = i;
+                misses.add(documentId);
+            } else {
+                if (!cached.isFresh()) {
+                    revalidateDocument(documentId);
+                }
+                documents[i] = cached.getValue();
+            }
+            ++i;
+        }
+        if (misses.isEmpty()) {
+            return documents;
+        }
+        final SkyDriveObject[] fetched = mDelegate.getAll(misses);
+        for (int j = 0; j < fetched.length; ++j) {
+            if (fetched[j] != null) {
+                mMetadataCache.putDocument(fetched[j]);
+                documents[missIndices[j]] = fetched[j];
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public SkyDriveObject[] list(final String folderId) throws IOException {
+        final MetadataCache.Entry<SkyDriveObject[]> cached = mMetadataCache.getChildren(folderId);
+        if (cached == null) {
+            return fetchChildren(folderId);
+        }
+        if (!cached.isFresh()) {
+            revalidate("list:" + folderId, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        fetchChildren(folderId);
+                    } catch (IOException ignore) {
+                    }
+                }
+            });
+        }
+        return cached.getValue();
+    }
+
+    /**
+     * ページ単位の結果はキャッシュしない。全てのページを集めたものを呼び出し側が MetadataCache に保存する。
+     */
+    @Override
+    public SkyDriveObject[] list(String folderId, int offset, int limit) throws IOException {
+        return mDelegate.list(folderId, offset, limit);
+    }
+
+    @Override
+    public File download(String documentId) throws IOException {
+        return mDelegate.download(documentId);
+    }
+
+    @Override
+    public File download(String documentId, CancellationSignal signal) throws IOException {
+        return mDelegate.download(documentId, signal);
+    }
+
+    @Override
+    public InputStream openStream(String documentId, CancellationSignal signal) throws IOException {
+        return mDelegate.openStream(documentId, signal);
+    }
+
+    @Override
+    public InputStream openStream(String documentId, long offset, CancellationSignal signal) throws IOException {
+        return mDelegate.openStream(documentId, offset, signal);
+    }
+
+    @Override
+    public InputStream openSource(String source, CancellationSignal signal) throws IOException {
+        return mDelegate.openSource(source, signal);
+    }
+
+    @Override
+    public String upload(String path, String name, File file) throws IOException {
+        try {
+            return mDelegate.upload(path, name, file);
+        } finally {
+            mMetadataCache.invalidateChildren(path);
+        }
+    }
+
+    @Override
+    public String upload(String path, String name, File file, UploadCheckpoint checkpoint) throws IOException {
+        try {
+            return mDelegate.upload(path, name, file, checkpoint);
+        } finally {
+            mMetadataCache.invalidateChildren(path);
+        }
+    }
+
+    @Override
+    public String mkdir(String path, String name) throws IOException {
+        try {
+            return mDelegate.mkdir(path, name);
+        } finally {
+            mMetadataCache.invalidateChildren(path);
+        }
+    }
+
+    @Override
+    public String touch(String path, String name) throws IOException {
+        try {
+            return mDelegate.touch(path, name);
+        } finally {
+            mMetadataCache.invalidateChildren(path);
+        }
+    }
+
+    @Override
+    public void delete(String path) throws IOException {
+        mDelegate.delete(path);
+        mMetadataCache.removeDocument(path);
+    }
+
+    private SkyDriveObject[] fetchDocument(String documentId) {
+        final SkyDriveObject[] documents = mDelegate.get(documentId);
+        // 取得に失敗した場合も空の配列になるので、一件の時だけキャッシュする
+        if (documents.length == 1) {
+            mMetadataCache.putDocument(documents[0]);
+        }
+        return documents;
+    }
+
+    private SkyDriveObject[] fetchChildren(String folderId) throws IOException {
+        final SkyDriveObject[] children = mDelegate.list(folderId);
+        mMetadataCache.putChildren(folderId, children);
+        return children;
+    }
+
+    private void revalidateDocument(final String documentId) {
+        revalidate("get:" + documentId, new Runnable() {
+            @Override
+            public void run() {
+                fetchDocument(documentId);
+            }
+        });
+    }
+
+    private void revalidate(final String key, final Runnable task) {
+        if (!mRevalidating.add(key)) {
+            return;
+        }
+        mRevalidateExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    mRevalidating.remove(key);
+                }
+            }
+        });
+    }
+}
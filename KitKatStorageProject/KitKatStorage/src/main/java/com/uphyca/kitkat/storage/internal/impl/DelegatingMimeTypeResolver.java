@@ -16,7 +16,7 @@
 
 package com.uphyca.kitkat.storage.internal.impl;
 
-import java.io.File;
+import java.util.Locale;
 
 import android.webkit.MimeTypeMap;
 
@@ -36,11 +36,12 @@ public class DelegatingMimeTypeResolver implements MimeTypeResolver {
 
     @Override
     public String resolveMimeTypeFromName(String name) {
+        // リストの行ごとに呼ばれるので、URIを組み立てずに拡張子だけを切り出す
         String type = null;
-        String extension = MimeTypeMap.getFileExtensionFromUrl(new File(name).toURI()
-                                                                             .toString());
-        if (extension != null) {
-            type = mMimeTypeMap.getMimeTypeFromExtension(extension);
+        final int lastDot = name.lastIndexOf('.');
+        if (lastDot >= 0 && lastDot < name.length() - 1) {
+            type = mMimeTypeMap.getMimeTypeFromExtension(name.substring(lastDot + 1)
+                                                             .toLowerCase(Locale.US));
         }
 
         if (type == null) {
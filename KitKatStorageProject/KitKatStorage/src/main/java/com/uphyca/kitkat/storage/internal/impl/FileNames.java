@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * IDやキーからファイル名を作るためのユーティリティ。
+ *
+ * @author masui@uphyca.com
+ */
+final class FileNames {
+
+    private FileNames() {
+    }
+
+    /**
+     * ファイル名に使えない文字を含むかもしれない文字列を、MD5の16進表記にする。
+     *
+     * @param key 元の文字列
+     * @return ファイル名
+     */
+    static String fromKey(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5")
+                                               .digest(key.getBytes("UTF-8"));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte each : digest) {
+                name.append(Character.forDigit((each >> 4) & 0xf, 16));
+                name.append(Character.forDigit(each & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
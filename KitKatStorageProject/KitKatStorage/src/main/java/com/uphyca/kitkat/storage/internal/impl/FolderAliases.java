@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * me/skydrive のようなディレクトリの別名を、本来のIDに解決する。
+ * 別名でリストを取得しても、中のドキュメントの親は本来のIDで返されるので、それを使う。
+ *
+ * @author masui@uphyca.com
+ */
+final class FolderAliases {
+
+    private FolderAliases() {
+    }
+
+    /**
+     * @param parentId リストを取得した時のディレクトリのID
+     * @param children 取得したリスト
+     * @return 全てのドキュメントの親が同じ別のIDなら、そのID。分からなければ parentId
+     */
+    static String resolve(String parentId, SkyDriveObject[] children) {
+        if (children.length == 0) {
+            return parentId;
+        }
+        final String folderId = children[0].getParentId();
+        if (folderId == null || folderId.equals(parentId)) {
+            return parentId;
+        }
+        for (SkyDriveObject each : children) {
+            if (!folderId.equals(each.getParentId())) {
+                return parentId;
+            }
+        }
+        return folderId;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SearchIndex;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * キャッシュされたドキュメントを SearchIndex にも登録する実装。
+ * ネットワークから取得したドキュメントは必ずキャッシュを通るので、ここで登録すれば取りこぼさない。
+ *
+ * @author masui@uphyca.com
+ */
+public class IndexingMetadataCache implements MetadataCache {
+
+    private final MetadataCache mDelegate;
+    private final SearchIndex mSearchIndex;
+
+    public IndexingMetadataCache(MetadataCache delegate, SearchIndex searchIndex) {
+        mDelegate = delegate;
+        mSearchIndex = searchIndex;
+    }
+
+    @Override
+    public Entry<SkyDriveObject> getDocument(String documentId) {
+        return mDelegate.getDocument(documentId);
+    }
+
+    @Override
+    public Entry<SkyDriveObject[]> getChildren(String parentId) {
+        return mDelegate.getChildren(parentId);
+    }
+
+    @Override
+    public void putDocument(SkyDriveObject document) {
+        mDelegate.putDocument(document);
+        mSearchIndex.index(document);
+    }
+
+    @Override
+    public void putChildren(String parentId, SkyDriveObject[] children) {
+        // リスナーが再クエリした時に検索結果も新しくなっているように、先に登録する
+        mSearchIndex.indexChildren(parentId, children);
+        mDelegate.putChildren(parentId, children);
+    }
+
+    @Override
+    public void touchChildren(String parentId) {
+        mDelegate.touchChildren(parentId);
+    }
+
+    @Override
+    public void invalidateChildren(String parentId) {
+        mDelegate.invalidateChildren(parentId);
+    }
+
+    @Override
+    public void removeDocument(String documentId) {
+        mDelegate.removeDocument(documentId);
+        mSearchIndex.remove(documentId);
+    }
+
+    @Override
+    public void addOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        mDelegate.addOnChildrenChangedListener(listener);
+    }
+
+    @Override
+    public void removeOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        mDelegate.removeOnChildrenChangedListener(listener);
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.uphyca.kitkat.storage.internal.FileCache;
+
+/**
+ * ジャーナルファイルを使った実装。
+ * ファイル名はキーのハッシュにする。エントリの追加と削除、参照をジャーナルに追記し、起動時にジャーナルを再生してLRUの順序を復元する。
+ * 書き込みを中断した場合や書き込み途中で終了した場合は、書きかけのファイルを残して次に同じキーを編集した時に続きから書けるようにする。
+ * 書きかけのファイルも容量に含め、容量を超えた場合はキャッシュされたファイルより先に削除する。
+ *
+ * @author masui@uphyca.com
+ */
+public class JournaledFileCache implements FileCache {
+
+    static final String JOURNAL_FILE = "journal";
+    static final String JOURNAL_FILE_TEMP = "journal.tmp";
+
+    private static final String CLEAN = "CLEAN";
+    private static final String DIRTY = "DIRTY";
+    private static final String REMOVE = "REMOVE";
+    private static final String READ = "READ";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * 不要な行がこれを超えたらジャーナルを作り直す。
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    /**
+     * ファイル名とサイズ。アクセス順なので、先頭が最近使われていないもの。
+     */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<String, Long>(0, 0.75f, true);
+    private final Set<String> mEditing = new HashSet<String>();
+
+    /**
+     * 書きかけのファイルのファイル名とサイズ。中断した順なので、先頭が古いもの。
+     */
+    private final LinkedHashMap<String, Long> mPartials = new LinkedHashMap<String, Long>();
+    private long mSize;
+    private int mRedundantOpCount;
+    private Writer mJournalWriter;
+
+    /**
+     * @param directory キャッシュに使うディレクトリ。他の用途と共有してはいけない
+     * @param maxBytes キャッシュの容量(バイト)
+     */
+    public JournaledFileCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return mMaxBytes;
+    }
+
+    @Override
+    public synchronized File get(String key) {
+        final String name = FileNames.fromKey(key);
+        try {
+            ensureOpen();
+            if (!mEntries.containsKey(name)) {
+                return null;
+            }
+            final File file = new File(mDirectory, name);
+            if (!file.exists()) {
+                // 外から消された
+                removeEntry(name);
+                return null;
+            }
+            appendJournal(READ, name);
+            return file;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized Editor edit(String key) throws IOException {
+        ensureOpen();
+        final String name = FileNames.fromKey(key);
+        if (!mEditing.add(name)) {
+            return null;
+        }
+        final File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        final Long partial = mPartials.remove(name);
+        if (partial != null) {
+            mSize -= partial;
+        } else {
+            temp.delete();
+        }
+        appendJournal(DIRTY, name);
+        return new FileEditor(name, temp.length());
+    }
+
+    @Override
+    public synchronized void remove(String key) {
+        try {
+            ensureOpen();
+            removeEntry(FileNames.fromKey(key));
+        } catch (IOException ignore) {
+        }
+    }
+
+    private synchronized void suspend(String name) throws IOException {
+        mEditing.remove(name);
+        final File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        final long length = temp.length();
+        if (length == 0L) {
+            temp.delete();
+            appendJournal(REMOVE, name);
+            return;
+        }
+        // ジャーナルにはDIRTYが残っているので、次に開いた時も書きかけとして扱われる
+        mPartials.put(name, length);
+        mSize += length;
+        trimToSize();
+    }
+
+    private synchronized void complete(String name, boolean success) throws IOException {
+        mEditing.remove(name);
+        final File temp = new File(mDirectory, name + TEMP_SUFFIX);
+        if (!success || !temp.exists()) {
+            temp.delete();
+            appendJournal(REMOVE, name);
+            return;
+        }
+        final File file = new File(mDirectory, name);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            appendJournal(REMOVE, name);
+            throw new IOException("Failed to rename " + temp);
+        }
+        final long length = file.length();
+        final Long previous = mEntries.put(name, length);
+        if (previous != null) {
+            mSize -= previous;
+        }
+        mSize += length;
+        appendJournal(CLEAN, name + " " + length);
+        trimToSize();
+        compactJournalIfNecessary();
+    }
+
+    private void removeEntry(String name) throws IOException {
+        final Long partial = mPartials.remove(name);
+        if (partial != null) {
+            mSize -= partial;
+            new File(mDirectory, name + TEMP_SUFFIX).delete();
+        }
+        final Long length = mEntries.remove(name);
+        new File(mDirectory, name).delete();
+        if (length != null) {
+            mSize -= length;
+        }
+        if (partial != null || length != null) {
+            appendJournal(REMOVE, name);
+        }
+    }
+
+    private void trimToSize() throws IOException {
+        final Iterator<Map.Entry<String, Long>> partials = mPartials.entrySet()
+                                                                    .iterator();
+        while (mSize > mMaxBytes && partials.hasNext()) {
+            final Map.Entry<String, Long> eldest = partials.next();
+            partials.remove();
+            mSize -= eldest.getValue();
+            new File(mDirectory, eldest.getKey() + TEMP_SUFFIX).delete();
+            if (!mEntries.containsKey(eldest.getKey())) {
+                appendJournal(REMOVE, eldest.getKey());
+            }
+        }
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet()
+                                                             .iterator();
+        while (mSize > mMaxBytes && it.hasNext()) {
+            final Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            mSize -= eldest.getValue();
+            // 読み込み中のファイルを消しても、開いているディスクリプタからは読める
+            new File(mDirectory, eldest.getKey()).delete();
+            appendJournal(REMOVE, eldest.getKey());
+        }
+    }
+
+    private void appendJournal(String op, String arg) throws IOException {
+        mJournalWriter.write(op + " " + arg + "\n");
+        mJournalWriter.flush();
+        if (!CLEAN.equals(op)) {
+            ++mRedundantOpCount;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (mJournalWriter != null) {
+            return;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+        if (journal.exists()) {
+            readJournal(journal);
+        }
+        deleteOrphans();
+        rebuildJournal();
+    }
+
+    private void readJournal(File journal) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(journal), "US-ASCII"));
+        try {
+            for (String line; (line = reader.readLine()) != null;) {
+                final String[] parts = line.split(" ");
+                if (parts.length < 2) {
+                    continue;
+                }
+                final String op = parts[0];
+                final String name = parts[1];
+                if (CLEAN.equals(op) && parts.length == 3) {
+                    mEntries.put(name, Long.valueOf(parts[2]));
+                    mPartials.remove(name);
+                } else if (DIRTY.equals(op)) {
+                    // 後にCLEANもREMOVEも無ければ書きかけ。サイズはdeleteOrphans()で調べる
+                    mPartials.remove(name);
+                    mPartials.put(name, 0L);
+                } else if (READ.equals(op)) {
+                    // アクセス順を更新する
+                    mEntries.get(name);
+                } else if (REMOVE.equals(op)) {
+                    mEntries.remove(name);
+                    mPartials.remove(name);
+                }
+            }
+        } catch (NumberFormatException e) {
+            // 壊れている。読めたところまでを使う
+        } finally {
+            closeQuietly(reader);
+        }
+    }
+
+    /**
+     * ジャーナルに無いファイルと、実体の無いエントリを削除して、合計サイズを計算し直す。
+     */
+    private void deleteOrphans() {
+        mSize = 0;
+        final Iterator<Map.Entry<String, Long>> partials = mPartials.entrySet()
+                                                                    .iterator();
+        while (partials.hasNext()) {
+            final Map.Entry<String, Long> each = partials.next();
+            final File temp = new File(mDirectory, each.getKey() + TEMP_SUFFIX);
+            if (temp.length() == 0L) {
+                temp.delete();
+                partials.remove();
+                continue;
+            }
+            each.setValue(temp.length());
+            mSize += each.getValue();
+        }
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet()
+                                                             .iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Long> each = it.next();
+            final File file = new File(mDirectory, each.getKey());
+            if (!file.exists() || file.length() != each.getValue()) {
+                file.delete();
+                it.remove();
+                continue;
+            }
+            mSize += each.getValue();
+        }
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File each : files) {
+            final String name = each.getName();
+            if (JOURNAL_FILE.equals(name) || mEntries.containsKey(name)) {
+                continue;
+            }
+            if (name.endsWith(TEMP_SUFFIX) && mPartials.containsKey(name.substring(0, name.length() - TEMP_SUFFIX.length()))) {
+                continue;
+            }
+            each.delete();
+        }
+    }
+
+    private void compactJournalIfNecessary() throws IOException {
+        if (mRedundantOpCount < REDUNDANT_OP_COMPACT_THRESHOLD || mRedundantOpCount < mEntries.size()) {
+            return;
+        }
+        rebuildJournal();
+    }
+
+    /**
+     * 現在のエントリだけでジャーナルを作り直す。書き込み中のものはDIRTYとして残す。
+     */
+    private void rebuildJournal() throws IOException {
+        if (mJournalWriter != null) {
+            closeQuietly(mJournalWriter);
+        }
+        final File temp = new File(mDirectory, JOURNAL_FILE_TEMP);
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "US-ASCII"));
+        try {
+            for (Map.Entry<String, Long> each : mEntries.entrySet()) {
+                writer.write(CLEAN + " " + each.getKey() + " " + each.getValue() + "\n");
+            }
+            for (String each : mPartials.keySet()) {
+                writer.write(DIRTY + " " + each + "\n");
+            }
+            for (String each : mEditing) {
+                writer.write(DIRTY + " " + each + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        if (!temp.renameTo(new File(mDirectory, JOURNAL_FILE))) {
+            throw new IOException("Failed to rename " + temp);
+        }
+        mJournalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(mDirectory, JOURNAL_FILE), true), "US-ASCII"));
+        mRedundantOpCount = 0;
+    }
+
+    private static void closeQuietly(Closeable res) {
+        if (res == null) {
+            return;
+        }
+        try {
+            res.close();
+        } catch (IOException e) {
+        }
+    }
+
+    private class FileEditor implements Editor {
+
+        private final String mName;
+        private final long mLength;
+        private boolean mDone;
+
+        private FileEditor(String name, long length) {
+            mName = name;
+            mLength = length;
+        }
+
+        @Override
+        public long getLength() {
+            return mLength;
+        }
+
+        @Override
+        public InputStream newInputStream() throws FileNotFoundException {
+            return new FileInputStream(new File(mDirectory, mName + TEMP_SUFFIX));
+        }
+
+        @Override
+        public OutputStream newOutputStream() throws FileNotFoundException {
+            return new FileOutputStream(new File(mDirectory, mName + TEMP_SUFFIX));
+        }
+
+        @Override
+        public OutputStream newAppendingOutputStream() throws FileNotFoundException {
+            return new FileOutputStream(new File(mDirectory, mName + TEMP_SUFFIX), true);
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            complete(mName, true);
+        }
+
+        @Override
+        public void abort() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            try {
+                complete(mName, false);
+            } catch (IOException ignore) {
+            }
+        }
+
+        @Override
+        public void suspend() {
+            if (mDone) {
+                return;
+            }
+            mDone = true;
+            try {
+                JournaledFileCache.this.suspend(mName);
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -16,25 +16,15 @@
 
 package com.uphyca.kitkat.storage.internal.impl;
 
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.TimeZone;
-
 import android.provider.DocumentsContract;
 
 import com.uphyca.kitkat.storage.internal.DocumentsColumnMapper;
 import com.uphyca.kitkat.storage.internal.MimeTypeResolver;
-import com.uphyca.kitkat.storage.skydrive.SkyDriveAlbum;
-import com.uphyca.kitkat.storage.skydrive.SkyDriveAudio;
-import com.uphyca.kitkat.storage.skydrive.SkyDriveFile;
-import com.uphyca.kitkat.storage.skydrive.SkyDriveFolder;
 import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
-import com.uphyca.kitkat.storage.skydrive.SkyDrivePhoto;
-import com.uphyca.kitkat.storage.skydrive.SkyDriveVideo;
 
 /**
  * LiveSDK for Androidを使った実装。
+ * 日時やサイズはデコードした時に取り出してあるので、ここでは組み立てるだけにする。
  *
  * @see <a href="https://github.com/liveservices/LiveSDK-for-Android/">LiveSDK for Android</a>
  * @author masui@uphyca.com
@@ -42,16 +32,67 @@ import com.uphyca.kitkat.storage.skydrive.SkyDriveVideo;
 public class LiveSdkDocumentsColumnMapper implements DocumentsColumnMapper<SkyDriveObject> {
 
     private final MimeTypeResolver mMimeTypeResolver;
-    private final DateFormat mDateFormat;
-    {
-        mDateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZZZZ");
-        mDateFormat.setTimeZone(TimeZone.getDefault());
-    }
 
     public LiveSdkDocumentsColumnMapper(MimeTypeResolver mimeTypeResolver) {
         mMimeTypeResolver = mimeTypeResolver;
     }
 
+    private static final int[] ALL_COLUMNS = new int[] {
+            INDEX_DOCUMENT_ID, //
+            INDEX_MIME_TYPE, //
+            INDEX_DISPLAY_NAME, //
+            INDEX_SUMMARY, //
+            INDEX_LAST_MODIFIED, //
+            INDEX_ICON, //
+            INDEX_FLAGS, //
+            INDEX_SIZE, //
+    };
+
+    @Override
+    public void mapRow(SkyDriveObject source, Object[] row) {
+        mapRow(source, ALL_COLUMNS, row);
+    }
+
+    @Override
+    public void mapRow(SkyDriveObject source, int[] columns, Object[] row) {
+        // MIMEタイプはフラグの計算にも使うので、一度だけ解決する
+        String mimeType = null;
+        for (int i = 0; i < columns.length; ++i) {
+            switch (columns[i]) {
+                case INDEX_DOCUMENT_ID:
+                    row[i] = source.getId();
+                    break;
+                case INDEX_MIME_TYPE:
+                    if (mimeType == null) {
+                        mimeType = mapMimeType(source);
+                    }
+                    row[i] = mimeType;
+                    break;
+                case INDEX_DISPLAY_NAME:
+                    row[i] = source.getName();
+                    break;
+                case INDEX_SUMMARY:
+                    row[i] = source.getDescription();
+                    break;
+                case INDEX_LAST_MODIFIED:
+                    row[i] = toLastModified(source.getUpdatedAt());
+                    break;
+                case INDEX_FLAGS:
+                    if (mimeType == null) {
+                        mimeType = mapMimeType(source);
+                    }
+                    row[i] = toFlags(source.isFolder(), mimeType);
+                    break;
+                case INDEX_SIZE:
+                    row[i] = source.getSize();
+                    break;
+                default:
+                    row[i] = null;
+                    break;
+            }
+        }
+    }
+
     @Override
     public String mapDocumentId(SkyDriveObject source) {
         return source.getId();
@@ -59,7 +100,7 @@ public class LiveSdkDocumentsColumnMapper implements DocumentsColumnMapper<SkyDr
 
     @Override
     public String mapMimeType(SkyDriveObject source) {
-        return thatObjectIsDirectory(source) ? DocumentsContract.Document.MIME_TYPE_DIR : mMimeTypeResolver.resolveMimeTypeFromName(source.getName());
+        return source.isFolder() ? DocumentsContract.Document.MIME_TYPE_DIR : mMimeTypeResolver.resolveMimeTypeFromName(source.getName());
     }
 
     @Override
@@ -74,12 +115,7 @@ public class LiveSdkDocumentsColumnMapper implements DocumentsColumnMapper<SkyDr
 
     @Override
     public Long mapLastModified(SkyDriveObject source) {
-        try {
-            return mDateFormat.parse(source.getUpdatedTime())
-                              .getTime();
-        } catch (ParseException ignore) {
-        }
-        return null;
+        return toLastModified(source.getUpdatedAt());
     }
 
     @Override
@@ -89,18 +125,31 @@ public class LiveSdkDocumentsColumnMapper implements DocumentsColumnMapper<SkyDr
 
     @Override
     public Integer mapFlags(SkyDriveObject source) {
+        return toFlags(source.isFolder(), mapMimeType(source));
+    }
+
+    @Override
+    public Long mapSize(SkyDriveObject source) {
+        return source.getSize();
+    }
+
+    private static Long toLastModified(long updatedAt) {
+        // 日時が不明な場合は0になっている
+        return updatedAt != 0L ? Long.valueOf(updatedAt) : null;
+    }
+
+    private static Integer toFlags(boolean directory, String mimeType) {
         int flags = 0;
 
         flags |= DocumentsContract.Document.FLAG_SUPPORTS_WRITE;
 
-        if (thatObjectIsDirectory(source)) {
+        if (directory) {
             flags |= DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE;
         } else {
             flags |= DocumentsContract.Document.FLAG_SUPPORTS_WRITE;
         }
 
         flags |= DocumentsContract.Document.FLAG_SUPPORTS_DELETE;
-        String mimeType = mapMimeType(source);
 
         if (mimeType.startsWith("image/")) {
             flags |= DocumentsContract.Document.FLAG_SUPPORTS_THUMBNAIL;
@@ -108,71 +157,4 @@ public class LiveSdkDocumentsColumnMapper implements DocumentsColumnMapper<SkyDr
 
         return flags;
     }
-
-    @Override
-    public Long mapSize(SkyDriveObject source) {
-        final long[] size = new long[1];
-        source.accept(new SkyDriveObject.Visitor() {
-            @Override
-            public void visit(SkyDriveAlbum album) {
-            }
-
-            @Override
-            public void visit(SkyDriveAudio audio) {
-                size[0] = audio.getSize();
-            }
-
-            @Override
-            public void visit(SkyDrivePhoto photo) {
-                size[0] = photo.getSize();
-            }
-
-            @Override
-            public void visit(SkyDriveFolder folder) {
-            }
-
-            @Override
-            public void visit(SkyDriveFile file) {
-                size[0] = file.getSize();
-            }
-
-            @Override
-            public void visit(SkyDriveVideo video) {
-                size[0] = video.getSize();
-            }
-        });
-        return size[0];
-    }
-
-    private static boolean thatObjectIsDirectory(SkyDriveObject source) {
-        final boolean[] dir = new boolean[1];
-        source.accept(new SkyDriveObject.Visitor() {
-            @Override
-            public void visit(SkyDriveAlbum album) {
-                dir[0] = true;
-            }
-
-            @Override
-            public void visit(SkyDriveAudio audio) {
-            }
-
-            @Override
-            public void visit(SkyDrivePhoto photo) {
-            }
-
-            @Override
-            public void visit(SkyDriveFolder folder) {
-                dir[0] = true;
-            }
-
-            @Override
-            public void visit(SkyDriveFile file) {
-            }
-
-            @Override
-            public void visit(SkyDriveVideo video) {
-            }
-        });
-        return dir[0];
-    }
 }
@@ -22,8 +22,10 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +37,7 @@ import org.json.JSONObject;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.CancellationSignal;
 
 import com.microsoft.live.LiveAuthClient;
 import com.microsoft.live.LiveAuthException;
@@ -45,8 +48,11 @@ import com.microsoft.live.LiveDownloadOperation;
 import com.microsoft.live.LiveOperation;
 import com.microsoft.live.LiveOperationException;
 import com.microsoft.live.LiveStatus;
+import com.microsoft.live.LiveUploadSession;
+import com.microsoft.live.LiveUploadSessionListener;
 import com.microsoft.live.OverwriteOption;
 import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadCheckpoint;
 import com.uphyca.kitkat.storage.skydrive.JsonKeys;
 import com.uphyca.kitkat.storage.skydrive.Scopes;
 import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
@@ -65,9 +71,17 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
             Scopes.SKYDRIVE_UPDATE
     });
 
+    /**
+     * リストを取得する時の並び順。
+     */
+    private static final String LIST_SORT_ORDER = "sort_by=name&sort_order=ascending";
+
     private final Context mContext;
     private final LiveAuthClient mLiveAuthClient;
-    private LiveConnectClient mLiveConnectClient;
+    /**
+     * 初期化かログインが終わるまではnull。複数のスレッドから初期化されるので、 initializeIfNecessary ではこのオブジェクトで同期する。
+     */
+    private volatile LiveConnectClient mLiveConnectClient;
 
     public LiveSdkSkyDriveClient(Context context, LiveAuthClient liveAuthClient) {
         mContext = context;
@@ -80,6 +94,16 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         if (mLiveConnectClient != null) {
             return;
         }
+        synchronized (this) {
+            // 他のスレッドが初期化し終えるのを待っていた場合は、もう一度初期化しない
+            if (mLiveConnectClient != null) {
+                return;
+            }
+            initialize();
+        }
+    }
+
+    private void initialize() {
         final CountDownLatch lock = new CountDownLatch(1);
         mLiveAuthClient.initialize(SCOPES, new LiveAuthListener() {
             @Override
@@ -97,7 +121,9 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         });
         try {
             lock.await();
-        } catch (InterruptedException ignore) {
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
         }
     }
 
@@ -157,8 +183,63 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         };
     }
 
+    /**
+     * 一件ずつ順番に取得する。並行して取得するのは StrictSkyDriveClient の役割。
+     */
+    @Override
+    public SkyDriveObject[] getAll(Collection<String> documentIds) {
+        final SkyDriveObject[] documents = new SkyDriveObject[documentIds.size()];
+        int i = 0;
+        for (String documentId : documentIds) {
+            final SkyDriveObject[] found = get(documentId);
+            documents[i++] = found.length == 1 ? found[0] : null;
+        }
+        return documents;
+    }
+
+    @Override
+    public SkyDriveObject[] list(String folderId) throws IOException {
+        return listFiles(folderId + "/files?" + LIST_SORT_ORDER);
+    }
+
+    @Override
+    public SkyDriveObject[] list(String folderId, int offset, int limit) throws IOException {
+        return listFiles(folderId + "/files?" + LIST_SORT_ORDER + "&offset=" + offset + "&limit=" + limit);
+    }
+
+    private SkyDriveObject[] listFiles(String path) throws IOException {
+        initializeIfNecessary();
+        if (mLiveConnectClient == null) {
+            IOException ioException = new IOException("Not logged in");
+            ioException.fillInStackTrace();
+            throw ioException;
+        }
+
+        //SkyDriveはドキュメントのID/filesでファイルをリストする
+        //大きなディレクトリでもボディ全体を持たないように、ストリームのまま読む
+        //ドキュメントUIの既定の並び順に合わせて、名前順で取得する
+        final InputStream in;
+        try {
+            in = mLiveConnectClient.getStream(path)
+                                   .getStream();
+        } catch (LiveOperationException e) {
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+        if (in == null) {
+            return empty();
+        }
+        return SkyDriveObjectReader.readList(in);
+    }
+
     @Override
     public File download(String documentId) throws IOException {
+        return download(documentId, null);
+    }
+
+    @Override
+    public File download(String documentId, CancellationSignal signal) throws IOException {
         initializeIfNecessary();
         if (mLiveConnectClient == null) {
             return null;
@@ -176,13 +257,75 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         try {
             File temp = File.createTempFile("document", null, mContext.getCacheDir());
             in = download.getStream();
-            drain(in, temp);
+            try {
+                drain(in, temp, signal);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            } catch (RuntimeException e) {
+                temp.delete();
+                throw e;
+            }
             return temp;
         } finally {
             closeQuietly(in);
         }
     }
 
+    @Override
+    public InputStream openStream(String documentId, CancellationSignal signal) throws IOException {
+        return openSource(documentId + "/content", signal);
+    }
+
+    @Override
+    public InputStream openStream(String documentId, long offset, CancellationSignal signal) throws IOException {
+        initializeIfNecessary();
+        if (mLiveConnectClient == null) {
+            IOException ioException = new IOException("Not logged in");
+            ioException.fillInStackTrace();
+            throw ioException;
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+
+        // Rangeを無視されても、SDKが先頭を読み飛ばすのでoffsetバイト目から返る
+        try {
+            return mLiveConnectClient.download(documentId + "/content", offset, -1L)
+                                     .getStream();
+        } catch (LiveOperationException e) {
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
+    /**
+     * LiveConnectClient#download(String) は絶対URLも受け付けるので、IDのパスもURLも同じように開ける。
+     */
+    @Override
+    public InputStream openSource(String source, CancellationSignal signal) throws IOException {
+        initializeIfNecessary();
+        if (mLiveConnectClient == null) {
+            IOException ioException = new IOException("Not logged in");
+            ioException.fillInStackTrace();
+            throw ioException;
+        }
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+
+        //レスポンスのエンティティをそのままストリームとして返す
+        try {
+            return mLiveConnectClient.download(source)
+                                     .getStream();
+        } catch (LiveOperationException e) {
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
     @Override
     public String upload(String path, String name, File file) throws IOException {
         initializeIfNecessary();
@@ -191,22 +334,31 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         }
 
         try {
-            LiveOperation post = mLiveConnectClient.upload(path, name, file, OverwriteOption.Overwrite);
-            JSONObject result = post.getResult();
-            if (result.has(JsonKeys.ERROR)) {
-                JSONObject error = result.optJSONObject(JsonKeys.ERROR);
-                String message = error.optString(JsonKeys.MESSAGE);
-                IOException ioException = new IOException(message);
-                ioException.fillInStackTrace();
-                throw ioException;
-            }
-            try {
-                return result.getString(JsonKeys.ID);
-            } catch (JSONException e) {
-                IOException ioException = new IOException(e.getMessage());
-                ioException.initCause(e);
-                throw ioException;
-            }
+            LiveOperation put = mLiveConnectClient.upload(path, name, file, OverwriteOption.Overwrite);
+            return toUploadedId(put.getResult());
+        } catch (LiveOperationException e) {
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
+    @Override
+    public String upload(String path, String name, File file, final UploadCheckpoint checkpoint) throws IOException {
+        initializeIfNecessary();
+        if (mLiveConnectClient == null) {
+            return null;
+        }
+
+        LiveUploadSession session = new LiveUploadSession(checkpoint.getUploadUrl(), checkpoint.getUploadedBytes());
+        try {
+            LiveOperation put = mLiveConnectClient.upload(path, name, file, OverwriteOption.Overwrite, session, new LiveUploadSessionListener() {
+                @Override
+                public void onSessionUpdated(LiveUploadSession session) {
+                    checkpoint.save(session.getUploadUrl(), session.getOffset());
+                }
+            });
+            return toUploadedId(put.getResult());
         } catch (LiveOperationException e) {
             IOException ioException = new IOException(e.getMessage());
             ioException.initCause(e);
@@ -214,6 +366,23 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         }
     }
 
+    private static String toUploadedId(JSONObject result) throws IOException {
+        if (result.has(JsonKeys.ERROR)) {
+            JSONObject error = result.optJSONObject(JsonKeys.ERROR);
+            String message = error.optString(JsonKeys.MESSAGE);
+            IOException ioException = new IOException(message);
+            ioException.fillInStackTrace();
+            throw ioException;
+        }
+        try {
+            return result.getString(JsonKeys.ID);
+        } catch (JSONException e) {
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        }
+    }
+
     @Override
     public String mkdir(String path, String name) throws IOException {
         initializeIfNecessary();
@@ -283,11 +452,19 @@ public class LiveSdkSkyDriveClient implements SkyDriveClient {
         return new SkyDriveObject[0];
     }
 
-    private static void drain(InputStream in, File dest) throws IOException {
+    private static void drain(InputStream in, File dest, CancellationSignal signal) throws IOException {
         OutputStream out = new BufferedOutputStream(new FileOutputStream(dest));
         try {
             byte[] buf = new byte[8192];
             for (int c; (c = in.read(buf)) > -1;) {
+                // キャンセルやタイムアウトで割り込まれたら、残りを読まずにやめる
+                if (signal != null) {
+                    signal.throwIfCanceled();
+                }
+                if (Thread.currentThread()
+                          .isInterrupted()) {
+                    throw new InterruptedIOException();
+                }
                 out.write(buf, 0, c);
             }
             out.flush();
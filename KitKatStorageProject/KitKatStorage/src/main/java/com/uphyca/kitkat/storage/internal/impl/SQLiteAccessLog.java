@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.uphyca.kitkat.storage.internal.AccessLog;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Documents;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Recents;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.SearchDocuments;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SQLiteを使った実装。
+ * メタ情報はキャッシュのテーブルから、キャッシュから消えていれば検索用のテーブルから取る。
+ *
+ * @author masui@uphyca.com
+ */
+public class SQLiteAccessLog implements AccessLog {
+
+    private static final String RECENTS_QUERY = "SELECT COALESCE(d." + Documents.JSON + ", s." + SearchDocuments.JSON + ")" //
+            + " FROM " + Recents.TABLE + " r" //
+            + " LEFT JOIN " + Documents.TABLE + " d ON d." + Documents.DOCUMENT_ID + "=r." + Recents.DOCUMENT_ID //
+            + " LEFT JOIN " + SearchDocuments.TABLE + " s ON s." + SearchDocuments.DOCUMENT_ID + "=r." + Recents.DOCUMENT_ID //
+            + " WHERE d." + Documents.JSON + " IS NOT NULL OR s." + SearchDocuments.JSON + " IS NOT NULL" //
+            + " ORDER BY r." + Recents.ACCESSED_AT + " DESC" //
+            + " LIMIT ?";
+
+    private static final String TRIM_WHERE = Recents.DOCUMENT_ID + " NOT IN (SELECT " + Recents.DOCUMENT_ID //
+            + " FROM " + Recents.TABLE //
+            + " ORDER BY " + Recents.ACCESSED_AT + " DESC" //
+            + " LIMIT ?)";
+
+    private final SkyDriveDatabaseHelper mHelper;
+    private final int mMaxEntries;
+
+    /**
+     * @param helper データベース
+     * @param maxEntries 履歴の最大件数
+     */
+    public SQLiteAccessLog(SkyDriveDatabaseHelper helper, int maxEntries) {
+        mHelper = helper;
+        mMaxEntries = maxEntries;
+    }
+
+    @Override
+    public void record(String documentId) {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final ContentValues values = new ContentValues();
+            values.put(Recents.DOCUMENT_ID, documentId);
+            values.put(Recents.ACCESSED_AT, System.currentTimeMillis());
+            db.insertWithOnConflict(Recents.TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.delete(Recents.TABLE, TRIM_WHERE, new String[] {
+                String.valueOf(mMaxEntries)
+            });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void remove(String documentId) {
+        mHelper.getWritableDatabase()
+               .delete(Recents.TABLE, Recents.DOCUMENT_ID + "=?", new String[] {
+                   documentId
+               });
+    }
+
+    @Override
+    public SkyDriveObject[] getRecentDocuments(int limit) {
+        final Cursor c = mHelper.getReadableDatabase()
+                                .rawQuery(RECENTS_QUERY, new String[] {
+                                    String.valueOf(limit)
+                                });
+        try {
+            final List<SkyDriveObject> recents = new ArrayList<SkyDriveObject>(c.getCount());
+            while (c.moveToNext()) {
+                try {
+                    recents.add(SkyDriveObject.create(new JSONObject(c.getString(0))));
+                } catch (JSONException ignore) {
+                }
+            }
+            return recents.toArray(new SkyDriveObject[recents.size()]);
+        } finally {
+            c.close();
+        }
+    }
+}
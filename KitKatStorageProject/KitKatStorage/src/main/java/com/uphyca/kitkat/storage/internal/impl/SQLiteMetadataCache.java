@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Aliases;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Documents;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Listings;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SQLiteを使った実装。
+ * 取得してから freshTtl 以内のものは新鮮、 maxStale 以内のものは古いが使えるもの、それ以上はキャッシュに無いものとして扱う。
+ * ドキュメントの親は一つしか持てないので、 me/skydrive のような別名で取得したリストは本来のIDのリストとして保存し、別名との対応を記録しておく。
+ *
+ * @author masui@uphyca.com
+ */
+public class SQLiteMetadataCache implements MetadataCache {
+
+    private static final String[] DOCUMENT_COLUMNS = new String[] {
+            Documents.JSON, //
+            Documents.FETCHED_AT, //
+    };
+
+    private static final String[] LISTING_COLUMNS = new String[] {
+        Listings.FETCHED_AT,
+    };
+
+    private final SkyDriveDatabaseHelper mHelper;
+    private final long mFreshTtl;
+    private final long mMaxStale;
+    private final CopyOnWriteArrayList<OnChildrenChangedListener> mListeners = new CopyOnWriteArrayList<OnChildrenChangedListener>();
+
+    /**
+     * @param helper データベース
+     * @param freshTtl 新鮮とみなす期間(ミリ秒)
+     * @param maxStale 古くても使える期間(ミリ秒)
+     */
+    public SQLiteMetadataCache(SkyDriveDatabaseHelper helper, long freshTtl, long maxStale) {
+        mHelper = helper;
+        mFreshTtl = freshTtl;
+        mMaxStale = maxStale;
+    }
+
+    @Override
+    public Entry<SkyDriveObject> getDocument(String documentId) {
+        final long now = System.currentTimeMillis();
+        final Cursor c = mHelper.getReadableDatabase()
+                                .query(Documents.TABLE, DOCUMENT_COLUMNS, Documents.DOCUMENT_ID + "=?", new String[] {
+                                    documentId
+                                }, null, null, null);
+        try {
+            if (!c.moveToFirst()) {
+                return null;
+            }
+            final long fetchedAt = c.getLong(1);
+            if (isExpired(fetchedAt, now)) {
+                return null;
+            }
+            final SkyDriveObject document = toSkyDriveObject(c.getString(0));
+            if (document == null) {
+                return null;
+            }
+            return new Entry<SkyDriveObject>(document, fetchedAt, isFresh(fetchedAt, now));
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public Entry<SkyDriveObject[]> getChildren(String parentId) {
+        final long now = System.currentTimeMillis();
+        final SQLiteDatabase db = mHelper.getReadableDatabase();
+        final String[] args = new String[] {
+            resolveFolderId(db, parentId)
+        };
+
+        final long fetchedAt;
+        final Cursor listing = db.query(Listings.TABLE, LISTING_COLUMNS, Listings.PARENT_ID + "=?", args, null, null, null);
+        try {
+            if (!listing.moveToFirst()) {
+                return null;
+            }
+            fetchedAt = listing.getLong(0);
+        } finally {
+            listing.close();
+        }
+        if (isExpired(fetchedAt, now)) {
+            return null;
+        }
+
+        // 取得した時の順に返す
+        final Cursor c = db.query(Documents.TABLE, DOCUMENT_COLUMNS, Documents.PARENT_ID + "=?", args, null, null, "rowid");
+        try {
+            final SkyDriveObject[] children = new SkyDriveObject[c.getCount()];
+            int count = 0;
+            while (c.moveToNext()) {
+                final SkyDriveObject child = toSkyDriveObject(c.getString(0));
+                if (child != null) {
+                    children[count++] = child;
+                }
+            }
+            return new Entry<SkyDriveObject[]>(trim(children, count), fetchedAt, isFresh(fetchedAt, now));
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public void putDocument(SkyDriveObject document) {
+        final long now = System.currentTimeMillis();
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            // リストに含まれているドキュメントは、リストを取得した時のディレクトリのIDを維持する
+            final ContentValues values = new ContentValues();
+            values.put(Documents.JSON, document.toJson()
+                                               .toString());
+            values.put(Documents.FETCHED_AT, now);
+            final int updated = db.update(Documents.TABLE, values, Documents.DOCUMENT_ID + "=?", new String[] {
+                document.getId()
+            });
+            if (updated == 0) {
+                values.put(Documents.DOCUMENT_ID, document.getId());
+                values.put(Documents.PARENT_ID, document.getParentId());
+                db.insert(Documents.TABLE, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void putChildren(String parentId, SkyDriveObject[] children) {
+        final long now = System.currentTimeMillis();
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            String folderId = FolderAliases.resolve(parentId, children);
+            if (!folderId.equals(parentId)) {
+                final ContentValues alias = new ContentValues();
+                alias.put(Aliases.ALIAS, parentId);
+                alias.put(Aliases.FOLDER_ID, folderId);
+                db.insertWithOnConflict(Aliases.TABLE, null, alias, SQLiteDatabase.CONFLICT_REPLACE);
+            } else {
+                // 空のリストなどで本来のIDが分からない場合は、前に記録した対応を使う
+                folderId = resolveFolderId(db, parentId);
+            }
+            db.delete(Documents.TABLE, Documents.PARENT_ID + "=?", new String[] {
+                folderId
+            });
+            final ContentValues values = new ContentValues();
+            for (SkyDriveObject each : children) {
+                values.clear();
+                values.put(Documents.DOCUMENT_ID, each.getId());
+                values.put(Documents.PARENT_ID, folderId);
+                values.put(Documents.JSON, each.toJson()
+                                               .toString());
+                values.put(Documents.FETCHED_AT, now);
+                db.insertWithOnConflict(Documents.TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            values.clear();
+            values.put(Listings.PARENT_ID, folderId);
+            values.put(Listings.FETCHED_AT, now);
+            db.insertWithOnConflict(Listings.TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        notifyChildrenChanged(parentId);
+    }
+
+    @Override
+    public void touchChildren(String parentId) {
+        final long now = System.currentTimeMillis();
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            final String[] args = new String[] {
+                resolveFolderId(db, parentId)
+            };
+            final ContentValues values = new ContentValues();
+            values.put(Documents.FETCHED_AT, now);
+            db.update(Documents.TABLE, values, Documents.PARENT_ID + "=?", args);
+            values.clear();
+            values.put(Listings.FETCHED_AT, now);
+            db.update(Listings.TABLE, values, Listings.PARENT_ID + "=?", args);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void invalidateChildren(String parentId) {
+        // 削除するとリストが空に見えてしまうので、古いものとして残して再検証させる
+        final long staleAt = System.currentTimeMillis() - mFreshTtl;
+        final ContentValues values = new ContentValues();
+        values.put(Listings.FETCHED_AT, staleAt);
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.update(Listings.TABLE, values, Listings.PARENT_ID + "=? AND " + Listings.FETCHED_AT + ">?", new String[] {
+                resolveFolderId(db, parentId), //
+                String.valueOf(staleAt), //
+        });
+        notifyChildrenChanged(parentId);
+    }
+
+    @Override
+    public void removeDocument(String documentId) {
+        mHelper.getWritableDatabase()
+               .delete(Documents.TABLE, Documents.DOCUMENT_ID + "=?", new String[] {
+                   documentId
+               });
+    }
+
+    @Override
+    public void addOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        mListeners.addIfAbsent(listener);
+    }
+
+    @Override
+    public void removeOnChildrenChangedListener(OnChildrenChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * 別名と本来のIDのどちらで開かれていても再クエリされるように、両方に通知する。
+     */
+    private void notifyChildrenChanged(String parentId) {
+        final Set<String> folderIds = new LinkedHashSet<String>();
+        folderIds.add(parentId);
+        final SQLiteDatabase db = mHelper.getReadableDatabase();
+        final String folderId = resolveFolderId(db, parentId);
+        folderIds.add(folderId);
+        final Cursor c = db.query(Aliases.TABLE, new String[] {
+            Aliases.ALIAS
+        }, Aliases.FOLDER_ID + "=?", new String[] {
+            folderId
+        }, null, null, null);
+        try {
+            while (c.moveToNext()) {
+                folderIds.add(c.getString(0));
+            }
+        } finally {
+            c.close();
+        }
+        for (String id : folderIds) {
+            for (OnChildrenChangedListener each : mListeners) {
+                each.onChildrenChanged(id);
+            }
+        }
+    }
+
+    /**
+     * @return 別名なら本来のID。それ以外は folderId
+     */
+    private static String resolveFolderId(SQLiteDatabase db, String folderId) {
+        return DatabaseUtils.stringForQuery(db, "SELECT IFNULL(MAX(" + Aliases.FOLDER_ID + "), ?) FROM " + Aliases.TABLE + " WHERE " + Aliases.ALIAS + "=?", new String[] {
+                folderId, //
+                folderId, //
+        });
+    }
+
+    private boolean isFresh(long fetchedAt, long now) {
+        return now - fetchedAt < mFreshTtl;
+    }
+
+    private boolean isExpired(long fetchedAt, long now) {
+        return now - fetchedAt >= mMaxStale;
+    }
+
+    private static SkyDriveObject toSkyDriveObject(String json) {
+        try {
+            return SkyDriveObject.create(new JSONObject(json));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    private static SkyDriveObject[] trim(SkyDriveObject[] objects, int count) {
+        if (objects.length == count) {
+            return objects;
+        }
+        final SkyDriveObject[] trimmed = new SkyDriveObject[count];
+        System.arraycopy(objects, 0, trimmed, 0, count);
+        return trimmed;
+    }
+}
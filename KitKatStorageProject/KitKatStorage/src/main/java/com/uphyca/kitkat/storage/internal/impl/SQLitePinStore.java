@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.uphyca.kitkat.storage.internal.PinStore;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.PinnedDocuments;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Pins;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SQLiteを使った実装。
+ * 内容は専用のディレクトリにドキュメントごとに一つだけ保存し、複数の固定に含まれるドキュメントも共有する。
+ * 固定されたドキュメントのIDはプロバイダが行ごとに調べるので、メモリに持っておく。
+ *
+ * @author masui@uphyca.com
+ */
+public class SQLitePinStore implements PinStore {
+
+    private static final String[] PATH_COLUMNS = new String[] {
+            PinnedDocuments.DOCUMENT_ID, //
+            PinnedDocuments.PATH, //
+    };
+
+    private final SkyDriveDatabaseHelper mHelper;
+    private final File mDirectory;
+
+    /**
+     * 固定したドキュメントとサブツリーにあるドキュメントのID。変更したらnullにして、次に使う時に読み直す。このオブジェクトで同期する。
+     */
+    private Set<String> mPinned;
+
+    /**
+     * @param helper データベース
+     * @param directory 内容を保存するディレクトリ。キャッシュのディレクトリは消されることがあるので使わない
+     */
+    public SQLitePinStore(SkyDriveDatabaseHelper helper, File directory) {
+        mHelper = helper;
+        mDirectory = directory;
+    }
+
+    @Override
+    public void pin(String documentId) {
+        final ContentValues values = new ContentValues();
+        values.put(Pins.DOCUMENT_ID, documentId);
+        values.put(Pins.PINNED_AT, System.currentTimeMillis());
+        mHelper.getWritableDatabase()
+               .insertWithOnConflict(Pins.TABLE, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        invalidate();
+    }
+
+    @Override
+    public void unpin(String documentId) {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final List<String[]> removed;
+        db.beginTransaction();
+        try {
+            removed = queryPaths(db, documentId);
+            db.delete(PinnedDocuments.TABLE, PinnedDocuments.PIN_ID + "=?", new String[] {
+                documentId
+            });
+            db.delete(Pins.TABLE, Pins.DOCUMENT_ID + "=?", new String[] {
+                documentId
+            });
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidate();
+        deleteUnreferencedFiles(removed);
+    }
+
+    @Override
+    public String[] getPins() {
+        final Cursor c = mHelper.getReadableDatabase()
+                                .query(Pins.TABLE, new String[] {
+                                    Pins.DOCUMENT_ID
+                                }, null, null, null, null, Pins.PINNED_AT);
+        try {
+            final String[] pins = new String[c.getCount()];
+            for (int i = 0; c.moveToNext(); ++i) {
+                pins[i] = c.getString(0);
+            }
+            return pins;
+        } finally {
+            c.close();
+        }
+    }
+
+    @Override
+    public boolean isPinned(String documentId) {
+        return pinned().contains(documentId);
+    }
+
+    @Override
+    public File getFile(String documentId) {
+        final String path = DatabaseUtils.stringForQuery(mHelper.getReadableDatabase(), "SELECT IFNULL(MAX(" + PinnedDocuments.PATH + "), '') FROM " + PinnedDocuments.TABLE + " WHERE " + PinnedDocuments.DOCUMENT_ID + "=?", new String[] {
+            documentId
+        });
+        if (path.isEmpty()) {
+            return null;
+        }
+        final File file = new File(path);
+        return file.isFile() ? file : null;
+    }
+
+    @Override
+    public boolean isCurrent(String pinId, SkyDriveObject document) {
+        final long count = DatabaseUtils.queryNumEntries(mHelper.getReadableDatabase(), PinnedDocuments.TABLE, PinnedDocuments.PIN_ID + "=? AND " + PinnedDocuments.DOCUMENT_ID + "=? AND " + PinnedDocuments.UPDATED_AT + "=? AND " + PinnedDocuments.SIZE + "=?", new String[] {
+                pinId, //
+                document.getId(), //
+                String.valueOf(document.getUpdatedAt()), //
+                String.valueOf(document.getSize()), //
+        });
+        return count > 0 && getFile(document.getId()) != null;
+    }
+
+    /**
+     * 一時ファイルに書き終えてから置き換えるので、読んでいる途中のクライアントは前の内容を読み続けられる。
+     * 書いている間に固定が解除されていたら、一時ファイルは置き換えずに捨てる。
+     */
+    @Override
+    public void putFile(String pinId, SkyDriveObject document, InputStream content) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        final File file = new File(mDirectory, FileNames.fromKey(document.getId()));
+        final File temp = writeTempFile(file, content);
+        try {
+            final SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (!isPinRow(db, pinId)) {
+                    return;
+                }
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Failed to rename " + temp + " to " + file);
+                }
+                put(db, pinId, document, file.getPath());
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            temp.delete();
+        }
+        invalidate();
+    }
+
+    /**
+     * 書き込みで開かれたドキュメントの内容は、アップロードが終わるまではサーバーから取得できないので、ここで置き換える。
+     * 保存した更新日時とサイズは変えないので、アップロードが終わった後の同期でサーバーの内容に揃う。
+     */
+    @Override
+    public void replaceFile(String documentId, File content) throws IOException {
+        final String path = DatabaseUtils.stringForQuery(mHelper.getReadableDatabase(), "SELECT IFNULL(MAX(" + PinnedDocuments.PATH + "), '') FROM " + PinnedDocuments.TABLE + " WHERE " + PinnedDocuments.DOCUMENT_ID + "=?", new String[] {
+            documentId
+        });
+        if (path.isEmpty()) {
+            return;
+        }
+        final File file = new File(path);
+        final InputStream in = new FileInputStream(content);
+        final File temp;
+        try {
+            temp = writeTempFile(file, in);
+        } finally {
+            in.close();
+        }
+        try {
+            final SQLiteDatabase db = mHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                // 書いている間に固定が解除されていたら置き換えない
+                if (DatabaseUtils.queryNumEntries(db, PinnedDocuments.TABLE, PinnedDocuments.DOCUMENT_ID + "=? AND " + PinnedDocuments.PATH + "=?", new String[] {
+                        documentId, //
+                        path, //
+                }) == 0) {
+                    return;
+                }
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Failed to rename " + temp + " to " + file);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    @Override
+    public void putFolder(String pinId, SkyDriveObject folder) {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            if (!isPinRow(db, pinId)) {
+                return;
+            }
+            put(db, pinId, folder, null);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidate();
+    }
+
+    @Override
+    public void retain(String pinId, Set<String> documentIds) {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final List<String[]> removed = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (String[] each : queryPaths(db, pinId)) {
+                if (documentIds.contains(each[0])) {
+                    continue;
+                }
+                db.delete(PinnedDocuments.TABLE, PinnedDocuments.PIN_ID + "=? AND " + PinnedDocuments.DOCUMENT_ID + "=?", new String[] {
+                        pinId, //
+                        each[0], //
+                });
+                removed.add(each);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (!removed.isEmpty()) {
+            invalidate();
+            deleteUnreferencedFiles(removed);
+        }
+    }
+
+    private static void put(SQLiteDatabase db, String pinId, SkyDriveObject document, String path) {
+        final ContentValues values = new ContentValues();
+        values.put(PinnedDocuments.PIN_ID, pinId);
+        values.put(PinnedDocuments.DOCUMENT_ID, document.getId());
+        values.put(PinnedDocuments.UPDATED_AT, document.getUpdatedAt());
+        values.put(PinnedDocuments.SIZE, document.getSize());
+        values.put(PinnedDocuments.PATH, path);
+        db.insertWithOnConflict(PinnedDocuments.TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * file と同じディレクトリの一時ファイルに content を書く。
+     */
+    private static File writeTempFile(File file, InputStream content) throws IOException {
+        final File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        boolean success = false;
+        try {
+            final OutputStream out = new FileOutputStream(temp);
+            try {
+                final byte[] buf = new byte[8192];
+                for (int c; (c = content.read(buf)) > -1;) {
+                    out.write(buf, 0, c);
+                }
+            } finally {
+                out.close();
+            }
+            success = true;
+            return temp;
+        } finally {
+            if (!success) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * 同期している間に #unpin(String) されていないか調べる。トランザクションの中で呼ぶ。
+     */
+    private static boolean isPinRow(SQLiteDatabase db, String pinId) {
+        return DatabaseUtils.queryNumEntries(db, Pins.TABLE, Pins.DOCUMENT_ID + "=?", new String[] {
+            pinId
+        }) > 0;
+    }
+
+    /**
+     * @return 固定に含まれるドキュメントのIDと内容のパスの組
+     */
+    private static List<String[]> queryPaths(SQLiteDatabase db, String pinId) {
+        final Cursor c = db.query(PinnedDocuments.TABLE, PATH_COLUMNS, PinnedDocuments.PIN_ID + "=?", new String[] {
+            pinId
+        }, null, null, null);
+        try {
+            final List<String[]> paths = new ArrayList<>(c.getCount());
+            while (c.moveToNext()) {
+                paths.add(new String[] {
+                        c.getString(0), //
+                        c.getString(1), //
+                });
+            }
+            return paths;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * 他の固定にも含まれるドキュメントの内容は残す。
+     */
+    private void deleteUnreferencedFiles(List<String[]> removed) {
+        final Set<String> pinned = pinned();
+        for (String[] each : removed) {
+            if (each[1] != null && !pinned.contains(each[0])) {
+                new File(each[1]).delete();
+            }
+        }
+    }
+
+    private synchronized Set<String> pinned() {
+        if (mPinned == null) {
+            final Set<String> pinned = new HashSet<>();
+            final Cursor c = mHelper.getReadableDatabase()
+                                    .rawQuery("SELECT " + Pins.DOCUMENT_ID + " FROM " + Pins.TABLE //
+                                            + " UNION SELECT " + PinnedDocuments.DOCUMENT_ID + " FROM " + PinnedDocuments.TABLE, null);
+            try {
+                while (c.moveToNext()) {
+                    pinned.add(c.getString(0));
+                }
+            } finally {
+                c.close();
+            }
+            mPinned = Collections.unmodifiableSet(pinned);
+        }
+        return mPinned;
+    }
+
+    private synchronized void invalidate() {
+        mPinned = null;
+    }
+}
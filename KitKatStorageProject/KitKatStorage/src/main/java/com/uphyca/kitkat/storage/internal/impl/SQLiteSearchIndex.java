@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.uphyca.kitkat.storage.internal.SearchIndex;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.SearchDocuments;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.SearchFts;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SQLiteのFTS4を使った実装。
+ * FIXME トークナイザはsimpleなので、日本語の名前は単語の先頭からしか一致しない
+ *
+ * @author masui@uphyca.com
+ */
+public class SQLiteSearchIndex implements SearchIndex {
+
+    private static final String SEARCH_QUERY = "SELECT d." + SearchDocuments.JSON //
+            + " FROM " + SearchFts.TABLE + " f" //
+            + " JOIN " + SearchDocuments.TABLE + " d ON d." + SearchDocuments._ID + "=f.docid" //
+            + " WHERE " + SearchFts.TABLE + " MATCH ?" //
+            + " LIMIT ?";
+
+    private final SkyDriveDatabaseHelper mHelper;
+
+    public SQLiteSearchIndex(SkyDriveDatabaseHelper helper) {
+        mHelper = helper;
+    }
+
+    @Override
+    public void index(SkyDriveObject document) {
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            upsert(db, document, document.getParentId(), false, new ContentValues());
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void indexChildren(String parentId, SkyDriveObject[] children) {
+        // 別名で取得したリストも、 index(SkyDriveObject) と同じく本来の親のIDで登録する
+        final String folderId = FolderAliases.resolve(parentId, children);
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(SearchDocuments.TABLE, SearchDocuments.PARENT_ID + "=?", new String[] {
+                folderId
+            });
+            final ContentValues values = new ContentValues();
+            for (SkyDriveObject each : children) {
+                upsert(db, each, folderId, true, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void remove(String documentId) {
+        mHelper.getWritableDatabase()
+               .delete(SearchDocuments.TABLE, SearchDocuments.DOCUMENT_ID + "=?", new String[] {
+                   documentId
+               });
+    }
+
+    @Override
+    public SkyDriveObject[] search(String query, int limit) {
+        final String match = toMatchExpression(query);
+        if (match == null) {
+            return new SkyDriveObject[0];
+        }
+        final Cursor c = mHelper.getReadableDatabase()
+                                .rawQuery(SEARCH_QUERY, new String[] {
+                                        match, //
+                                        String.valueOf(limit), //
+                                });
+        try {
+            final List<SkyDriveObject> found = new ArrayList<SkyDriveObject>(c.getCount());
+            while (c.moveToNext()) {
+                try {
+                    found.add(SkyDriveObject.create(new JSONObject(c.getString(0))));
+                } catch (JSONException ignore) {
+                }
+            }
+            return found.toArray(new SkyDriveObject[found.size()]);
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * ディレクトリのリストとして登録する場合は、リストを取得した時のディレクトリのIDで置き換える。
+     * 単体で登録する場合は、既に登録されていればディレクトリのIDを維持する。
+     */
+    private static void upsert(SQLiteDatabase db, SkyDriveObject document, String parentId, boolean replaceParent, ContentValues values) {
+        values.clear();
+        values.put(SearchDocuments.NAME, document.getName());
+        values.put(SearchDocuments.DESCRIPTION, document.getDescription());
+        values.put(SearchDocuments.JSON, document.toJson()
+                                                 .toString());
+        if (replaceParent) {
+            values.put(SearchDocuments.PARENT_ID, parentId);
+        }
+        final int updated = db.update(SearchDocuments.TABLE, values, SearchDocuments.DOCUMENT_ID + "=?", new String[] {
+            document.getId()
+        });
+        if (updated == 0) {
+            values.put(SearchDocuments.DOCUMENT_ID, document.getId());
+            values.put(SearchDocuments.PARENT_ID, parentId);
+            db.insert(SearchDocuments.TABLE, null, values);
+        }
+    }
+
+    /**
+     * 空白で区切った検索語を、それぞれ前方一致するフレーズのANDにする。
+     * フレーズの中では演算子も列の指定も解釈されないので、検索語はそのまま語として検索される。
+     * FTS4には引用符をエスケープする方法が無く、 "" と重ねても "term"* のように外に * を付けても一致しなくなる。
+     * なので検索語の中の引用符は、トークナイザと同じく区切りとして空白にし、 * はフレーズの閉じる引用符の内側に付ける。
+     *
+     * @return 検索語が空ならnull
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return null;
+        }
+        final StringBuilder match = new StringBuilder();
+        for (String each : query.trim()
+                                .split("\\s+")) {
+            final String term = each.replace('"', ' ')
+                                    .trim();
+            if (term.length() == 0) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"')
+                 .append(term)
+                 .append("*\"");
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadCheckpoint;
+import com.uphyca.kitkat.storage.internal.UploadQueue;
+import com.uphyca.kitkat.storage.internal.impl.SkyDriveDatabaseHelper.Uploads;
+
+/**
+ * SQLiteを使った実装。
+ * アップロードする内容は専用のディレクトリに保存ごとに別のファイルとして保存し、同じドキュメントが再び保存されたら前の内容は消す。
+ * アップロード中のファイルが置き換えられることはないので、古い内容と新しい内容が混ざって送られることはない。
+ * 失敗した場合は指数的に間隔を広げ、同時に再試行が集中しないようにランダムな揺らぎを加える。
+ * 分割したアップロードの進み具合は行に保存するので、再試行やプロセスの再起動の後も続きから送る。
+ *
+ * @author masui@uphyca.com
+ */
+public class SQLiteUploadQueue implements UploadQueue {
+
+    private static final String[] COLUMNS = new String[] {
+            Uploads.DOCUMENT_ID, //
+            Uploads.PARENT_ID, //
+            Uploads.NAME, //
+            Uploads.PATH, //
+            Uploads.GENERATION, //
+            Uploads.ATTEMPTS, //
+            Uploads.NEXT_ATTEMPT_AT, //
+            Uploads.UPLOAD_URL, //
+            Uploads.UPLOADED_BYTES, //
+    };
+
+    private final SkyDriveDatabaseHelper mHelper;
+    private final SkyDriveClient mSkyDriveClient;
+    private final ScheduledExecutorService mExecutor;
+    private final File mDirectory;
+    private final long mMinBackoff;
+    private final long mMaxBackoff;
+    private final Random mRandom = new Random();
+
+    /**
+     * 次に処理する予定。このオブジェクトで同期する。
+     */
+    private ScheduledFuture<?> mScheduled;
+    private ProcessTask mScheduledTask;
+    private long mScheduledAt;
+
+    /**
+     * 最後に使った世代。このオブジェクトで同期する。最初に使う時にデータベースから読む。
+     */
+    private long mGeneration = -1L;
+
+    /**
+     * @param helper データベース
+     * @param skyDriveClient アップロードに使う SkyDriveClient
+     * @param executor アップロードに使うスレッド
+     * @param directory アップロードする内容を保存するディレクトリ。キャッシュのディレクトリは消されることがあるので使わない
+     * @param minBackoff 最初に失敗した後、再試行するまでの間隔(ミリ秒)
+     * @param maxBackoff 再試行するまでの間隔の上限(ミリ秒)
+     */
+    public SQLiteUploadQueue(SkyDriveDatabaseHelper helper, SkyDriveClient skyDriveClient, ScheduledExecutorService executor, File directory, long minBackoff, long maxBackoff) {
+        mHelper = helper;
+        mSkyDriveClient = skyDriveClient;
+        mExecutor = executor;
+        mDirectory = directory;
+        mMinBackoff = minBackoff;
+        mMaxBackoff = maxBackoff;
+    }
+
+    @Override
+    public void enqueue(String documentId, String parentId, String name, File file) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Failed to create " + mDirectory);
+        }
+        // 世代ごとに別のファイルにするので、アップロード中の前回の内容が書き換わることはない
+        final long generation = nextGeneration();
+        final File queued = new File(mDirectory, FileNames.fromKey(documentId) + "." + generation);
+        moveFile(file, queued);
+
+        final long now = System.currentTimeMillis();
+        final ContentValues values = new ContentValues();
+        values.put(Uploads.DOCUMENT_ID, documentId);
+        values.put(Uploads.PARENT_ID, parentId);
+        values.put(Uploads.NAME, name);
+        values.put(Uploads.PATH, queued.getPath());
+        values.put(Uploads.ENQUEUED_AT, now);
+        values.put(Uploads.GENERATION, generation);
+        values.put(Uploads.ATTEMPTS, 0);
+        values.put(Uploads.NEXT_ATTEMPT_AT, now);
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final String previous;
+        db.beginTransaction();
+        try {
+            previous = queryPath(db, documentId);
+            db.insertWithOnConflict(Uploads.TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (previous != null) {
+            // アップロード中でも、開いているファイルは消しても読める
+            new File(previous).delete();
+        }
+        schedule(0L);
+    }
+
+    private static String queryPath(SQLiteDatabase db, String documentId) {
+        final Cursor c = db.query(Uploads.TABLE, new String[] {
+            Uploads.PATH
+        }, Uploads.DOCUMENT_ID + "=?", new String[] {
+            documentId
+        }, null, null, null);
+        try {
+            return c.moveToFirst() ? c.getString(0) : null;
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * 保存ごとに増える世代を返す。
+     * 時刻と違って同じミリ秒に二度保存されても重ならない。プロセスをまたいでも、データベースに残っている最大の値より大きくなる。
+     */
+    private synchronized long nextGeneration() {
+        if (mGeneration < 0L) {
+            final Cursor c = mHelper.getReadableDatabase()
+                                    .rawQuery("SELECT MAX(" + Uploads.GENERATION + ") FROM " + Uploads.TABLE, null);
+            try {
+                mGeneration = c.moveToFirst() ? c.getLong(0) : 0L;
+            } finally {
+                c.close();
+            }
+        }
+        return ++mGeneration;
+    }
+
+    @Override
+    public void start() {
+        schedule(0L);
+    }
+
+    @Override
+    public void retryNow() {
+        final ContentValues values = new ContentValues();
+        values.put(Uploads.NEXT_ATTEMPT_AT, System.currentTimeMillis());
+        final int updated = mHelper.getWritableDatabase()
+                                   .update(Uploads.TABLE, values, null, null);
+        if (updated > 0) {
+            schedule(0L);
+        }
+    }
+
+    /**
+     * 予定より早く処理する必要がある場合だけ予定を変更する。
+     * 実行中の処理は予定に数えないので、処理中に保存されたものは処理が終わった後にもう一度処理する。
+     */
+    private synchronized void schedule(long delay) {
+        final long at = System.currentTimeMillis() + delay;
+        if (mScheduled != null && mScheduledAt <= at) {
+            return;
+        }
+        if (mScheduled != null) {
+            mScheduled.cancel(false);
+        }
+        final ProcessTask task = new ProcessTask();
+        mScheduledAt = at;
+        mScheduledTask = task;
+        mScheduled = mExecutor.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private class ProcessTask implements Runnable {
+
+        @Override
+        public void run() {
+            synchronized (SQLiteUploadQueue.this) {
+                if (mScheduledTask == this) {
+                    mScheduled = null;
+                    mScheduledTask = null;
+                }
+            }
+            process();
+        }
+    }
+
+    /**
+     * 期限の来たアップロードを全て処理して、次に期限の来るものを予約する。
+     */
+    private void process() {
+        final long now = System.currentTimeMillis();
+        final Cursor c = mHelper.getReadableDatabase()
+                                .query(Uploads.TABLE, COLUMNS, null, null, null, null, Uploads.NEXT_ATTEMPT_AT);
+        long nextAttemptAt = Long.MAX_VALUE;
+        try {
+            while (c.moveToNext()) {
+                final long attemptAt = c.getLong(6);
+                if (attemptAt > now) {
+                    nextAttemptAt = Math.min(nextAttemptAt, attemptAt);
+                    continue;
+                }
+                final long retryAt = upload(c.getString(0), c.getString(1), c.getString(2), c.getString(3), c.getLong(4), c.getInt(5), c.getString(7), c.getLong(8));
+                nextAttemptAt = Math.min(nextAttemptAt, retryAt);
+            }
+        } finally {
+            c.close();
+        }
+        if (nextAttemptAt != Long.MAX_VALUE) {
+            schedule(Math.max(0L, nextAttemptAt - System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * @return 失敗した場合は再試行する時刻。成功した場合は Long#MAX_VALUE
+     */
+    private long upload(String documentId, String parentId, String name, String path, long generation, int attempts, String uploadUrl, long uploadedBytes) {
+        final File file = new File(path);
+        if (!file.exists()) {
+            // 内容が失われたものはアップロードできない
+            delete(documentId, generation, null);
+            return Long.MAX_VALUE;
+        }
+        try {
+            // ログインしていない場合はnullが返る
+            final Checkpoint checkpoint = new Checkpoint(documentId, generation, uploadUrl, uploadedBytes);
+            if (mSkyDriveClient.upload(parentId, name, file, checkpoint) == null) {
+                return retryLater(documentId, generation, attempts + 1);
+            }
+            delete(documentId, generation, file);
+            return Long.MAX_VALUE;
+        } catch (IOException e) {
+            return retryLater(documentId, generation, attempts + 1);
+        } catch (RuntimeException e) {
+            return retryLater(documentId, generation, attempts + 1);
+        }
+    }
+
+    /**
+     * アップロード中に再び保存されていなければ行を削除する。保存されていれば新しい内容の行が残る。
+     * ファイルはその世代のものなので、どちらの場合も消す。
+     */
+    private void delete(String documentId, long generation, File file) {
+        mHelper.getWritableDatabase()
+               .delete(Uploads.TABLE, Uploads.DOCUMENT_ID + "=? AND " + Uploads.GENERATION + "=?", new String[] {
+                       documentId, //
+                       String.valueOf(generation), //
+               });
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    /**
+     * 進み具合を行に保存する。アップロード中に再び保存された場合は、内容が変わったので保存しない。
+     */
+    private class Checkpoint implements UploadCheckpoint {
+
+        private final String mDocumentId;
+        private final long mCheckpointGeneration;
+        private final String mUploadUrl;
+        private final long mUploadedBytes;
+
+        Checkpoint(String documentId, long generation, String uploadUrl, long uploadedBytes) {
+            mDocumentId = documentId;
+            mCheckpointGeneration = generation;
+            mUploadUrl = uploadUrl;
+            mUploadedBytes = uploadedBytes;
+        }
+
+        @Override
+        public String getUploadUrl() {
+            return mUploadUrl;
+        }
+
+        @Override
+        public long getUploadedBytes() {
+            return mUploadedBytes;
+        }
+
+        @Override
+        public void save(String uploadUrl, long uploadedBytes) {
+            final ContentValues values = new ContentValues();
+            values.put(Uploads.UPLOAD_URL, uploadUrl);
+            values.put(Uploads.UPLOADED_BYTES, uploadedBytes);
+            mHelper.getWritableDatabase()
+                   .update(Uploads.TABLE, values, Uploads.DOCUMENT_ID + "=? AND " + Uploads.GENERATION + "=?", new String[] {
+                           mDocumentId, //
+                           String.valueOf(mCheckpointGeneration), //
+                   });
+        }
+    }
+
+    private long retryLater(String documentId, long generation, int attempts) {
+        final long retryAt = System.currentTimeMillis() + calculateBackoff(attempts);
+        final ContentValues values = new ContentValues();
+        values.put(Uploads.ATTEMPTS, attempts);
+        values.put(Uploads.NEXT_ATTEMPT_AT, retryAt);
+        mHelper.getWritableDatabase()
+               .update(Uploads.TABLE, values, Uploads.DOCUMENT_ID + "=? AND " + Uploads.GENERATION + "=?", new String[] {
+                       documentId, //
+                       String.valueOf(generation), //
+               });
+        return retryAt;
+    }
+
+    /**
+     * minBackoff * 2^(attempts-1) を上限で抑え、その半分から1.5倍の間でばらつかせる。
+     */
+    private long calculateBackoff(int attempts) {
+        final long exponential = Math.min(mMinBackoff << Math.min(attempts - 1, 20), mMaxBackoff);
+        final double jitter = 0.5 + mRandom.nextDouble();
+        return (long) (exponential * jitter);
+    }
+
+    private static void moveFile(File from, File to) throws IOException {
+        if (from.renameTo(to)) {
+            return;
+        }
+        // 別のファイルシステムにある場合はコピーする
+        final InputStream in = new FileInputStream(from);
+        try {
+            final OutputStream out = new FileOutputStream(to);
+            try {
+                final byte[] buf = new byte[8192];
+                for (int c; (c = in.read(buf)) > -1;) {
+                    out.write(buf, 0, c);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+        from.delete();
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * SkyDrive&trade;のメタ情報を保存するデータベース。
+ * キャッシュと検索用のインデックスは作り直せるので、バージョン2より前からのアップグレードでは作り直す。
+ * アクセスの履歴やアップロード待ちのファイル、固定したドキュメントは作り直せないので、それ以降はバージョンごとに移行する。
+ *
+ * @author masui@uphyca.com
+ */
+public class SkyDriveDatabaseHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "skydrive.db";
+    private static final int DATABASE_VERSION = 8;
+
+    /**
+     * ドキュメントのテーブル。ドキュメントのJSONはIDごとに一件だけ保存する。
+     */
+    public interface Documents {
+        String TABLE = "documents";
+        String DOCUMENT_ID = "document_id";
+        /** 親のディレクトリのID。別名でリストを取得した場合も本来のID。 */
+        String PARENT_ID = "parent_id";
+        String JSON = "json";
+        String FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * ディレクトリのリストを取得した時刻のテーブル。
+     */
+    public interface Listings {
+        String TABLE = "listings";
+        String PARENT_ID = "parent_id";
+        String FETCHED_AT = "fetched_at";
+    }
+
+    /**
+     * me/skydriveのようなディレクトリの別名と、本来のIDの対応のテーブル。
+     */
+    public interface Aliases {
+        String TABLE = "aliases";
+        String ALIAS = "alias";
+        String FOLDER_ID = "folder_id";
+    }
+
+    /**
+     * 検索の対象になるドキュメントのテーブル。キャッシュの有効期限とは関係なく、一度見たドキュメントは残る。
+     */
+    public interface SearchDocuments {
+        String TABLE = "search_documents";
+        String _ID = "_id";
+        String DOCUMENT_ID = "document_id";
+        /** インデックスに登録した時のディレクトリのID。 */
+        String PARENT_ID = "parent_id";
+        String NAME = "name";
+        String DESCRIPTION = "description";
+        String JSON = "json";
+    }
+
+    /**
+     * SearchDocuments の全文検索用の仮想テーブル。docidは SearchDocuments#_ID 。
+     */
+    public interface SearchFts {
+        String TABLE = "search_fts";
+        String NAME = SearchDocuments.NAME;
+        String DESCRIPTION = SearchDocuments.DESCRIPTION;
+    }
+
+    /**
+     * ドキュメントにアクセスした履歴のテーブル。ドキュメントごとに最後にアクセスした時刻だけを保存する。
+     */
+    public interface Recents {
+        String TABLE = "recents";
+        String DOCUMENT_ID = "document_id";
+        String ACCESSED_AT = "accessed_at";
+    }
+
+    /**
+     * アップロード待ちのファイルのテーブル。ドキュメントごとに最後に保存された内容だけを保存する。
+     */
+    public interface Uploads {
+        String TABLE = "uploads";
+        String DOCUMENT_ID = "document_id";
+        String PARENT_ID = "parent_id";
+        String NAME = "name";
+        /** アップロードする内容のローカルのパス。 */
+        String PATH = "path";
+        /** 保存された時刻。 */
+        String ENQUEUED_AT = "enqueued_at";
+        /** 保存されるたびに増える値。アップロード中に再び保存されたかどうかを判別するのに使う。 */
+        String GENERATION = "generation";
+        String ATTEMPTS = "attempts";
+        String NEXT_ATTEMPT_AT = "next_attempt_at";
+        /** 分割してアップロードしている先のURL。始めていなければnull。 */
+        String UPLOAD_URL = "upload_url";
+        /** サーバーが受け取ったバイト数。 */
+        String UPLOADED_BYTES = "uploaded_bytes";
+    }
+
+    /**
+     * オフライン用に固定したドキュメントのテーブル。
+     */
+    public interface Pins {
+        String TABLE = "pins";
+        String DOCUMENT_ID = "document_id";
+        String PINNED_AT = "pinned_at";
+    }
+
+    /**
+     * 固定したドキュメントのサブツリーにあるドキュメントのテーブル。複数の固定に含まれるドキュメントは固定ごとに一件ずつ保存する。
+     */
+    public interface PinnedDocuments {
+        String TABLE = "pinned_documents";
+        String PIN_ID = "pin_id";
+        String DOCUMENT_ID = "document_id";
+        String UPDATED_AT = "updated_at";
+        String SIZE = "size";
+        /** 内容のローカルのパス。ディレクトリはnull。 */
+        String PATH = "path";
+    }
+
+    public SkyDriveDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Documents.TABLE + " (" //
+                + Documents.DOCUMENT_ID + " TEXT PRIMARY KEY," //
+                + Documents.PARENT_ID + " TEXT," //
+                + Documents.JSON + " TEXT NOT NULL," //
+                + Documents.FETCHED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + Documents.TABLE + "_" + Documents.PARENT_ID + " ON " + Documents.TABLE + " (" + Documents.PARENT_ID + ")");
+        db.execSQL("CREATE TABLE " + Listings.TABLE + " (" //
+                + Listings.PARENT_ID + " TEXT PRIMARY KEY," //
+                + Listings.FETCHED_AT + " INTEGER NOT NULL)");
+        createAliasesTable(db);
+        createSearchTables(db);
+        createRecentsTable(db);
+        createUploadsTable(db);
+        createPinsTables(db);
+    }
+
+    private static void createAliasesTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Aliases.TABLE + " (" //
+                + Aliases.ALIAS + " TEXT PRIMARY KEY," //
+                + Aliases.FOLDER_ID + " TEXT NOT NULL)");
+    }
+
+    private static void createRecentsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Recents.TABLE + " (" //
+                + Recents.DOCUMENT_ID + " TEXT PRIMARY KEY," //
+                + Recents.ACCESSED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX " + Recents.TABLE + "_" + Recents.ACCESSED_AT + " ON " + Recents.TABLE + " (" + Recents.ACCESSED_AT + ")");
+    }
+
+    private static void createSearchTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SearchDocuments.TABLE + " (" //
+                + SearchDocuments._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," //
+                + SearchDocuments.DOCUMENT_ID + " TEXT NOT NULL UNIQUE," //
+                + SearchDocuments.PARENT_ID + " TEXT," //
+                + SearchDocuments.NAME + " TEXT," //
+                + SearchDocuments.DESCRIPTION + " TEXT," //
+                + SearchDocuments.JSON + " TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX " + SearchDocuments.TABLE + "_" + SearchDocuments.PARENT_ID + " ON " + SearchDocuments.TABLE + " (" + SearchDocuments.PARENT_ID + ")");
+        // 外部コンテンツのFTS4テーブル。本文はSearchDocumentsにだけ持ち、トリガーでインデックスを同期する
+        db.execSQL("CREATE VIRTUAL TABLE " + SearchFts.TABLE + " USING fts4(content=\"" + SearchDocuments.TABLE + "\", " + SearchFts.NAME + ", " + SearchFts.DESCRIPTION + ")");
+        final String deleteFts = "DELETE FROM " + SearchFts.TABLE + " WHERE docid=old." + SearchDocuments._ID + ";";
+        final String insertFts = "INSERT INTO " + SearchFts.TABLE + "(docid, " + SearchFts.NAME + ", " + SearchFts.DESCRIPTION + ")" //
+                + " VALUES(new." + SearchDocuments._ID + ", new." + SearchDocuments.NAME + ", new." + SearchDocuments.DESCRIPTION + ");";
+        db.execSQL("CREATE TRIGGER " + SearchDocuments.TABLE + "_bu BEFORE UPDATE ON " + SearchDocuments.TABLE + " BEGIN " + deleteFts + " END");
+        db.execSQL("CREATE TRIGGER " + SearchDocuments.TABLE + "_bd BEFORE DELETE ON " + SearchDocuments.TABLE + " BEGIN " + deleteFts + " END");
+        db.execSQL("CREATE TRIGGER " + SearchDocuments.TABLE + "_au AFTER UPDATE ON " + SearchDocuments.TABLE + " BEGIN " + insertFts + " END");
+        db.execSQL("CREATE TRIGGER " + SearchDocuments.TABLE + "_ai AFTER INSERT ON " + SearchDocuments.TABLE + " BEGIN " + insertFts + " END");
+    }
+
+    private static void createUploadsTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Uploads.TABLE + " (" //
+                + Uploads.DOCUMENT_ID + " TEXT PRIMARY KEY," //
+                + Uploads.PARENT_ID + " TEXT NOT NULL," //
+                + Uploads.NAME + " TEXT NOT NULL," //
+                + Uploads.PATH + " TEXT NOT NULL," //
+                + Uploads.ENQUEUED_AT + " INTEGER NOT NULL," //
+                + Uploads.GENERATION + " INTEGER NOT NULL DEFAULT 0," //
+                + Uploads.ATTEMPTS + " INTEGER NOT NULL DEFAULT 0," //
+                + Uploads.NEXT_ATTEMPT_AT + " INTEGER NOT NULL," //
+                + Uploads.UPLOAD_URL + " TEXT," //
+                + Uploads.UPLOADED_BYTES + " INTEGER NOT NULL DEFAULT 0)");
+    }
+
+    private static void createPinsTables(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + Pins.TABLE + " (" //
+                + Pins.DOCUMENT_ID + " TEXT PRIMARY KEY," //
+                + Pins.PINNED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + PinnedDocuments.TABLE + " (" //
+                + PinnedDocuments.PIN_ID + " TEXT NOT NULL," //
+                + PinnedDocuments.DOCUMENT_ID + " TEXT NOT NULL," //
+                + PinnedDocuments.UPDATED_AT + " INTEGER NOT NULL," //
+                + PinnedDocuments.SIZE + " INTEGER NOT NULL," //
+                + PinnedDocuments.PATH + " TEXT," //
+                + "PRIMARY KEY (" + PinnedDocuments.PIN_ID + ", " + PinnedDocuments.DOCUMENT_ID + "))");
+        db.execSQL("CREATE INDEX " + PinnedDocuments.TABLE + "_" + PinnedDocuments.DOCUMENT_ID + " ON " + PinnedDocuments.TABLE + " (" + PinnedDocuments.DOCUMENT_ID + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("DROP TABLE IF EXISTS " + Documents.TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + Listings.TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + SearchFts.TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + SearchDocuments.TABLE);
+            onCreate(db);
+            return;
+        }
+        if (oldVersion < 3) {
+            createRecentsTable(db);
+        }
+        if (oldVersion < 4) {
+            createUploadsTable(db);
+        } else {
+            if (oldVersion < 6) {
+                db.execSQL("ALTER TABLE " + Uploads.TABLE + " ADD COLUMN " + Uploads.UPLOAD_URL + " TEXT");
+                db.execSQL("ALTER TABLE " + Uploads.TABLE + " ADD COLUMN " + Uploads.UPLOADED_BYTES + " INTEGER NOT NULL DEFAULT 0");
+            }
+            if (oldVersion < 7) {
+                db.execSQL("ALTER TABLE " + Uploads.TABLE + " ADD COLUMN " + Uploads.GENERATION + " INTEGER NOT NULL DEFAULT 0");
+            }
+        }
+        if (oldVersion < 5) {
+            createPinsTables(db);
+        }
+        if (oldVersion < 8) {
+            createAliasesTable(db);
+            // 別名で保存したリストは本来のIDのものと混ざっているので、取得し直させる
+            db.delete(Listings.TABLE, null, null);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.uphyca.kitkat.storage.internal.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.uphyca.kitkat.storage.skydrive.JsonKeys;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+import com.uphyca.kitkat.storage.skydrive.SkyDrivePhoto;
+
+/**
+ * Live APIのレスポンスをストリームのまま読んで、SkyDriveObjectの配列にする。
+ * レスポンス全体を文字列やJSONObjectのツリーとして持たず、要素ごとに直接SkyDriveObjectを組み立てる。
+ *
+ * @author masui@uphyca.com
+ */
+public final class SkyDriveObjectReader {
+
+    private SkyDriveObjectReader() {
+        throw new AssertionError();
+    }
+
+    /**
+     * {"data": [...]} 形式のレスポンスを読む。
+     * レスポンスがエラーの場合は、そのメッセージでIOExceptionを投げる。
+     *
+     * @param in レスポンスのボディ。このメソッドの中で閉じる
+     * @return ドキュメントの配列
+     * @throws IOException 読めなかったか、エラーのレスポンスだった場合
+     */
+    public static SkyDriveObject[] readList(InputStream in) throws IOException {
+        final JsonReader reader = new JsonReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            final List<SkyDriveObject> objects = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (JsonKeys.DATA.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    // 同じディレクトリの要素は大抵同じ所有者なので、Fromを使い回す
+                    SkyDriveObject.From lastFrom = null;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                            continue;
+                        }
+                        final SkyDriveObject object = readObject(reader, lastFrom);
+                        lastFrom = object.getFrom();
+                        objects.add(object);
+                    }
+                    reader.endArray();
+                } else if (JsonKeys.ERROR.equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    IOException ioException = new IOException(readErrorMessage(reader));
+                    ioException.fillInStackTrace();
+                    throw ioException;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return objects.toArray(new SkyDriveObject[objects.size()]);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // 期待と違う形のJSONだった
+            IOException ioException = new IOException(e.getMessage());
+            ioException.initCause(e);
+            throw ioException;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static SkyDriveObject readObject(JsonReader reader, SkyDriveObject.From lastFrom) throws IOException {
+        final SkyDriveObject.Builder builder = new SkyDriveObject.Builder();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case JsonKeys.ID:
+                    builder.setId(reader.nextString());
+                    break;
+                case JsonKeys.NAME:
+                    builder.setName(reader.nextString());
+                    break;
+                case JsonKeys.PARENT_ID:
+                    builder.setParentId(reader.nextString());
+                    break;
+                case JsonKeys.DESCRIPTION:
+                    builder.setDescription(reader.nextString());
+                    break;
+                case JsonKeys.TYPE:
+                    builder.setType(reader.nextString());
+                    break;
+                case JsonKeys.LINK:
+                    builder.setLink(reader.nextString());
+                    break;
+                case JsonKeys.CREATED_TIME:
+                    builder.setCreatedTime(reader.nextString());
+                    break;
+                case JsonKeys.UPDATED_TIME:
+                    builder.setUpdatedTime(reader.nextString());
+                    break;
+                case JsonKeys.UPLOAD_LOCATION:
+                    builder.setUploadLocation(reader.nextString());
+                    break;
+                case JsonKeys.FROM:
+                    builder.setFrom(readFrom(reader, lastFrom));
+                    break;
+                case JsonKeys.SHARED_WITH:
+                    builder.setSharedWith(readSharedWith(reader));
+                    break;
+                case JsonKeys.SIZE:
+                    builder.setSize(reader.nextLong());
+                    break;
+                case JsonKeys.COUNT:
+                    builder.setCount(reader.nextInt());
+                    break;
+                case JsonKeys.COMMENTS_COUNT:
+                    builder.setCommentsCount(reader.nextInt());
+                    break;
+                case JsonKeys.COMMENTS_ENABLED:
+                    builder.setCommentsEnabled(reader.nextBoolean());
+                    break;
+                case JsonKeys.SOURCE:
+                    builder.setSource(reader.nextString());
+                    break;
+                case JsonKeys.IS_EMBEDDABLE:
+                    builder.setEmbeddable(reader.nextBoolean());
+                    break;
+                case JsonKeys.TAGS_COUNT:
+                    builder.setTagsCount(reader.nextInt());
+                    break;
+                case JsonKeys.TAGS_ENABLED:
+                    builder.setTagsEnabled(reader.nextBoolean());
+                    break;
+                case JsonKeys.PICTURE:
+                    builder.setPicture(reader.nextString());
+                    break;
+                case JsonKeys.IMAGES:
+                    builder.setImages(readImages(reader));
+                    break;
+                case JsonKeys.WHEN_TAKEN:
+                    builder.setWhenTaken(reader.nextString());
+                    break;
+                case JsonKeys.HEIGHT:
+                    builder.setHeight(reader.nextInt());
+                    break;
+                case JsonKeys.WIDTH:
+                    builder.setWidth(reader.nextInt());
+                    break;
+                case JsonKeys.DURATION:
+                    builder.setDuration(reader.nextInt());
+                    break;
+                case JsonKeys.BITRATE:
+                    builder.setBitrate(reader.nextInt());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return builder.build();
+    }
+
+    private static SkyDriveObject.From readFrom(JsonReader reader, SkyDriveObject.From lastFrom) throws IOException {
+        String fromName = "";
+        String fromId = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (JsonKeys.NAME.equals(name) && reader.peek() == JsonToken.STRING) {
+                fromName = reader.nextString();
+            } else if (JsonKeys.ID.equals(name) && reader.peek() == JsonToken.STRING) {
+                fromId = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (lastFrom != null && fromId.equals(lastFrom.getId()) && fromName.equals(lastFrom.getName())) {
+            return lastFrom;
+        }
+        return new SkyDriveObject.From(fromName, fromId);
+    }
+
+    private static SkyDriveObject.SharedWith readSharedWith(JsonReader reader) throws IOException {
+        String access = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (JsonKeys.ACCESS.equals(name) && reader.peek() == JsonToken.STRING) {
+                access = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new SkyDriveObject.SharedWith(access);
+    }
+
+    private static SkyDrivePhoto.Image[] readImages(JsonReader reader) throws IOException {
+        final List<SkyDrivePhoto.Image> images = new ArrayList<>(4);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            int height = 0;
+            int width = 0;
+            String source = "";
+            String type = "";
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                } else if (JsonKeys.HEIGHT.equals(name)) {
+                    height = reader.nextInt();
+                } else if (JsonKeys.WIDTH.equals(name)) {
+                    width = reader.nextInt();
+                } else if (JsonKeys.SOURCE.equals(name)) {
+                    source = reader.nextString();
+                } else if (JsonKeys.TYPE.equals(name)) {
+                    type = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            images.add(new SkyDrivePhoto.Image(height, width, source, type));
+        }
+        reader.endArray();
+        return images.toArray(new SkyDrivePhoto.Image[images.size()]);
+    }
+
+    private static String readErrorMessage(JsonReader reader) throws IOException {
+        String message = "";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (JsonKeys.MESSAGE.equals(name) && reader.peek() == JsonToken.STRING) {
+                message = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return message;
+    }
+}
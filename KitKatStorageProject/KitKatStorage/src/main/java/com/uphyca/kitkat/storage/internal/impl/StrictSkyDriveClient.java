@@ -16,32 +16,71 @@
 
 package com.uphyca.kitkat.storage.internal.impl;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-import android.annotation.TargetApi;
 import android.app.Activity;
-import android.os.AsyncTask;
-import android.os.Build;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
 import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadCheckpoint;
 import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
 
 /**
  * android.provider.DocumentsProvider のメソッドの中で別スレッドで実行したネットワークアクセスの結果を同期するための実装。
  * クライアントはUIスレッドからプロバイダにアクセスした際に、同じスレッドでネットワークアクセスすると android.os.NetworkOnMainThreadException が発生する。
- * デベロッパードキュメントでは android.os.ParcelFileDescriptorのpipeを使うのがベター的なことが書いてあった。
- * pipeの動作を確認するテストは com.uphyca.kitkat.storage.ParcelFileDescriptorTest なのだが、こんな感じでやるとロックしてしまう。
+ * ネットワークアクセスはメタ情報用とファイル転送用の専用のスレッドプールで実行するので、大きなファイルの転送がリストの取得を待たせることはない。
+ * 結果はUIスレッドを経由せずに Future から直接受け取るので、呼び出し元がUIスレッドでもデッドロックしない。
+ * 操作ごとにタイムアウトがあり、 CancellationSignal でキャンセルされると実行中のスレッドに割り込む。諦めた後で開けたストリームは閉じる。
+ * まとめて取得する場合は、メタ情報用のスレッドプールで同時に最大 maxFanOut 件まで並行して取得する。
  * 
  * @author masui@uphyca.com
  */
 public class StrictSkyDriveClient implements SkyDriveClient {
 
+    /**
+     * キャンセルを調べる間隔(ミリ秒)。
+     */
+    private static final long CANCEL_POLL_INTERVAL = 100L;
+
     private final SkyDriveClient mDelegate;
+    private final ExecutorService mMetadataExecutor;
+    private final ExecutorService mTransferExecutor;
+    private final long mMetadataTimeout;
+    private final long mTransferTimeout;
+    private final int mMaxFanOut;
 
-    public StrictSkyDriveClient(SkyDriveClient delegate) {
+    /**
+     * @param delegate 実際にネットワークアクセスする SkyDriveClient
+     * @param metadataExecutor メタ情報の取得と更新に使うスレッドプール
+     * @param transferExecutor ファイルのダウンロードとアップロードに使うスレッドプール
+     * @param metadataTimeout メタ情報の操作のタイムアウト(ミリ秒)
+     * @param transferTimeout ファイル転送のタイムアウト(ミリ秒)
+     * @param maxFanOut まとめて取得する時に並行して実行する最大数。メタ情報用のスレッド数より少なくすれば、その間も他の操作が待たされない
+     */
+    public StrictSkyDriveClient(SkyDriveClient delegate, ExecutorService metadataExecutor, ExecutorService transferExecutor, long metadataTimeout, long transferTimeout, int maxFanOut) {
         mDelegate = delegate;
+        mMetadataExecutor = metadataExecutor;
+        mTransferExecutor = transferExecutor;
+        mMetadataTimeout = metadataTimeout;
+        mTransferTimeout = transferTimeout;
+        mMaxFanOut = maxFanOut;
     }
 
     @Override
@@ -57,9 +96,9 @@ public class StrictSkyDriveClient implements SkyDriveClient {
     @Override
     public SkyDriveObject[] get(final String documentId) {
         try {
-            return sync(new NetworkOperation<SkyDriveObject[]>() {
+            return metadata(new Callable<SkyDriveObject[]>() {
                 @Override
-                public SkyDriveObject[] execute() throws IOException {
+                public SkyDriveObject[] call() throws IOException {
                     return mDelegate.get(documentId);
                 }
             });
@@ -68,31 +107,147 @@ public class StrictSkyDriveClient implements SkyDriveClient {
         }
     }
 
+    /**
+     * 一件終わるごとに次を投入するので、実行中の取得は常に mMaxFanOut 件以下になる。
+     * 一件ごとに待つ時間はメタ情報のタイムアウトまでで、タイムアウトしたら残りは諦めてnullのままにする。
+     */
+    @Override
+    public SkyDriveObject[] getAll(Collection<String> documentIds) {
+        final String[] ids = documentIds.toArray(new String[documentIds.size()]);
+        final SkyDriveObject[] documents = new SkyDriveObject[ids.length];
+        final CompletionService<SkyDriveObject[]> completion = new ExecutorCompletionService<>(mMetadataExecutor);
+        final Map<Future<SkyDriveObject[]>, Integer> pending = new HashMap<>();
+        int submitted = 0;
+        try {
+            while (submitted < ids.length || !pending.isEmpty()) {
+                while (submitted < ids.length && pending.size() < mMaxFanOut) {
+                    final String documentId = ids[submitted];
+                    final Future<SkyDriveObject[]> future = completion.submit(new Callable<SkyDriveObject[]>() {
+                        @Override
+                        public SkyDriveObject[] call() {
+                            return mDelegate.get(documentId);
+                        }
+                    });
+                    pending.put(future, submitted++);
+                }
+                final Future<SkyDriveObject[]> done = completion.poll(mMetadataTimeout, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    break;
+                }
+                final int index = pending.remove(done);
+                try {
+                    final SkyDriveObject[] found = done.get();
+                    if (found.length == 1) {
+                        documents[index] = found[0];
+                    }
+                } catch (ExecutionException ignore) {
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+        } finally {
+            for (Future<SkyDriveObject[]> each : pending.keySet()) {
+                each.cancel(true);
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public SkyDriveObject[] list(final String folderId) throws IOException {
+        return metadata(new Callable<SkyDriveObject[]>() {
+            @Override
+            public SkyDriveObject[] call() throws IOException {
+                return mDelegate.list(folderId);
+            }
+        });
+    }
+
+    @Override
+    public SkyDriveObject[] list(final String folderId, final int offset, final int limit) throws IOException {
+        return metadata(new Callable<SkyDriveObject[]>() {
+            @Override
+            public SkyDriveObject[] call() throws IOException {
+                return mDelegate.list(folderId, offset, limit);
+            }
+        });
+    }
+
+    @Override
+    public File download(String documentId) throws IOException {
+        return download(documentId, null);
+    }
+
+    @Override
+    public File download(final String documentId, final CancellationSignal signal) throws IOException {
+        return sync(mTransferExecutor, mTransferTimeout, signal, new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                return mDelegate.download(documentId, signal);
+            }
+        });
+    }
+
+    /**
+     * ストリームを開くところまでを別スレッドで実行する。ストリームからの読み込みは呼び出し元のスレッドで行う。
+     * レスポンスを待つだけなので、タイムアウトはメタ情報と同じにする。
+     */
+    @Override
+    public InputStream openStream(final String documentId, final CancellationSignal signal) throws IOException {
+        return sync(mTransferExecutor, mMetadataTimeout, signal, new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return mDelegate.openStream(documentId, signal);
+            }
+        });
+    }
+
     @Override
-    public File download(final String documentId) throws IOException {
-        return sync(new NetworkOperation<File>() {
+    public InputStream openStream(final String documentId, final long offset, final CancellationSignal signal) throws IOException {
+        return sync(mTransferExecutor, mMetadataTimeout, signal, new Callable<InputStream>() {
             @Override
-            public File execute() throws IOException {
-                return mDelegate.download(documentId);
+            public InputStream call() throws IOException {
+                return mDelegate.openStream(documentId, offset, signal);
+            }
+        });
+    }
+
+    @Override
+    public InputStream openSource(final String source, final CancellationSignal signal) throws IOException {
+        return sync(mTransferExecutor, mMetadataTimeout, signal, new Callable<InputStream>() {
+            @Override
+            public InputStream call() throws IOException {
+                return mDelegate.openSource(source, signal);
             }
         });
     }
 
     @Override
     public String upload(final String path, final String name, final File file) throws IOException {
-        return sync(new NetworkOperation<String>() {
+        return sync(mTransferExecutor, mTransferTimeout, null, new Callable<String>() {
             @Override
-            public String execute() throws IOException {
+            public String call() throws IOException {
                 return mDelegate.upload(path, name, file);
             }
         });
     }
 
+    @Override
+    public String upload(final String path, final String name, final File file, final UploadCheckpoint checkpoint) throws IOException {
+        return sync(mTransferExecutor, mTransferTimeout, null, new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                return mDelegate.upload(path, name, file, checkpoint);
+            }
+        });
+    }
+
     @Override
     public String mkdir(final String path, final String name) throws IOException {
-        return sync(new NetworkOperation<String>() {
+        return metadata(new Callable<String>() {
             @Override
-            public String execute() throws IOException {
+            public String call() throws IOException {
                 return mDelegate.mkdir(path, name);
             }
         });
@@ -100,9 +255,9 @@ public class StrictSkyDriveClient implements SkyDriveClient {
 
     @Override
     public String touch(final String path, final String name) throws IOException {
-        return sync(new NetworkOperation<String>() {
+        return metadata(new Callable<String>() {
             @Override
-            public String execute() throws IOException {
+            public String call() throws IOException {
                 return mDelegate.touch(path, name);
             }
         });
@@ -110,56 +265,142 @@ public class StrictSkyDriveClient implements SkyDriveClient {
 
     @Override
     public void delete(final String path) throws IOException {
-        sync(new NetworkOperation<Void>() {
+        metadata(new Callable<Void>() {
             @Override
-            public Void execute() throws IOException {
+            public Void call() throws IOException {
                 mDelegate.delete(path);
                 return null;
             }
         });
     }
 
-    private static <T> T sync(final NetworkOperation<T> operation) throws IOException {
-        return new NetworkOperationTask<T>().sync(operation);
+    private <T> T metadata(Callable<T> operation) throws IOException {
+        return sync(mMetadataExecutor, mMetadataTimeout, null, operation);
     }
 
-    private interface NetworkOperation<T> {
-        T execute() throws IOException;
+    /**
+     * 指定のスレッドプールで実行して、結果を待つ。
+     * キャンセルされた場合は OperationCanceledException 、タイムアウトや割り込みの場合は InterruptedIOException が発生する。
+     * 諦めた後で操作が終わった場合、結果が Closeable なら閉じる。ストリームを閉じないと接続がプールに戻らない。
+     */
+    private static <T> T sync(ExecutorService executor, long timeout, CancellationSignal signal, Callable<T> operation) throws IOException {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+        final AbandonableTask<T> task = new AbandonableTask<>(operation);
+        final Future<T> future = executor.submit(task);
+        boolean collected = false;
+        try {
+            final T result = await(future, timeout, signal);
+            collected = true;
+            return result;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            IOException ioException = new IOException(cause.getMessage());
+            ioException.initCause(cause);
+            throw ioException;
+        } catch (CancellationException e) {
+            throw new OperationCanceledException();
+        } catch (TimeoutException e) {
+            InterruptedIOException timedOut = new InterruptedIOException("Timed out after " + timeout + "ms");
+            timedOut.initCause(e);
+            throw timedOut;
+        } catch (InterruptedException e) {
+            Thread.currentThread()
+                  .interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException();
+            interrupted.initCause(e);
+            throw interrupted;
+        } finally {
+            if (!collected) {
+                task.abandon();
+                future.cancel(true);
+            }
+        }
     }
 
-    private static class NetworkOperationTask<T> extends AsyncTask<NetworkOperation<T>, Void, T> {
+    /**
+     * CancellationSignal のリスナーは一つしか設定できず、呼び出し元のものを上書きしてしまうので、設定せずに少しずつ待ちながらキャンセルを調べる。
+     */
+    private static <T> T await(Future<T> future, long timeout, CancellationSignal signal) throws ExecutionException, InterruptedException, TimeoutException {
+        if (signal == null) {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            signal.throwIfCanceled();
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                throw new TimeoutException();
+            }
+            try {
+                return future.get(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(CANCEL_POLL_INTERVAL)), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException ignore) {
+            }
+        }
+    }
+
+    /**
+     * 呼び出し元が結果を受け取らなくなった後に終わった場合は、結果を閉じる。
+     */
+    private static final class AbandonableTask<T> implements Callable<T> {
+
+        private final Callable<T> mOperation;
+
+        /**
+         * 呼び出し元が諦めたらtrue。このオブジェクトで同期する。
+         */
+        private boolean mAbandoned;
 
-        private final CountDownLatch mLock = new CountDownLatch(1);
+        /**
+         * 終わった操作の結果。呼び出し元が受け取る前に諦めた場合に閉じるために持っておく。このオブジェクトで同期する。
+         */
         private T mResult;
-        private IOException mError;
 
-        @Override
-        protected void onPostExecute(T t) {
-            mResult = t;
-            mLock.countDown();
+        AbandonableTask(Callable<T> operation) {
+            mOperation = operation;
         }
 
         @Override
-        protected T doInBackground(NetworkOperation<T>... params) {
-            try {
-                return params[0].execute();
-            } catch (IOException e) {
-                mError = e;
-                return null;
+        public T call() throws Exception {
+            final T result = mOperation.call();
+            synchronized (this) {
+                if (!mAbandoned) {
+                    mResult = result;
+                    return result;
+                }
             }
+            closeQuietly(result);
+            return null;
         }
 
-        @TargetApi(Build.VERSION_CODES.HONEYCOMB)
-        T sync(NetworkOperation<T> operation) throws IOException {
-            executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, operation);
-            try {
-                mLock.await();
-            } catch (InterruptedException ignore) {
+        void abandon() {
+            final T result;
+            synchronized (this) {
+                mAbandoned = true;
+                result = mResult;
+                mResult = null;
             }
-            if (mError != null) {
-                throw mError;
+            closeQuietly(result);
+        }
+
+        private static void closeQuietly(Object result) {
+            if (!(result instanceof Closeable)) {
+                return;
+            }
+            try {
+                ((Closeable) result).close();
+            } catch (IOException ignore) {
             }
-            return mResult;
         }
     }
 }
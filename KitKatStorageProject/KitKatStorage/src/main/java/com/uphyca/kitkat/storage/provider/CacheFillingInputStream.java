@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.uphyca.kitkat.storage.internal.FileCache;
+
+/**
+ * 読んだ内容を FileCache にも書き込む InputStream 。
+ * 最後まで読んで、書いた長さがドキュメントのサイズと同じ場合だけキャッシュに反映する。
+ * 途中で閉じられた場合や読み込みに失敗した場合は、次に続きから書けるように書いたところまでを残す。
+ * 接続が切れても例外にならずに終わるストリームがあるので、サイズより短く終わった場合も書いたところまでを残すだけにする。
+ * キャッシュへの書き込みに失敗しても、読み込みは続けられる。
+ *
+ * @author masui@uphyca.com
+ */
+class CacheFillingInputStream extends FilterInputStream {
+
+    private FileCache.Editor mEditor;
+    private OutputStream mCacheOut;
+    private final long mExpectedLength;
+
+    /**
+     * キャッシュに書いた長さ。前回中断した内容の続きに書く場合は、その分も含む。
+     */
+    private long mLength;
+
+    /**
+     * @param in 元のストリーム
+     * @param editor 書き込み先のキャッシュ
+     * @param append 前回中断したところの続きを読むストリームならtrue
+     * @param expectedLength ドキュメントのサイズ
+     * @throws IOException キャッシュに書き込めなかった場合に発生する。その場合キャッシュへの書き込みは取り消される
+     */
+    CacheFillingInputStream(InputStream in, FileCache.Editor editor, boolean append, long expectedLength) throws IOException {
+        super(in);
+        mExpectedLength = expectedLength;
+        mLength = append ? editor.getLength() : 0L;
+        try {
+            mCacheOut = append ? editor.newAppendingOutputStream() : editor.newOutputStream();
+        } catch (IOException e) {
+            editor.abort();
+            throw e;
+        }
+        mEditor = editor;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final byte[] b = new byte[1];
+        final int c = read(b, 0, 1);
+        return c == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        final int c;
+        try {
+            c = super.read(b, off, len);
+        } catch (IOException e) {
+            suspend();
+            throw e;
+        }
+        if (c == -1) {
+            if (mLength == mExpectedLength) {
+                commit();
+            } else if (mLength < mExpectedLength) {
+                // 途中で切れたので、続きは次に取得する
+                suspend();
+            } else {
+                abort();
+            }
+        } else if (c > 0 && mCacheOut != null) {
+            try {
+                mCacheOut.write(b, off, c);
+                mLength += c;
+            } catch (IOException e) {
+                abort();
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 飛ばした部分はキャッシュに書けないので、キャッシュを諦める
+        abort();
+        return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        suspend();
+        super.close();
+    }
+
+    private void commit() {
+        if (mEditor == null) {
+            return;
+        }
+        try {
+            mCacheOut.close();
+            mEditor.commit();
+        } catch (IOException e) {
+            mEditor.abort();
+        } finally {
+            mEditor = null;
+            mCacheOut = null;
+        }
+    }
+
+    /**
+     * 書いたところまでをキャッシュに残す。書き込みに失敗していれば、内容が欠けているので捨てる。
+     */
+    private void suspend() {
+        if (mEditor == null) {
+            return;
+        }
+        try {
+            mCacheOut.close();
+            mEditor.suspend();
+        } catch (IOException e) {
+            mEditor.abort();
+        } finally {
+            mEditor = null;
+            mCacheOut = null;
+        }
+    }
+
+    private void abort() {
+        if (mEditor == null) {
+            return;
+        }
+        try {
+            mCacheOut.close();
+        } catch (IOException ignore) {
+        }
+        mEditor.abort();
+        mEditor = null;
+        mCacheOut = null;
+    }
+}
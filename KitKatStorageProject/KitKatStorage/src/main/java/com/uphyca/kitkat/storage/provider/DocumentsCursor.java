@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import android.annotation.TargetApi;
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+
+/**
+ * DocumentsContract のエクストラを設定できる MatrixCursor 。
+ * MatrixCursor#getExtras() は常に空のBundleを返すので、読み込み中の表示やエラーメッセージを伝えるために使う。
+ *
+ * @author masui@uphyca.com
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+class DocumentsCursor extends MatrixCursor {
+
+    private final Bundle mExtras = new Bundle();
+
+    DocumentsCursor(String[] columnNames, int initialCapacity) {
+        super(columnNames, initialCapacity);
+    }
+
+    /**
+     * @param loading trueならドキュメントUIに読み込み中を表示させる
+     */
+    void setLoading(boolean loading) {
+        mExtras.putBoolean(DocumentsContract.EXTRA_LOADING, loading);
+    }
+
+    /**
+     * @param error ドキュメントUIに表示させるエラーメッセージ
+     */
+    void setError(String error) {
+        mExtras.putString(DocumentsContract.EXTRA_ERROR, error);
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return mExtras;
+    }
+}
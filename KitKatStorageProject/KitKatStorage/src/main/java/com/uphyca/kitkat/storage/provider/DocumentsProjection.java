@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.uphyca.kitkat.storage.provider;
+
+import com.uphyca.kitkat.storage.internal.DocumentsColumnMapper;
+
+/**
+ * クエリのprojectionを、DocumentsColumnMapperのカラムの位置に変換したもの。
+ * クエリごとに一度だけ作り、行ごとには名前を引かない。
+ *
+ * @author masui@uphyca.com
+ */
+final class DocumentsProjection {
+
+    private final String[] mColumnNames;
+    private final int[] mColumns;
+    private final int mPinnedPosition;
+
+    private DocumentsProjection(String[] columnNames, int[] columns, int pinnedPosition) {
+        mColumnNames = columnNames;
+        mColumns = columns;
+        mPinnedPosition = pinnedPosition;
+    }
+
+    /**
+     * @param columnNames クエリのprojection
+     * @return 変換したもの。知らないカラムの位置は-1になる
+     */
+    static DocumentsProjection compile(String[] columnNames) {
+        final int[] columns = new int[columnNames.length];
+        int pinnedPosition = -1;
+        for (int i = 0; i < columnNames.length; ++i) {
+            columns[i] = indexOf(columnNames[i]);
+            if (SkyDriveContract.COLUMN_PINNED.equals(columnNames[i])) {
+                pinnedPosition = i;
+            }
+        }
+        return new DocumentsProjection(columnNames, columns, pinnedPosition);
+    }
+
+    /**
+     * @return カーソルのカラム名
+     */
+    String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    /**
+     * @return {@link DocumentsColumnMapper#mapRow(Object, int[], Object[])} に渡すカラムの位置
+     */
+    int[] getColumns() {
+        return mColumns;
+    }
+
+    /**
+     * @return 行の中の {@link SkyDriveContract#COLUMN_PINNED} の位置。要求されていなければ-1
+     */
+    int getPinnedPosition() {
+        return mPinnedPosition;
+    }
+
+    private static int indexOf(String columnName) {
+        final String[] known = DocumentsColumnMapper.COLUMNS;
+        for (int i = 0; i < known.length; ++i) {
+            if (known[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
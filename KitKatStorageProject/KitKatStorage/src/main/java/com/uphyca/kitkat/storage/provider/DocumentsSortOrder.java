@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+import android.provider.DocumentsContract;
+
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * queryChildDocuments の sortOrder を解釈して、ドキュメントの配列を並べ替える。
+ * 解釈できるのは名前、更新日時、サイズの先頭の一つだけで、同じ値の場合は名前順にする。
+ * リストは名前順で取得してキャッシュしているので、名前順の場合はほぼ並べ替えずに済む。
+ *
+ * @author masui@uphyca.com
+ */
+final class DocumentsSortOrder {
+
+    private static final Comparator<SkyDriveObject> BY_NAME = new Comparator<SkyDriveObject>() {
+        @Override
+        public int compare(SkyDriveObject lhs, SkyDriveObject rhs) {
+            return String.CASE_INSENSITIVE_ORDER.compare(lhs.getName(), rhs.getName());
+        }
+    };
+
+    private static final Comparator<SkyDriveObject> BY_LAST_MODIFIED = new Comparator<SkyDriveObject>() {
+        @Override
+        public int compare(SkyDriveObject lhs, SkyDriveObject rhs) {
+            final int result = compareLong(lhs.getUpdatedAt(), rhs.getUpdatedAt());
+            return result != 0 ? result : BY_NAME.compare(lhs, rhs);
+        }
+    };
+
+    private static final Comparator<SkyDriveObject> BY_SIZE = new Comparator<SkyDriveObject>() {
+        @Override
+        public int compare(SkyDriveObject lhs, SkyDriveObject rhs) {
+            final int result = compareLong(lhs.getSize(), rhs.getSize());
+            return result != 0 ? result : BY_NAME.compare(lhs, rhs);
+        }
+    };
+
+    private DocumentsSortOrder() {
+        throw new AssertionError();
+    }
+
+    /**
+     * sortOrder の順に並べ替える。解釈できなければ何もしない。
+     *
+     * @param documents 並べ替える配列。この配列自体を並べ替える
+     * @param sortOrder "カラム名 [ASC|DESC]" 形式。nullでもよい
+     */
+    static void sort(SkyDriveObject[] documents, String sortOrder) {
+        final Comparator<SkyDriveObject> comparator = parse(sortOrder);
+        if (comparator == null || documents.length < 2) {
+            return;
+        }
+        Arrays.sort(documents, comparator);
+    }
+
+    static Comparator<SkyDriveObject> parse(String sortOrder) {
+        if (sortOrder == null) {
+            return null;
+        }
+        // 二つ目以降の条件は無視する
+        final int comma = sortOrder.indexOf(',');
+        final String first = (comma < 0 ? sortOrder : sortOrder.substring(0, comma)).trim();
+        if (first.length() == 0) {
+            return null;
+        }
+
+        final String[] terms = first.split("\\s+");
+        final Comparator<SkyDriveObject> comparator;
+        if (DocumentsContract.Document.COLUMN_DISPLAY_NAME.equals(terms[0])) {
+            comparator = BY_NAME;
+        } else if (DocumentsContract.Document.COLUMN_LAST_MODIFIED.equals(terms[0])) {
+            comparator = BY_LAST_MODIFIED;
+        } else if (DocumentsContract.Document.COLUMN_SIZE.equals(terms[0])) {
+            comparator = BY_SIZE;
+        } else {
+            return null;
+        }
+
+        final boolean descending = terms.length > 1 && "DESC".equals(terms[1].toUpperCase(Locale.US));
+        return descending ? reverse(comparator) : comparator;
+    }
+
+    private static Comparator<SkyDriveObject> reverse(final Comparator<SkyDriveObject> comparator) {
+        return new Comparator<SkyDriveObject>() {
+            @Override
+            public int compare(SkyDriveObject lhs, SkyDriveObject rhs) {
+                return comparator.compare(rhs, lhs);
+            }
+        };
+    }
+
+    private static int compareLong(long lhs, long rhs) {
+        return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * ディレクトリのリストをバックグラウンドで取得して MetadataCache に保存する。
+ * リストはページ単位で取得し、最後のページまで揃うまでは取得済みの分を {@link #getLoadedChildren(String)} で返す。
+ * 保存されると MetadataCache.OnChildrenChangedListener に通知されるので、プロバイダはそれを契機に再クエリさせる。
+ * 取得に失敗したディレクトリは、しばらくの間取得しない。読み込み中のカーソルを返し続けて再クエリが止まらなくなるのを防ぐため。
+ *
+ * @author masui@uphyca.com
+ */
+class FolderLoader {
+
+    /**
+     * 取得に失敗したことを受け取るためのコールバックインターフェイス。
+     */
+    interface OnLoadFailedListener {
+
+        /**
+         * 取得に失敗したときにバックグラウンドのスレッドで呼ばれる。
+         *
+         * @param folderId ディレクトリのID
+         * @param e 原因
+         */
+        void onLoadFailed(String folderId, IOException e);
+    }
+
+    /**
+     * リストの途中までを取得したことを受け取るためのコールバックインターフェイス。
+     */
+    interface OnPageLoadedListener {
+
+        /**
+         * 最後ではないページを取得したときにバックグラウンドのスレッドで呼ばれる。
+         *
+         * @param folderId ディレクトリのID
+         */
+        void onPageLoaded(String folderId);
+    }
+
+    private static final class Failure {
+
+        private final IOException mCause;
+        private final long mRetryAt;
+        private final int mCount;
+
+        private Failure(IOException cause, long retryAt, int count) {
+            mCause = cause;
+            mRetryAt = retryAt;
+            mCount = count;
+        }
+    }
+
+    private final SkyDriveClient mSkyDriveClient;
+    private final MetadataCache mMetadataCache;
+    private final Executor mExecutor;
+    private final long mMinBackoff;
+    private final long mMaxBackoff;
+    private final int mPageSize;
+
+    /**
+     * mLoading と mFailures と mLoaded はこのオブジェクトで同期する。
+     */
+    private final Set<String> mLoading = new HashSet<String>();
+    private final Map<String, Failure> mFailures = new HashMap<String, Failure>();
+    private final Map<String, List<SkyDriveObject>> mLoaded = new HashMap<String, List<SkyDriveObject>>();
+
+    private volatile OnLoadFailedListener mOnLoadFailedListener;
+    private volatile OnPageLoadedListener mOnPageLoadedListener;
+
+    /**
+     * @param skyDriveClient キャッシュを通さない SkyDriveClient
+     * @param metadataCache 取得したリストを保存するキャッシュ
+     * @param executor 取得に使うスレッド
+     * @param minBackoff 最初に失敗した後、再取得しない期間(ミリ秒)。失敗が続くと倍になる
+     * @param maxBackoff 再取得しない期間の上限(ミリ秒)
+     * @param pageSize 一度に取得する件数
+     */
+    FolderLoader(SkyDriveClient skyDriveClient, MetadataCache metadataCache, Executor executor, long minBackoff, long maxBackoff, int pageSize) {
+        mSkyDriveClient = skyDriveClient;
+        mMetadataCache = metadataCache;
+        mExecutor = executor;
+        mMinBackoff = minBackoff;
+        mMaxBackoff = maxBackoff;
+        mPageSize = pageSize;
+    }
+
+    void setOnLoadFailedListener(OnLoadFailedListener listener) {
+        mOnLoadFailedListener = listener;
+    }
+
+    void setOnPageLoadedListener(OnPageLoadedListener listener) {
+        mOnPageLoadedListener = listener;
+    }
+
+    /**
+     * ディレクトリのリストの取得を開始する。既に取得中なら何もしない。
+     *
+     * @param folderId ディレクトリのID
+     * @return 取得中ならtrue。最近失敗していて取得しなかった場合はfalse
+     */
+    boolean load(final String folderId) {
+        synchronized (this) {
+            if (mLoading.contains(folderId)) {
+                return true;
+            }
+            final Failure failure = mFailures.get(folderId);
+            if (failure != null && System.currentTimeMillis() < failure.mRetryAt) {
+                return false;
+            }
+            mLoading.add(folderId);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                fetch(folderId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param folderId ディレクトリのID
+     * @return 最後に取得に失敗した原因。失敗していなければnull
+     */
+    synchronized IOException getLastError(String folderId) {
+        final Failure failure = mFailures.get(folderId);
+        return failure == null ? null : failure.mCause;
+    }
+
+    /**
+     * @param folderId ディレクトリのID
+     * @return 取得中のリストのうち、取得済みのページの分。取得中でなければnull
+     */
+    synchronized SkyDriveObject[] getLoadedChildren(String folderId) {
+        final List<SkyDriveObject> loaded = mLoaded.get(folderId);
+        return loaded == null ? null : loaded.toArray(new SkyDriveObject[loaded.size()]);
+    }
+
+    private void fetch(String folderId) {
+        boolean finished = false;
+        try {
+            final List<SkyDriveObject> children = new ArrayList<SkyDriveObject>();
+            for (int offset = 0;; offset += mPageSize) {
+                final SkyDriveObject[] page = mSkyDriveClient.list(folderId, offset, mPageSize);
+                if (page.length < mPageSize) {
+                    // 前のページで mLoaded に公開したリストなので、読む側と同じく同期して追加する
+                    synchronized (this) {
+                        Collections.addAll(children, page);
+                    }
+                    break;
+                }
+                // 続きがあるので、ここまでの分を見せる
+                synchronized (this) {
+                    Collections.addAll(children, page);
+                    mLoaded.put(folderId, children);
+                }
+                final OnPageLoadedListener listener = mOnPageLoadedListener;
+                if (listener != null) {
+                    listener.onPageLoaded(folderId);
+                }
+            }
+            mMetadataCache.putChildren(folderId, children.toArray(new SkyDriveObject[children.size()]));
+            synchronized (this) {
+                mLoading.remove(folderId);
+                mFailures.remove(folderId);
+                mLoaded.remove(folderId);
+            }
+            finished = true;
+        } catch (IOException e) {
+            synchronized (this) {
+                mLoading.remove(folderId);
+                mLoaded.remove(folderId);
+                final Failure previous = mFailures.get(folderId);
+                final int count = previous == null ? 1 : previous.mCount + 1;
+                final long backoff = Math.min(mMinBackoff << Math.min(count - 1, 16), mMaxBackoff);
+                mFailures.put(folderId, new Failure(e, System.currentTimeMillis() + backoff, count));
+            }
+            finished = true;
+            final OnLoadFailedListener listener = mOnLoadFailedListener;
+            if (listener != null) {
+                listener.onLoadFailed(folderId, e);
+            }
+        } finally {
+            // 実行時例外で抜けた場合も、読み込み中のままにしない
+            if (!finished) {
+                synchronized (this) {
+                    mLoading.remove(folderId);
+                    mLoaded.remove(folderId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import android.os.Process;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveAlbum;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveFolder;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * 開いたディレクトリのサブディレクトリのリストを先に取得して MetadataCache に保存する。
+ * 次にサブディレクトリを開いた時に、ネットワークを待たずにキャッシュから返せるようにするため。
+ * 優先度の低いスレッドで、先頭から一定の数のサブディレクトリだけを取得する。件数の多いサブディレクトリは取得しない。
+ * 別のディレクトリを開くと、それまでの先読みはやめる。
+ *
+ * @author masui@uphyca.com
+ */
+class FolderPrefetcher {
+
+    private final SkyDriveClient mSkyDriveClient;
+    private final MetadataCache mMetadataCache;
+    private final Executor mExecutor;
+    private final int mMaxFolders;
+    private final int mMaxChildren;
+
+    /**
+     * mParentId と mGeneration はこのオブジェクトで同期する。
+     */
+    private String mParentId;
+    private int mGeneration;
+
+    /**
+     * @param skyDriveClient キャッシュを通さない SkyDriveClient
+     * @param metadataCache 取得したリストを保存するキャッシュ
+     * @param executor 先読みに使うスレッド
+     * @param maxFolders 一度に先読みするサブディレクトリの最大数
+     * @param maxChildren 先読みするサブディレクトリの件数の上限。これより多いものは開いた時に取得する
+     */
+    FolderPrefetcher(SkyDriveClient skyDriveClient, MetadataCache metadataCache, Executor executor, int maxFolders, int maxChildren) {
+        mSkyDriveClient = skyDriveClient;
+        mMetadataCache = metadataCache;
+        mExecutor = executor;
+        mMaxFolders = maxFolders;
+        mMaxChildren = maxChildren;
+    }
+
+    /**
+     * ディレクトリを開いたことを伝え、そのサブディレクトリの先読みを始める。
+     * 同じディレクトリが続けてクエリされた場合は、先読みをやり直さない。
+     *
+     * @param parentId 開いたディレクトリのID
+     * @param children 開いたディレクトリ配下のドキュメント
+     */
+    void prefetch(String parentId, SkyDriveObject[] children) {
+        final int generation;
+        synchronized (this) {
+            if (parentId.equals(mParentId)) {
+                return;
+            }
+            mParentId = parentId;
+            generation = ++mGeneration;
+        }
+
+        final List<String> folderIds = new ArrayList<String>(mMaxFolders);
+        for (SkyDriveObject each : children) {
+            if (folderIds.size() >= mMaxFolders) {
+                break;
+            }
+            if (each instanceof SkyDriveFolder && ((SkyDriveFolder) each).getCount() <= mMaxChildren) {
+                folderIds.add(each.getId());
+            } else if (each instanceof SkyDriveAlbum && ((SkyDriveAlbum) each).getCount() <= mMaxChildren) {
+                folderIds.add(each.getId());
+            }
+        }
+        if (folderIds.isEmpty()) {
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                fetch(generation, folderIds);
+            }
+        });
+    }
+
+    /**
+     * 先読みをやめる。
+     */
+    synchronized void cancel() {
+        mParentId = null;
+        ++mGeneration;
+    }
+
+    private synchronized boolean isCancelled(int generation) {
+        return generation != mGeneration;
+    }
+
+    private void fetch(int generation, List<String> folderIds) {
+        for (String each : folderIds) {
+            if (isCancelled(generation)) {
+                return;
+            }
+            // 既にキャッシュにあれば、古くても開いた時に再検証されるので取得しない
+            if (mMetadataCache.getChildren(each) != null) {
+                continue;
+            }
+            try {
+                mMetadataCache.putChildren(each, mSkyDriveClient.list(each));
+            } catch (IOException e) {
+                // オフラインなどで失敗した場合は、残りも失敗するのでやめる
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import android.content.SharedPreferences;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * SkyDrive&trade;のディレクトリ構成を MetadataCache にミラーする。
+ * ルートから幅優先で辿り、親のリストにあるサブディレクトリの更新日時が前回同期した時と変わっていなければ、そのサブツリーは取得し直さない。
+ * 前回同期した時の更新日時は自分で保存する。 MetadataCache のリストは一覧を開いた時にも更新されるので、比べても同期したかどうかは分からない。
+ * 取得し直したリストが前回と違う場合だけキャッシュに保存するので、変更の通知も変わったディレクトリの分だけ発生する。
+ * キャッシュに保存されたドキュメントは検索用のインデックスにも登録されるので、開いたことのないディレクトリのファイルも検索できるようになる。
+ * 一度同期したら、一定の期間は同期しない。
+ *
+ * @author masui@uphyca.com
+ */
+class FolderSyncEngine {
+
+    /**
+     * 同期し終えたことを受け取るためのコールバックインターフェイス。
+     */
+    interface OnSyncFinishedListener {
+
+        /**
+         * 同期し終えたときに同期したスレッドで呼ばれる。
+         */
+        void onSyncFinished();
+    }
+
+    private static final String KEY_LAST_SYNCED_AT = "last_synced_at";
+
+    /**
+     * 前回の同期で取得し直せなかったディレクトリ。親のリストは保存済みなので、更新日時を比べても変更が分からない。
+     */
+    private static final String KEY_PENDING_FOLDERS = "pending_folders";
+
+    /**
+     * ディレクトリのIDを付けて、最後に同期した時に親のリストにあった更新日時を保存する。
+     */
+    private static final String KEY_SYNCED_UPDATED_AT_PREFIX = "synced_updated_at/";
+
+    private final SkyDriveClient mSkyDriveClient;
+    private final MetadataCache mMetadataCache;
+    private final Executor mExecutor;
+    private final SharedPreferences mPreferences;
+    private final long mInterval;
+    private final int mMaxFolders;
+
+    private boolean mSyncing;
+    private volatile OnSyncFinishedListener mOnSyncFinishedListener;
+
+    /**
+     * @param skyDriveClient キャッシュを通さない SkyDriveClient
+     * @param metadataCache ミラーを保存するキャッシュ
+     * @param executor バックグラウンドで同期するのに使うスレッド
+     * @param preferences 最後に同期した時刻と、取得し直せなかったディレクトリと、ディレクトリごとに同期した時の更新日時を保存する
+     * @param interval 同期する間隔(ミリ秒)
+     * @param maxFolders 一度に取得し直すディレクトリの最大数
+     */
+    FolderSyncEngine(SkyDriveClient skyDriveClient, MetadataCache metadataCache, Executor executor, SharedPreferences preferences, long interval, int maxFolders) {
+        mSkyDriveClient = skyDriveClient;
+        mMetadataCache = metadataCache;
+        mExecutor = executor;
+        mPreferences = preferences;
+        mInterval = interval;
+        mMaxFolders = maxFolders;
+    }
+
+    void setOnSyncFinishedListener(OnSyncFinishedListener listener) {
+        mOnSyncFinishedListener = listener;
+    }
+
+    /**
+     * @return 同期している途中ならtrue
+     */
+    synchronized boolean isSyncing() {
+        return mSyncing;
+    }
+
+    /**
+     * 前回同期してから一定の期間が過ぎていれば、バックグラウンドで同期を始める。
+     *
+     * @param rootId ルートのディレクトリのID
+     * @return 同期している途中ならtrue
+     */
+    boolean syncIfNecessary(final String rootId) {
+        synchronized (this) {
+            if (mSyncing) {
+                return true;
+            }
+            if (!isDue()) {
+                return false;
+            }
+            mSyncing = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                runSync(rootId);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 前回同期してから一定の期間が過ぎていれば、呼び出したスレッドで同期する。スケジューラから呼ばれる。
+     *
+     * @param rootId ルートのディレクトリのID
+     * @return 同期してルートのリストが取得できればtrue。他で同期中か、同期する必要が無ければfalse
+     */
+    boolean syncNowIfNecessary(String rootId) {
+        synchronized (this) {
+            if (mSyncing || !isDue()) {
+                return false;
+            }
+            mSyncing = true;
+        }
+        return runSync(rootId);
+    }
+
+    private boolean isDue() {
+        final long lastSyncedAt = mPreferences.getLong(KEY_LAST_SYNCED_AT, 0L);
+        return System.currentTimeMillis() - lastSyncedAt >= mInterval;
+    }
+
+    private boolean runSync(String rootId) {
+        boolean completed = false;
+        try {
+            completed = sync(rootId);
+        } finally {
+            finish(completed);
+        }
+        return completed;
+    }
+
+    private synchronized void finish(boolean completed) {
+        mSyncing = false;
+        if (completed) {
+            mPreferences.edit()
+                        .putLong(KEY_LAST_SYNCED_AT, System.currentTimeMillis())
+                        .apply();
+        }
+        final OnSyncFinishedListener listener = mOnSyncFinishedListener;
+        if (listener != null) {
+            listener.onSyncFinished();
+        }
+    }
+
+    /**
+     * ルートと、前回取得し直せなかったディレクトリは必ず取得し直す。
+     * それ以外のディレクトリは、キャッシュにリストが無いか、親のリストにある更新日時が前回同期した時と違う場合だけ取得し直す。
+     * 取得し直さないディレクトリの配下は辿らない。
+     * リストが前回と同じでも、取得し直したことをキャッシュに記録して鮮度を保つ。
+     *
+     * @return ルートのリストが取得できればtrue。途中のディレクトリの失敗は次回に回す
+     */
+    private boolean sync(String rootId) {
+        final Queue<String> queue = new ArrayDeque<>();
+        final Set<String> visited = new HashSet<>();
+        final Set<String> pending = new HashSet<>();
+        // 親のリストで見たサブディレクトリの更新日時。取得し直せたら同期した時の更新日時として保存する
+        final Map<String, Long> updatedAt = new HashMap<>();
+        final SharedPreferences.Editor editor = mPreferences.edit();
+        queue.add(rootId);
+        queue.addAll(mPreferences.getStringSet(KEY_PENDING_FOLDERS, new HashSet<String>()));
+        boolean rootSynced = false;
+        int count = 0;
+        while (!queue.isEmpty()) {
+            final String folderId = queue.remove();
+            if (!visited.add(folderId)) {
+                continue;
+            }
+            if (count >= mMaxFolders) {
+                pending.add(folderId);
+                continue;
+            }
+            ++count;
+            final MetadataCache.Entry<SkyDriveObject[]> previous = mMetadataCache.getChildren(folderId);
+            final SkyDriveObject[] children;
+            try {
+                children = mSkyDriveClient.list(folderId);
+            } catch (IOException e) {
+                pending.add(folderId);
+                continue;
+            }
+            if (folderId.equals(rootId)) {
+                rootSynced = true;
+            }
+            if (previous == null || !isSameListing(previous.getValue(), children)) {
+                mMetadataCache.putChildren(folderId, children);
+            } else {
+                mMetadataCache.touchChildren(folderId);
+            }
+            final Long synced = updatedAt.get(folderId);
+            if (synced != null) {
+                editor.putLong(KEY_SYNCED_UPDATED_AT_PREFIX + folderId, synced);
+            }
+            enqueueChangedFolders(queue, updatedAt, children);
+        }
+        editor.putStringSet(KEY_PENDING_FOLDERS, pending)
+              .apply();
+        return rootSynced;
+    }
+
+    private void enqueueChangedFolders(Queue<String> queue, Map<String, Long> updatedAt, SkyDriveObject[] children) {
+        for (SkyDriveObject each : children) {
+            if (!each.isFolder()) {
+                continue;
+            }
+            final String key = KEY_SYNCED_UPDATED_AT_PREFIX + each.getId();
+            // 更新日時が分からない場合は変わったものとして扱う
+            if (!mPreferences.contains(key) || mPreferences.getLong(key, 0L) != each.getUpdatedAt() || each.getUpdatedAt() == 0L || mMetadataCache.getChildren(each.getId()) == null) {
+                updatedAt.put(each.getId(), each.getUpdatedAt());
+                queue.add(each.getId());
+            }
+        }
+    }
+
+    /**
+     * IDと更新日時とサイズが同じ順番で並んでいれば同じリストとみなす。
+     */
+    private static boolean isSameListing(SkyDriveObject[] previous, SkyDriveObject[] children) {
+        if (previous.length != children.length) {
+            return false;
+        }
+        for (int i = 0; i < children.length; ++i) {
+            final SkyDriveObject a = previous[i];
+            final SkyDriveObject b = children[i];
+            if (!a.getId()
+                  .equals(b.getId()) || a.getUpdatedAt() != b.getUpdatedAt() || a.getSize() != b.getSize()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
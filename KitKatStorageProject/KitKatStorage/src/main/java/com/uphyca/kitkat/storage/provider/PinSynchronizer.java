@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import android.os.Process;
+
+import com.uphyca.kitkat.storage.internal.PinStore;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+
+/**
+ * 固定したドキュメントとそのサブツリーの内容を PinStore に保存する。
+ * 条件付きのGETは使えないので、メタ情報の更新日時とサイズが保存したものと同じファイルはダウンロードしない。
+ * サブツリーを最後まで辿れた場合だけ、無くなったドキュメントを削除する。
+ *
+ * @author masui@uphyca.com
+ */
+class PinSynchronizer {
+
+    private final SkyDriveClient mSkyDriveClient;
+    private final PinStore mPinStore;
+    private final Executor mExecutor;
+
+    /**
+     * @param skyDriveClient キャッシュを通さない SkyDriveClient
+     * @param pinStore 内容を保存する PinStore
+     * @param executor 非同期の同期に使うスレッド
+     */
+    PinSynchronizer(SkyDriveClient skyDriveClient, PinStore pinStore, Executor executor) {
+        mSkyDriveClient = skyDriveClient;
+        mPinStore = pinStore;
+        mExecutor = executor;
+    }
+
+    /**
+     * 優先度の低いスレッドで、固定したドキュメントを同期する。
+     *
+     * @param pinId 固定したドキュメントのID
+     */
+    void syncAsync(final String pinId) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                sync(pinId);
+            }
+        });
+    }
+
+    /**
+     * 固定した全てのドキュメントを同期的に同期する。固定したドキュメントのメタ情報はまとめて取得する。
+     */
+    void syncAll() {
+        final String[] pins = mPinStore.getPins();
+        final SkyDriveObject[] pinned = mSkyDriveClient.getAll(Arrays.asList(pins));
+        for (int i = 0; i < pins.length; ++i) {
+            // 取得できなかったものはオフラインか、ドキュメントが削除された。削除された場合も固定の解除はユーザーに任せる
+            if (pinned[i] != null) {
+                sync(pins[i], pinned[i]);
+            }
+        }
+    }
+
+    /**
+     * @return 最後まで同期できればtrue
+     */
+    boolean sync(String pinId) {
+        final SkyDriveObject[] pinned = mSkyDriveClient.get(pinId);
+        if (pinned.length != 1) {
+            // オフラインか、ドキュメントが削除された。削除された場合も固定の解除はユーザーに任せる
+            return false;
+        }
+        return sync(pinId, pinned[0]);
+    }
+
+    private boolean sync(String pinId, SkyDriveObject pinned) {
+        final Set<String> visited = new HashSet<>();
+        final Deque<SkyDriveObject> pending = new ArrayDeque<>();
+        pending.add(pinned);
+        try {
+            while (!pending.isEmpty()) {
+                final SkyDriveObject document = pending.poll();
+                if (!visited.add(document.getId())) {
+                    continue;
+                }
+                if (document.isFolder()) {
+                    mPinStore.putFolder(pinId, document);
+                    for (SkyDriveObject each : mSkyDriveClient.list(document.getId())) {
+                        pending.add(each);
+                    }
+                } else if (!mPinStore.isCurrent(pinId, document)) {
+                    fetch(pinId, document);
+                }
+            }
+        } catch (IOException e) {
+            // 途中までしか辿れていないので、保存したものは削除しない
+            return false;
+        }
+        mPinStore.retain(pinId, visited);
+        return true;
+    }
+
+    private void fetch(String pinId, SkyDriveObject document) throws IOException {
+        final InputStream in = mSkyDriveClient.openStream(document.getId(), null);
+        try {
+            mPinStore.putFile(pinId, document, in);
+        } finally {
+            in.close();
+        }
+    }
+}
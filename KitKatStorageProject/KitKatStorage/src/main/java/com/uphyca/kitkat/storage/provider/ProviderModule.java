@@ -16,13 +16,120 @@
 
 package com.uphyca.kitkat.storage.provider;
 
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Singleton;
+
+import android.content.Context;
+
+import com.uphyca.kitkat.storage.internal.MetadataCache;
+import com.uphyca.kitkat.storage.internal.PinStore;
+import com.uphyca.kitkat.storage.internal.Remote;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.impl.JournaledFileCache;
+
 import dagger.Module;
+import dagger.Provides;
 
 /**
  * providerパッケージのモジュール。
  * 
  * @author masui@uphyca.com
  */
-@Module(injects = SkyDriveProvider.class, complete = false)
+@Module(injects = {
+        SkyDriveProvider.class, //
+        SyncService.class, //
+}, complete = false)
 public class ProviderModule {
+
+    /**
+     * ディレクトリのリストを並行して取得する数。
+     */
+    private static final int FOLDER_LOADER_THREADS = 2;
+
+    /**
+     * リストの取得に失敗した後、再取得しない期間。
+     */
+    private static final long FOLDER_LOADER_MIN_BACKOFF = TimeUnit.SECONDS.toMillis(15);
+    private static final long FOLDER_LOADER_MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * リストを一度に取得する件数。最初のページが届いた時点で表示する。
+     */
+    private static final int FOLDER_LOADER_PAGE_SIZE = 200;
+
+    /**
+     * サムネイルのキャッシュの容量。
+     */
+    private static final int THUMBNAIL_MEMORY_CACHE_BYTES = 2 * 1024 * 1024;
+    private static final long THUMBNAIL_DISK_CACHE_BYTES = 16L * 1024 * 1024;
+
+    private static final String THUMBNAIL_CACHE_DIRECTORY = "thumbnails";
+
+    /**
+     * ディレクトリ構成をミラーする間隔と、一度に取得し直すディレクトリの最大数。
+     */
+    private static final long SYNC_INTERVAL = TimeUnit.HOURS.toMillis(6);
+    private static final int SYNC_MAX_FOLDERS = 500;
+
+    private static final String SYNC_PREFERENCES = "sync";
+
+    /**
+     * 電源につながっていない時に定期的な同期をする電池の残量の下限。
+     */
+    private static final float SYNC_MIN_BATTERY_LEVEL = 0.3f;
+
+    /**
+     * ディレクトリを開いた時に先読みするサブディレクトリの数と、先読みするサブディレクトリの件数の上限。
+     */
+    private static final int PREFETCH_MAX_FOLDERS = 8;
+    private static final int PREFETCH_MAX_CHILDREN = FOLDER_LOADER_PAGE_SIZE;
+
+    @Provides
+    @Singleton
+    FolderLoader provideFolderLoader(@Remote SkyDriveClient skyDriveClient, MetadataCache metadataCache) {
+        return new FolderLoader(skyDriveClient, metadataCache, Executors.newFixedThreadPool(FOLDER_LOADER_THREADS), FOLDER_LOADER_MIN_BACKOFF, FOLDER_LOADER_MAX_BACKOFF, FOLDER_LOADER_PAGE_SIZE);
+    }
+
+    /**
+     * パイプへの書き込みはクライアントが読み終わるまで続くので、開いているファイルの数だけスレッドが要る。
+     */
+    @Provides
+    @Singleton
+    StreamPump provideStreamPump() {
+        return new StreamPump(Executors.newCachedThreadPool());
+    }
+
+    @Provides
+    @Singleton
+    ThumbnailLoader provideThumbnailLoader(Context context, SkyDriveClient skyDriveClient, StreamPump streamPump) {
+        JournaledFileCache diskCache = new JournaledFileCache(new File(context.getCacheDir(), THUMBNAIL_CACHE_DIRECTORY), THUMBNAIL_DISK_CACHE_BYTES);
+        return new ThumbnailLoader(skyDriveClient, diskCache, THUMBNAIL_MEMORY_CACHE_BYTES, streamPump, context.getCacheDir());
+    }
+
+    @Provides
+    @Singleton
+    FolderSyncEngine provideFolderSyncEngine(Context context, @Remote SkyDriveClient skyDriveClient, MetadataCache metadataCache) {
+        return new FolderSyncEngine(skyDriveClient, metadataCache, Executors.newSingleThreadExecutor(), context.getSharedPreferences(SYNC_PREFERENCES, Context.MODE_PRIVATE), SYNC_INTERVAL, SYNC_MAX_FOLDERS);
+    }
+
+    @Provides
+    @Singleton
+    SyncScheduler provideSyncScheduler(Context context) {
+        return new SyncScheduler(context, SYNC_INTERVAL, SYNC_MIN_BATTERY_LEVEL);
+    }
+
+    @Provides
+    @Singleton
+    FolderPrefetcher provideFolderPrefetcher(@Remote SkyDriveClient skyDriveClient, MetadataCache metadataCache) {
+        return new FolderPrefetcher(skyDriveClient, metadataCache, Executors.newSingleThreadExecutor(), PREFETCH_MAX_FOLDERS, PREFETCH_MAX_CHILDREN);
+    }
+
+    @Provides
+    @Singleton
+    PinSynchronizer providePinSynchronizer(@Remote SkyDriveClient skyDriveClient, PinStore pinStore) {
+        return new PinSynchronizer(skyDriveClient, pinStore, Executors.newSingleThreadExecutor());
+    }
 }
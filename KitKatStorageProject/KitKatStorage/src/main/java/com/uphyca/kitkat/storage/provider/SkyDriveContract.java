@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import android.provider.DocumentsContract;
+
+/**
+ * SkyDriveProvider の独自の拡張。
+ * DocumentsContract に無いものだけを定義する。
+ *
+ * @author masui@uphyca.com
+ */
+public final class SkyDriveContract {
+
+    public static final String AUTHORITY = "com.uphyca.kitkat.storage.documents";
+
+    /**
+     * ContentResolver#call(android.net.Uri, String, String, android.os.Bundle) でドキュメントをオフライン用に固定する。
+     * argにはドキュメントのIDを渡す。
+     * 呼び出せるのはこのアプリケーションと android.Manifest.permission#MANAGE_DOCUMENTS を持つものに限る。
+     */
+    public static final String METHOD_PIN = "pin";
+
+    /**
+     * ContentResolver#call(android.net.Uri, String, String, android.os.Bundle) でドキュメントの固定を解除する。
+     * argにはドキュメントのIDを渡す。
+     */
+    public static final String METHOD_UNPIN = "unpin";
+
+    /**
+     * 固定したドキュメントか、そのサブツリーにあれば1、それ以外は0になるカラム。
+     * {@link DocumentsContract.Document#COLUMN_FLAGS} のビットはプラットフォームが今後も追加するので、独自のカラムにする。
+     * projectionで要求した場合だけ返す。
+     * <p>
+     * Type: INTEGER (int)
+     */
+    public static final String COLUMN_PINNED = "pinned";
+
+    private SkyDriveContract() {
+    }
+}
@@ -16,40 +16,77 @@
 
 package com.uphyca.kitkat.storage.provider;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
 
 import javax.inject.Inject;
 
 import android.annotation.TargetApi;
+import android.Manifest;
+import android.content.BroadcastReceiver;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
 import android.content.res.AssetFileDescriptor;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.graphics.Point;
-import android.os.AsyncTask;
+import android.net.ConnectivityManager;
+import android.net.Uri;
+import android.os.Binder;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.CancellationSignal;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.ParcelFileDescriptor;
+import android.os.Process;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsProvider;
 
 import com.uphyca.kitkat.storage.R;
+import com.uphyca.kitkat.storage.internal.AccessLog;
 import com.uphyca.kitkat.storage.internal.DocumentsColumnMapper;
+import com.uphyca.kitkat.storage.internal.FileCache;
+import com.uphyca.kitkat.storage.internal.MetadataCache;
 import com.uphyca.kitkat.storage.internal.MimeTypeResolver;
+import com.uphyca.kitkat.storage.internal.PinStore;
+import com.uphyca.kitkat.storage.internal.SearchIndex;
 import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.internal.UploadQueue;
 import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
 
 /**
  * SkyDriveをバックエンドにした DocumentsProvider の実装。
- * FIXME アクセスするたびにネットワークアクセスしているので遅い。キャッシュしたり先読みしたりする必要がありそう。
+ * メタ情報は SkyDriveClient がキャッシュしているので、二回目以降のリストはローカルから返される。
+ * ディレクトリのリストはネットワークを待たずにキャッシュから返し、古ければ読み込み中のカーソルを返してバックグラウンドで取得する。
+ * 取得が終わると通知URIに変更を通知するので、ドキュメントUIが再クエリする。
+ * キャッシュから返したディレクトリは、サブディレクトリのリストを FolderPrefetcher で先読みする。
+ * オフライン用に固定したドキュメントは {@link SkyDriveContract#METHOD_PIN} で固定し、ネットワークを使わずに開く。
  * 
  * @author masui@uphyca.com
  */
 @TargetApi(Build.VERSION_CODES.KITKAT)
 public class SkyDriveProvider extends DocumentsProvider {
 
+    private static final String AUTHORITY = SkyDriveContract.AUTHORITY;
+
+    /**
+     * 検索結果の最大件数。
+     */
+    private static final int SEARCH_LIMIT = 100;
+
+    /**
+     * 最近使ったドキュメントの最大件数。
+     */
+    private static final int RECENTS_LIMIT = 64;
+
     private static final String[] DEFAULT_ROOT_PROJECTION = new String[] {
             DocumentsContract.Root.COLUMN_ROOT_ID, // 
             DocumentsContract.Root.COLUMN_MIME_TYPES, // 
@@ -68,9 +105,10 @@ public class SkyDriveProvider extends DocumentsProvider {
             DocumentsContract.Document.COLUMN_FLAGS, //
             DocumentsContract.Document.COLUMN_SIZE, //
     };
+    private static final DocumentsProjection DEFAULT_DOCUMENT_COLUMNS = DocumentsProjection.compile(DEFAULT_DOCUMENT_PROJECTION);
 
     @Inject
-    DocumentsColumnMapper mDocumentsColumnMapper;
+    DocumentsColumnMapper<SkyDriveObject> mDocumentsColumnMapper;
 
     @Inject
     MimeTypeResolver mMimeTypeResolver;
@@ -78,11 +116,55 @@ public class SkyDriveProvider extends DocumentsProvider {
     @Inject
     SkyDriveClient mSkyDriveClient;
 
+    @Inject
+    MetadataCache mMetadataCache;
+
+    @Inject
+    FolderLoader mFolderLoader;
+
+    @Inject
+    StreamPump mStreamPump;
+
+    @Inject
+    FileCache mFileCache;
+
+    @Inject
+    ThumbnailLoader mThumbnailLoader;
+
+    @Inject
+    SearchIndex mSearchIndex;
+
+    @Inject
+    FolderSyncEngine mFolderSyncEngine;
+
+    @Inject
+    SyncScheduler mSyncScheduler;
+
+    @Inject
+    FolderPrefetcher mFolderPrefetcher;
+
+    @Inject
+    AccessLog mAccessLog;
+
+    @Inject
+    UploadQueue mUploadQueue;
+
+    @Inject
+    PinStore mPinStore;
+
+    @Inject
+    PinSynchronizer mPinSynchronizer;
+
+    /**
+     * 書き込みモードで開いたファイルが閉じられた時のコールバックと、ネットワークの変化を受け取るスレッド。
+     */
+    private Handler mCloseHandler;
+
     /**
      * SkyDriveのルートディレクトリ。
      * FIXME プロバイダではなくSkyDriveClientが扱うべき情報
      */
-    private static final String HOME_FOLDER = "me/skydrive";
+    static final String HOME_FOLDER = "me/skydrive";
 
     /**
      * ルートの情報を返す。最初に必ず呼ばれる。
@@ -98,8 +180,8 @@ public class SkyDriveProvider extends DocumentsProvider {
         row.add(DocumentsContract.Root.COLUMN_ROOT_ID, HOME_FOLDER);
         int flags = 0;
         flags |= DocumentsContract.Root.FLAG_SUPPORTS_CREATE;
-        //flags |= DocumentsContract.Root.FLAG_SUPPORTS_RECENTS;
-        //flags |= DocumentsContract.Root.FLAG_SUPPORTS_SEARCH;
+        flags |= DocumentsContract.Root.FLAG_SUPPORTS_RECENTS;
+        flags |= DocumentsContract.Root.FLAG_SUPPORTS_SEARCH;
         row.add(DocumentsContract.Root.COLUMN_FLAGS, flags);
         row.add(DocumentsContract.Root.COLUMN_TITLE, getContext().getString(R.string.title));
         row.add(DocumentsContract.Root.COLUMN_DOCUMENT_ID, HOME_FOLDER);
@@ -117,23 +199,25 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public Cursor queryDocument(String documentId, String[] projection) throws FileNotFoundException {
-        final MatrixCursor result = new MatrixCursor(resolveDocumentProjection(projection));
+        final DocumentsProjection columns = resolveDocumentProjection(projection);
         if (HOME_FOLDER.equals(documentId)) {
+            final MatrixCursor result = new MatrixCursor(columns.getColumnNames(), 1);
             includeDefaultDocument(result);
             return result;
         }
 
-        for (SkyDriveObject each : mSkyDriveClient.get(documentId)) {
-            includeFile(result, each);
-        }
-
+        final SkyDriveObject[] documents = mSkyDriveClient.get(documentId);
+        final MatrixCursor result = new MatrixCursor(columns.getColumnNames(), documents.length);
+        includeFiles(result, columns, documents);
         return result;
     }
 
     /**
      * ディレクトリ配下のファイルをリストする為に呼ばれる。
-     * FIXME sortOrderを無視している
-     * FIXME projectionを無視している
+     * キャッシュが新鮮でなければ、キャッシュにある分だけを読み込み中として返す。
+     * キャッシュが無ければ、取得中のリストのうち届いたページの分だけを読み込み中として返し、ページが届くたびに再クエリさせる。
+     * キャッシュがあれば、サブディレクトリのリストを先読みさせる。
+     * sortOrderは名前、更新日時、サイズのいずれかで、キャッシュから取り出した配列をここで並べ替える。
      * 
      * @param parentDocumentId
      * @param projection
@@ -143,18 +227,49 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public Cursor queryChildDocuments(String parentDocumentId, String[] projection, String sortOrder) throws FileNotFoundException {
-        final MatrixCursor result = new MatrixCursor(resolveDocumentProjection(projection));
+        final DocumentsProjection columns = resolveDocumentProjection(projection);
+        final MetadataCache.Entry<SkyDriveObject[]> cached = mMetadataCache.getChildren(parentDocumentId);
+        final SkyDriveObject[] children = cached != null ? cached.getValue() : mFolderLoader.getLoadedChildren(parentDocumentId);
+        final DocumentsCursor result = new DocumentsCursor(columns.getColumnNames(), children == null ? 0 : children.length);
+        if (children != null) {
+            DocumentsSortOrder.sort(children, sortOrder);
+            includeFiles(result, columns, children);
+        }
+        if (cached != null) {
+            mFolderPrefetcher.prefetch(parentDocumentId, cached.getValue());
+        } else {
+            // 別のディレクトリを開いたので、前のディレクトリの先読みはやめる
+            mFolderPrefetcher.cancel();
+        }
+        if (cached != null && cached.isFresh()) {
+            return result;
+        }
+
+        // 取得が終わるか失敗したら、このURIに変更が通知される
+        result.setNotificationUri(getContext().getContentResolver(), buildChildDocumentsUri(parentDocumentId));
+        if (mFolderLoader.load(parentDocumentId)) {
+            result.setLoading(true);
+            return result;
+        }
 
-        //SkyDriveはドキュメントのID/filesでファイルをリストする
-        //FIXME このプロバイダがSkyDriveのAPIの詳細を知っているのはよくないので list() メソッドをSkyDriveClientに設けるなどしたほうが良さそう
-        for (SkyDriveObject each : mSkyDriveClient.get(parentDocumentId + "/files")) {
-            includeFile(result, each);
+        // 最近取得に失敗しているので、キャッシュがあればそれだけを返す
+        final IOException e = mFolderLoader.getLastError(parentDocumentId);
+        if (cached == null) {
+            FileNotFoundException fileNotFound = new FileNotFoundException(e == null ? null : e.getMessage());
+            fileNotFound.initCause(e);
+            throw fileNotFound;
+        }
+        if (e != null) {
+            result.setError(e.getMessage());
         }
         return result;
     }
 
     /**
      * ファイルの内容を取得する為に呼ばれる。
+     * 読み込みモードの場合は、キャッシュにあればそれを返し、無ければダウンロードしながらパイプで返す。ダウンロードした内容はキャッシュされる。
+     * 途中で閉じられた場合は読んだところまでをキャッシュに残し、次に開いた時は続きだけをダウンロードする。
+     * 書き込みモードの場合は一時ファイルにダウンロードしてから返す。
      * 
      * @param documentId
      * @param mode
@@ -164,28 +279,75 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public ParcelFileDescriptor openDocument(final String documentId, String mode, final CancellationSignal signal) throws FileNotFoundException {
+        final boolean isWrite = (mode.indexOf('w') != -1);
+        mAccessLog.record(documentId);
+        if (!isWrite) {
+            // 固定したドキュメントは古くてもネットワークを待たずに開く。新しい内容は同期で取得する
+            final File pinned = mPinStore.getFile(documentId);
+            if (pinned != null) {
+                return ParcelFileDescriptor.open(pinned, ParcelFileDescriptor.MODE_READ_ONLY);
+            }
+            try {
+                final SkyDriveObject[] documents = mSkyDriveClient.get(documentId);
+                if (documents.length != 1) {
+                    return mStreamPump.open(mSkyDriveClient.openStream(documentId, signal));
+                }
+                final String cacheKey = buildFileCacheKey(documents[0]);
+                final File cached = mFileCache.get(cacheKey);
+                if (cached != null) {
+                    return ParcelFileDescriptor.open(cached, ParcelFileDescriptor.MODE_READ_ONLY);
+                }
+                return mStreamPump.open(openFillingFileCache(cacheKey, documents[0], signal));
+            } catch (IOException e) {
+                FileNotFoundException fileNotFound = new FileNotFoundException("Failed to open document with id " + documentId + " and mode " + mode);
+                fileNotFound.initCause(e);
+                throw fileNotFound;
+            }
+        }
 
-        try {
-            final File file = mSkyDriveClient.download(documentId);
-            final int accessMode = ParcelFileDescriptor.parseMode(mode);
-            final boolean isWrite = (mode.indexOf('w') != -1);
+        // アップロード先はメタ情報のキャッシュから取っておく
+        final SkyDriveObject[] documents = mSkyDriveClient.get(documentId);
+        if (documents.length != 1) {
+            throw new FileNotFoundException("Failed to find document with id " + documentId);
+        }
+        final String parentId = documents[0].getParentId();
+        final String name = documents[0].getName();
 
-            if (!isWrite) {
-                return ParcelFileDescriptor.open(file, accessMode);
+        try {
+            final File file = mSkyDriveClient.download(documentId, signal);
+            if (file == null) {
+                throw new FileNotFoundException("Failed to open document with id " + documentId + " and mode " + mode);
             }
+            final int accessMode = ParcelFileDescriptor.parseMode(mode);
 
             // 書き込みモードで開かれた時は、コールバックを設定する。
             // コールバックはクライアントがファイルを編集してクローズした時に呼ばれるので、それをクラウドに同期するトリガーにする。
-            Handler handler = new Handler(getContext().getMainLooper());
-            return ParcelFileDescriptor.open(file, accessMode, handler, new ParcelFileDescriptor.OnCloseListener() {
+            // アップロードはキューに入れるので、失敗してもプロセスが終了しても再試行される。
+            return ParcelFileDescriptor.open(file, accessMode, mCloseHandler, new ParcelFileDescriptor.OnCloseListener() {
                 @Override
                 public void onClose(IOException e) {
-                    // FIXME リトライ処理が要る。
-                    new UploadTask(mSkyDriveClient, documentId, file).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+                    if (e != null) {
+                        // クライアントが異常終了したので、書きかけの内容はアップロードしない
+                        file.delete();
+                        return;
+                    }
+                    try {
+                        // 固定した内容はアップロードが終わるまで古いままになるので、先に置き換える
+                        mPinStore.replaceFile(documentId, file);
+                    } catch (IOException ignore) {
+                        // 置き換えられなくても、アップロードが終われば同期で新しい内容になる
+                    }
+                    try {
+                        mUploadQueue.enqueue(documentId, parentId, name, file);
+                    } catch (IOException ignore) {
+                        file.delete();
+                    }
                 }
             });
         } catch (IOException e) {
-            throw new FileNotFoundException("Failed to open document with id " + documentId + " and mode " + mode);
+            FileNotFoundException fileNotFound = new FileNotFoundException("Failed to open document with id " + documentId + " and mode " + mode);
+            fileNotFound.initCause(e);
+            throw fileNotFound;
         }
     }
 
@@ -210,7 +372,11 @@ public class SkyDriveProvider extends DocumentsProvider {
             }
         }
         try {
-            return mSkyDriveClient.touch(parentDocumentId, mMimeTypeResolver.suggestExtensionIfNecessary(mimeType, displayName));
+            final String documentId = mSkyDriveClient.touch(parentDocumentId, mMimeTypeResolver.suggestExtensionIfNecessary(mimeType, displayName));
+            if (documentId != null) {
+                mAccessLog.record(documentId);
+            }
+            return documentId;
         } catch (IOException e) {
             FileNotFoundException fileNotFound = new FileNotFoundException(e.getMessage());
             fileNotFound.initCause(e);
@@ -247,6 +413,7 @@ public class SkyDriveProvider extends DocumentsProvider {
 
         try {
             mSkyDriveClient.delete(documentId);
+            mAccessLog.remove(documentId);
         } catch (IOException e) {
             FileNotFoundException fileNotFound = new FileNotFoundException(e.getMessage());
             fileNotFound.initCause(e);
@@ -257,6 +424,7 @@ public class SkyDriveProvider extends DocumentsProvider {
     /**
      * ドキュメントの履歴を取得する為に呼ばれる。
      * ルートがクエリされた時に、DocumentsContract.Root.FLAG_SUPPORTS_RECENTS を設定していなければ呼ばれない。
+     * 開いたり作成したりしたドキュメントの履歴から返すので、ネットワークにはアクセスしない。
      * 
      * @param rootId
      * @param projection
@@ -265,13 +433,19 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public Cursor queryRecentDocuments(String rootId, String[] projection) throws FileNotFoundException {
-        //デフォルト実装は例外を投げる
-        return super.queryRecentDocuments(rootId, projection);
+        final DocumentsProjection columns = resolveDocumentProjection(projection);
+        final SkyDriveObject[] recents = mAccessLog.getRecentDocuments(RECENTS_LIMIT);
+        final MatrixCursor result = new MatrixCursor(columns.getColumnNames(), recents.length);
+        includeFiles(result, columns, recents);
+        return result;
     }
 
     /**
      * ドキュメントを検索する為に呼ばれる。
      * ルートがクエリされた時に、DocumentsContract.Root.FLAG_SUPPORTS_SEARCH を設定していなければ呼ばれない。
+     * ネットワークにはアクセスせず、これまでに取得したドキュメントのインデックスから探す。
+     * ディレクトリ構成をミラーに同期している途中なら、読み込み中として返し、同期し終えたら再クエリさせる。
+     * 同期を始めるのは、定期的な同期と同じく SyncScheduler の条件が揃っている時だけ。
      * 
      * @param rootId
      * @param query
@@ -281,8 +455,16 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public Cursor querySearchDocuments(String rootId, String query, String[] projection) throws FileNotFoundException {
-        //デフォルト実装は例外を投げる
-        return super.querySearchDocuments(rootId, query, projection);
+        final DocumentsProjection columns = resolveDocumentProjection(projection);
+        final SkyDriveObject[] found = mSearchIndex.search(query, SEARCH_LIMIT);
+        final DocumentsCursor result = new DocumentsCursor(columns.getColumnNames(), found.length);
+        includeFiles(result, columns, found);
+        final boolean syncing = mSyncScheduler.canSyncNow() ? mFolderSyncEngine.syncIfNecessary(rootId) : mFolderSyncEngine.isSyncing();
+        if (syncing) {
+            result.setNotificationUri(getContext().getContentResolver(), buildSearchDocumentsUri(rootId));
+            result.setLoading(true);
+        }
+        return result;
     }
 
     /**
@@ -310,73 +492,229 @@ public class SkyDriveProvider extends DocumentsProvider {
      */
     @Override
     public AssetFileDescriptor openDocumentThumbnail(String documentId, Point sizeHint, CancellationSignal signal) throws FileNotFoundException {
-        return super.openDocumentThumbnail(documentId, sizeHint, signal);
+        final SkyDriveObject[] documents = mSkyDriveClient.get(documentId);
+        if (documents.length != 1) {
+            throw new FileNotFoundException("Failed to find document with id " + documentId);
+        }
+        try {
+            return mThumbnailLoader.open(documents[0], sizeHint, signal);
+        } catch (IOException e) {
+            FileNotFoundException fileNotFound = new FileNotFoundException(e.getMessage());
+            fileNotFound.initCause(e);
+            throw fileNotFound;
+        }
+    }
+
+    /**
+     * {@link SkyDriveContract#METHOD_PIN} と {@link SkyDriveContract#METHOD_UNPIN} を処理する。
+     * DocumentsProvider は MANAGE_DOCUMENTS を持たない呼び出し元を拒否しないので、ここで調べる。
+     * 
+     * @param method
+     * @param arg ドキュメントのID
+     * @param extras
+     * @return
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        final boolean isPin = SkyDriveContract.METHOD_PIN.equals(method);
+        if (!isPin && !SkyDriveContract.METHOD_UNPIN.equals(method)) {
+            return super.call(method, arg, extras);
+        }
+        enforceManageDocuments();
+        if (arg == null) {
+            throw new IllegalArgumentException("Document id is required for " + method);
+        }
+        if (isPin) {
+            mPinStore.pin(arg);
+            mPinSynchronizer.syncAsync(arg);
+        } else {
+            mPinStore.unpin(arg);
+        }
+        return null;
+    }
+
+    private void enforceManageDocuments() {
+        if (Binder.getCallingUid() == Process.myUid()) {
+            return;
+        }
+        if (getContext().checkCallingPermission(Manifest.permission.MANAGE_DOCUMENTS) != PackageManager.PERMISSION_GRANTED) {
+            throw new SecurityException("Requires " + Manifest.permission.MANAGE_DOCUMENTS);
+        }
     }
 
     @Override
     public boolean onCreate() {
+        final HandlerThread closeThread = new HandlerThread(getClass().getSimpleName());
+        closeThread.start();
+        mCloseHandler = new Handler(closeThread.getLooper());
+        // 前回のプロセスで終わらなかったアップロードを再開する
+        mUploadQueue.start();
+        // ネットワークにつながったら、再試行を待たずに続きを送る。データベースに触るので、メインスレッドでは受け取らない
+        getContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+                    mUploadQueue.retryNow();
+                }
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION), null, mCloseHandler);
+
+        mMetadataCache.addOnChildrenChangedListener(new MetadataCache.OnChildrenChangedListener() {
+            @Override
+            public void onChildrenChanged(String parentId) {
+                notifyChildrenChanged(parentId);
+            }
+        });
+        mFolderLoader.setOnLoadFailedListener(new FolderLoader.OnLoadFailedListener() {
+            @Override
+            public void onLoadFailed(String folderId, IOException e) {
+                notifyChildrenChanged(folderId);
+            }
+        });
+        mFolderLoader.setOnPageLoadedListener(new FolderLoader.OnPageLoadedListener() {
+            @Override
+            public void onPageLoaded(String folderId) {
+                notifyChildrenChanged(folderId);
+            }
+        });
+        // 変わったディレクトリのリストは MetadataCache 経由で通知される。検索と最近使ったドキュメントはミラー全体から作るので、同期が終わったら通知する
+        mFolderSyncEngine.setOnSyncFinishedListener(new FolderSyncEngine.OnSyncFinishedListener() {
+            @Override
+            public void onSyncFinished() {
+                final ContentResolver resolver = getContext().getContentResolver();
+                resolver.notifyChange(buildSearchDocumentsUri(HOME_FOLDER), null, false);
+                resolver.notifyChange(DocumentsContract.buildRecentDocumentsUri(AUTHORITY, HOME_FOLDER), null, false);
+            }
+        });
+        mSyncScheduler.schedule();
         return true;
     }
 
-    private void includeDefaultDocument(MatrixCursor result) {
-        final MatrixCursor.RowBuilder row = result.newRow();
-        row.add(DocumentsContract.Document.COLUMN_DOCUMENT_ID, HOME_FOLDER);
-        row.add(DocumentsContract.Document.COLUMN_MIME_TYPE, DocumentsContract.Document.MIME_TYPE_DIR);
-        int flags = 0;
-        flags |= DocumentsContract.Document.FLAG_DIR_PREFERS_LAST_MODIFIED;
-        flags |= DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE;
-        row.add(DocumentsContract.Document.COLUMN_FLAGS, flags);
+    private void notifyChildrenChanged(String parentDocumentId) {
+        final ContentResolver resolver = getContext().getContentResolver();
+        resolver.notifyChange(buildChildDocumentsUri(parentDocumentId), null, false);
     }
 
-    private void includeFile(MatrixCursor result, SkyDriveObject skyDriveObj) {
-        final MatrixCursor.RowBuilder row = result.newRow();
-        row.add(DocumentsContract.Document.COLUMN_DOCUMENT_ID, mDocumentsColumnMapper.mapDocumentId(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_MIME_TYPE, mDocumentsColumnMapper.mapMimeType(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_DISPLAY_NAME, mDocumentsColumnMapper.mapDisplayName(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_SUMMARY, mDocumentsColumnMapper.mapSummary(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_LAST_MODIFIED, mDocumentsColumnMapper.mapLastModified(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_ICON, mDocumentsColumnMapper.mapIcon(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_SIZE, mDocumentsColumnMapper.mapSize(skyDriveObj));
-        row.add(DocumentsContract.Document.COLUMN_FLAGS, mDocumentsColumnMapper.mapFlags(skyDriveObj));
+    private static Uri buildChildDocumentsUri(String parentDocumentId) {
+        return DocumentsContract.buildChildDocumentsUri(AUTHORITY, parentDocumentId);
     }
 
-    private String[] resolveRootProjection(String[] projection) {
-        return projection == null ? DEFAULT_ROOT_PROJECTION : projection;
+    /**
+     * 検索結果の通知URI。オブザーバはクエリパラメータを区別しないので、検索語を含めない。
+     */
+    private static Uri buildSearchDocumentsUri(String rootId) {
+        return DocumentsContract.buildSearchDocumentsUri(AUTHORITY, rootId, "");
     }
 
-    private String[] resolveDocumentProjection(String[] projection) {
-        return projection == null ? DEFAULT_DOCUMENT_PROJECTION : projection;
+    /**
+     * ファイルのキャッシュのキーを作る。内容が変わればキーも変わるように、更新日時とサイズを含める。
+     * 
+     * @param document
+     * @return キー
+     */
+    private static String buildFileCacheKey(SkyDriveObject document) {
+        return document.getId() + "@" + document.getUpdatedAt() + "#" + document.getSize();
     }
 
-    private static class UploadTask extends AsyncTask<Void, Void, Void> {
+    /**
+     * ダウンロードしながらキャッシュに書き込むストリームを開く。
+     * 前回中断した内容がキャッシュに残っていれば、先頭はそこから返して続きだけをダウンロードする。
+     * キャッシュの容量より大きいドキュメントは、書いてもすぐに追い出されて他のキャッシュまで消すので、キャッシュせずにそのまま返す。
+     */
+    private InputStream openFillingFileCache(String cacheKey, SkyDriveObject document, CancellationSignal signal) throws IOException {
+        final String documentId = document.getId();
+        if (document.getSize() > mFileCache.getMaxSize()) {
+            return mSkyDriveClient.openStream(documentId, signal);
+        }
+        final FileCache.Editor editor;
+        try {
+            editor = mFileCache.edit(cacheKey);
+        } catch (IOException e) {
+            return mSkyDriveClient.openStream(documentId, signal);
+        }
+        if (editor == null) {
+            // 他で書き込み中
+            return mSkyDriveClient.openStream(documentId, signal);
+        }
 
-        private final SkyDriveClient mSkyDriveClient;
-        private final String mDocumentId;
-        private final File mLocalFile;
+        // 最後まで書いてあるのに反映されていないものは、範囲外を要求しないように最初からやり直す
+        final long offset = editor.getLength() < document.getSize() ? editor.getLength() : 0L;
+        InputStream prefix = null;
+        if (offset > 0L) {
+            try {
+                prefix = editor.newInputStream();
+            } catch (IOException e) {
+                editor.abort();
+                return mSkyDriveClient.openStream(documentId, signal);
+            }
+        }
 
-        private UploadTask(SkyDriveClient skyDriveClient, String documentId, File localFile) {
-            mSkyDriveClient = skyDriveClient;
-            mDocumentId = documentId;
-            mLocalFile = localFile;
+        final InputStream in;
+        try {
+            in = offset > 0L ? mSkyDriveClient.openStream(documentId, offset, signal) : mSkyDriveClient.openStream(documentId, signal);
+        } catch (IOException | RuntimeException e) {
+            // 残っている内容は次に使う
+            closeQuietly(prefix);
+            editor.suspend();
+            throw e;
         }
 
-        @Override
-        protected Void doInBackground(Void... params) {
-            if (!mLocalFile.exists()) {
-                return null;
+        final InputStream filling;
+        try {
+            filling = new CacheFillingInputStream(in, editor, offset > 0L, document.getSize());
+        } catch (IOException e) {
+            if (prefix == null) {
+                return in;
             }
+            // 続きしか読めないので、最初から読み直す
+            closeQuietly(prefix);
+            closeQuietly(in);
+            return mSkyDriveClient.openStream(documentId, signal);
+        }
+        return prefix == null ? filling : new SequenceInputStream(prefix, filling);
+    }
 
-            final SkyDriveObject[] documents = mSkyDriveClient.get(mDocumentId);
-            if (documents.length < 1) {
-                return null;
-            }
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+        }
+    }
 
-            SkyDriveObject document = documents[0];
-            try {
-                mSkyDriveClient.upload(document.getParentId(), document.getName(), mLocalFile);
-            } catch (IOException ignore) {
+    private void includeDefaultDocument(MatrixCursor result) {
+        final MatrixCursor.RowBuilder row = result.newRow();
+        row.add(DocumentsContract.Document.COLUMN_DOCUMENT_ID, HOME_FOLDER);
+        row.add(DocumentsContract.Document.COLUMN_MIME_TYPE, DocumentsContract.Document.MIME_TYPE_DIR);
+        int flags = 0;
+        flags |= DocumentsContract.Document.FLAG_DIR_PREFERS_LAST_MODIFIED;
+        flags |= DocumentsContract.Document.FLAG_DIR_SUPPORTS_CREATE;
+        row.add(DocumentsContract.Document.COLUMN_FLAGS, flags);
+    }
+
+    /**
+     * projectionで要求されたカラムだけを計算して、行を追加する。行の配列は使い回す。
+     * {@link SkyDriveContract#COLUMN_PINNED} はDocumentsColumnMapperに無いので、ここで埋める。
+     */
+    private void includeFiles(MatrixCursor result, DocumentsProjection columns, SkyDriveObject[] skyDriveObjs) {
+        final Object[] row = new Object[columns.getColumns().length];
+        final int pinnedPosition = columns.getPinnedPosition();
+        for (SkyDriveObject each : skyDriveObjs) {
+            mDocumentsColumnMapper.mapRow(each, columns.getColumns(), row);
+            if (pinnedPosition != -1) {
+                row[pinnedPosition] = mPinStore.isPinned(each.getId()) ? 1 : 0;
             }
-            return null;
+            result.addRow(row);
         }
     }
+
+    private String[] resolveRootProjection(String[] projection) {
+        return projection == null ? DEFAULT_ROOT_PROJECTION : projection;
+    }
+
+    private DocumentsProjection resolveDocumentProjection(String[] projection) {
+        return projection == null ? DEFAULT_DOCUMENT_COLUMNS : DocumentsProjection.compile(projection);
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+
+/**
+ * InputStream の内容を、別スレッドでパイプに書き込んで読み込み側の ParcelFileDescriptor を返す。
+ * ファイル全体のダウンロードを待たずにクライアントが読み始められる。
+ * パイプは ParcelFileDescriptor#createReliablePipe() で作るので、途中で失敗した場合はクライアントが
+ * ParcelFileDescriptor#checkError() で知ることができる。
+ * FIXME パイプはシークできないので、シークが必要なクライアントでは読めない。
+ *
+ * @author masui@uphyca.com
+ */
+@TargetApi(Build.VERSION_CODES.KITKAT)
+public class StreamPump {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Executor mExecutor;
+
+    /**
+     * @param executor パイプへの書き込みに使うスレッド。クライアントがパイプを閉じるまでスレッドを占有する
+     */
+    public StreamPump(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * 書き込みを開始して、読み込み側の ParcelFileDescriptor を返す。
+     * 渡したストリームは書き込みが終わるか失敗した時に閉じられる。
+     *
+     * @param in パイプに書き込む内容
+     * @return 読み込み側の ParcelFileDescriptor
+     * @throws IOException パイプを作れなかった場合に発生する
+     */
+    public ParcelFileDescriptor open(final InputStream in) throws IOException {
+        final ParcelFileDescriptor[] pipe;
+        try {
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException e) {
+            closeQuietly(in);
+            throw e;
+        }
+        final ParcelFileDescriptor sink = pipe[1];
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                pump(in, sink);
+            }
+        });
+        return pipe[0];
+    }
+
+    private static void pump(InputStream in, ParcelFileDescriptor sink) {
+        final OutputStream out = new FileOutputStream(sink.getFileDescriptor());
+        try {
+            final byte[] buf = new byte[BUFFER_SIZE];
+            for (int c; (c = in.read(buf)) > -1;) {
+                out.write(buf, 0, c);
+            }
+            out.flush();
+            sink.close();
+        } catch (IOException e) {
+            // クライアントが先に閉じた場合も書き込みが失敗するが、その場合は伝える相手がいないので無視される
+            closeWithError(sink, e);
+        } catch (RuntimeException e) {
+            closeWithError(sink, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeWithError(ParcelFileDescriptor sink, Exception e) {
+        try {
+            sink.closeWithError(String.valueOf(e.getMessage()));
+        } catch (IOException ignore) {
+        }
+    }
+
+    private static void closeQuietly(Closeable res) {
+        if (res == null) {
+            return;
+        }
+        try {
+            res.close();
+        } catch (IOException e) {
+        }
+    }
+}
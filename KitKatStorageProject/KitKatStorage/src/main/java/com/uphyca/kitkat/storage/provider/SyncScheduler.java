@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+
+/**
+ * FolderSyncEngine を定期的に実行するスケジューラ。
+ * AlarmManager で SyncService を起動する。端末を起こさないアラームなので、端末が起きている時だけ同期する。
+ * 同期するのは従量制でないネットワークにつながっていて、電源につながっているか電池の残量が十分な場合だけ。
+ *
+ * @author masui@uphyca.com
+ */
+class SyncScheduler {
+
+    private final Context mContext;
+    private final AlarmManager mAlarmManager;
+    private final ConnectivityManager mConnectivityManager;
+    private final long mInterval;
+    private final float mMinBatteryLevel;
+
+    /**
+     * @param context コンテキスト
+     * @param interval 同期する間隔(ミリ秒)
+     * @param minBatteryLevel 電源につながっていない時に同期する電池の残量の下限(0.0から1.0)
+     */
+    SyncScheduler(Context context, long interval, float minBatteryLevel) {
+        mContext = context;
+        mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        mConnectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mInterval = interval;
+        mMinBatteryLevel = minBatteryLevel;
+    }
+
+    /**
+     * 定期的な同期を登録する。すでに登録されていれば何もしないので、プロセスが起動するたびに呼んでも次の同期が遅れない。
+     */
+    void schedule() {
+        final Intent intent = new Intent(mContext, SyncService.class);
+        if (PendingIntent.getService(mContext, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        final PendingIntent operation = PendingIntent.getService(mContext, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+        mAlarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + mInterval, mInterval, operation);
+    }
+
+    /**
+     * @return 今同期して良ければtrue
+     */
+    boolean canSyncNow() {
+        return isNetworkSuitable() && isBatterySuitable();
+    }
+
+    private boolean isNetworkSuitable() {
+        final NetworkInfo network = mConnectivityManager.getActiveNetworkInfo();
+        return network != null && network.isConnected() && !mConnectivityManager.isActiveNetworkMetered();
+    }
+
+    /**
+     * ACTION_BATTERY_CHANGED はスティッキーなので、レシーバを登録せずに最新の状態が取れる。
+     */
+    private boolean isBatterySuitable() {
+        final Intent battery = mContext.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery == null) {
+            return true;
+        }
+        if (battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0) {
+            return true;
+        }
+        final int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        return level >= 0 && scale > 0 && level >= scale * mMinBatteryLevel;
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import javax.inject.Inject;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * SyncScheduler から起動されて、条件が揃っていれば FolderSyncEngine で同期し、固定したドキュメントを PinSynchronizer で更新する。
+ * 条件が揃っていなければ何もせず、次のアラームで再試行する。
+ *
+ * @author masui@uphyca.com
+ */
+public class SyncService extends IntentService {
+
+    @Inject
+    FolderSyncEngine mFolderSyncEngine;
+
+    @Inject
+    SyncScheduler mSyncScheduler;
+
+    @Inject
+    PinSynchronizer mPinSynchronizer;
+
+    public SyncService() {
+        super(SyncService.class.getSimpleName());
+    }
+
+    /**
+     * 依存はaspectでインジェクトされる。
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        if (!mSyncScheduler.canSyncNow()) {
+            return;
+        }
+        mFolderSyncEngine.syncNowIfNecessary(SkyDriveProvider.HOME_FOLDER);
+        mPinSynchronizer.syncAll();
+    }
+}
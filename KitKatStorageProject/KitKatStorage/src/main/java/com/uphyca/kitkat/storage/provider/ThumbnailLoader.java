@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.uphyca.kitkat.storage.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Point;
+import android.os.CancellationSignal;
+import android.os.ParcelFileDescriptor;
+import android.util.LruCache;
+
+import com.uphyca.kitkat.storage.internal.FileCache;
+import com.uphyca.kitkat.storage.internal.SkyDriveClient;
+import com.uphyca.kitkat.storage.skydrive.SkyDriveObject;
+import com.uphyca.kitkat.storage.skydrive.SkyDrivePhoto;
+
+/**
+ * サムネイルを作る。
+ * 要求されたサイズを決まった大きさのバケットに丸めて、バケットごとにメモリとディスクにキャッシュする。
+ * 写真の場合はSkyDriveが用意している縮小版のうちバケットに最も近いものを、それ以外の画像の場合は元のファイルを取得して、 inSampleSize で縮小する。
+ *
+ * @author masui@uphyca.com
+ */
+class ThumbnailLoader {
+
+    /**
+     * サムネイルの長辺の大きさ。要求されたサイズ以上で最も小さいものを使う。
+     */
+    private static final int[] BUCKETS = new int[] {
+            96, //
+            192, //
+            384, //
+            768, //
+    };
+
+    private static final int JPEG_QUALITY = 85;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final SkyDriveClient mSkyDriveClient;
+    private final FileCache mDiskCache;
+    private final LruCache<String, byte[]> mMemoryCache;
+    private final StreamPump mStreamPump;
+    private final File mTempDirectory;
+
+    /**
+     * @param skyDriveClient 画像の取得に使う SkyDriveClient
+     * @param diskCache サムネイル専用のディスクキャッシュ
+     * @param memoryCacheBytes メモリキャッシュの容量(バイト)
+     * @param streamPump メモリキャッシュの内容を返すのに使う
+     * @param tempDirectory 元の画像を一時的に保存するディレクトリ
+     */
+    ThumbnailLoader(SkyDriveClient skyDriveClient, FileCache diskCache, int memoryCacheBytes, StreamPump streamPump, File tempDirectory) {
+        mSkyDriveClient = skyDriveClient;
+        mDiskCache = diskCache;
+        mMemoryCache = new LruCache<String, byte[]>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, byte[] value) {
+                return value.length;
+            }
+        };
+        mStreamPump = streamPump;
+        mTempDirectory = tempDirectory;
+    }
+
+    /**
+     * サムネイルを開く。
+     *
+     * @param document 画像のドキュメント
+     * @param sizeHint 要求されたサイズ
+     * @param signal キャンセルを受け取るシグナル。nullでも良い
+     * @return サムネイル
+     * @throws IOException 取得や縮小に失敗した場合に発生する
+     */
+    AssetFileDescriptor open(SkyDriveObject document, Point sizeHint, CancellationSignal signal) throws IOException {
+        final int bucket = toBucket(sizeHint);
+        final String key = document.getId() + "@" + document.getUpdatedAt() + "/" + bucket;
+
+        final byte[] inMemory = mMemoryCache.get(key);
+        if (inMemory != null) {
+            return openBytes(inMemory);
+        }
+
+        final File onDisk = mDiskCache.get(key);
+        if (onDisk != null) {
+            return new AssetFileDescriptor(ParcelFileDescriptor.open(onDisk, ParcelFileDescriptor.MODE_READ_ONLY), 0, onDisk.length());
+        }
+
+        final byte[] thumbnail = createThumbnail(document, bucket, signal);
+        mMemoryCache.put(key, thumbnail);
+        putDiskCache(key, thumbnail);
+        return openBytes(thumbnail);
+    }
+
+    private byte[] createThumbnail(SkyDriveObject document, int bucket, CancellationSignal signal) throws IOException {
+        final File original = File.createTempFile("thumbnail", null, mTempDirectory);
+        try {
+            final InputStream in = openOriginal(document, bucket, signal);
+            try {
+                drain(in, original, signal);
+            } finally {
+                closeQuietly(in);
+            }
+            throwIfCanceled(signal);
+
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(original.getPath(), options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                throw new IOException("Failed to decode " + document.getId());
+            }
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, bucket);
+            final Bitmap bitmap = BitmapFactory.decodeFile(original.getPath(), options);
+            if (bitmap == null) {
+                throw new IOException("Failed to decode " + document.getId());
+            }
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final Bitmap.CompressFormat format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+                bitmap.compress(format, JPEG_QUALITY, out);
+                return out.toByteArray();
+            } finally {
+                bitmap.recycle();
+            }
+        } finally {
+            original.delete();
+        }
+    }
+
+    /**
+     * 写真なら縮小版のうちバケットに最も近いものを、それ以外なら元のファイルを開く。
+     */
+    private InputStream openOriginal(SkyDriveObject document, int bucket, CancellationSignal signal) throws IOException {
+        if (document instanceof SkyDrivePhoto) {
+            final SkyDrivePhoto.Image image = selectImage(((SkyDrivePhoto) document).getImages(), bucket);
+            if (image != null) {
+                return mSkyDriveClient.openSource(image.getSource(), signal);
+            }
+        }
+        return mSkyDriveClient.openStream(document.getId(), signal);
+    }
+
+    /**
+     * 長辺がバケット以上で最も小さいものを選ぶ。どれもバケットより小さければ最も大きいものを選ぶ。
+     */
+    static SkyDrivePhoto.Image selectImage(SkyDrivePhoto.Image[] images, int bucket) {
+        SkyDrivePhoto.Image smallestLarger = null;
+        SkyDrivePhoto.Image largest = null;
+        for (SkyDrivePhoto.Image each : images) {
+            final int length = Math.max(each.getWidth(), each.getHeight());
+            if (length >= bucket && (smallestLarger == null || length < longSide(smallestLarger))) {
+                smallestLarger = each;
+            }
+            if (largest == null || length > longSide(largest)) {
+                largest = each;
+            }
+        }
+        return smallestLarger != null ? smallestLarger : largest;
+    }
+
+    /**
+     * 縮小後の長辺がバケットを下回らない最大の2の累乗を返す。
+     */
+    static int calculateInSampleSize(int width, int height, int bucket) {
+        final int length = Math.max(width, height);
+        int inSampleSize = 1;
+        while (length / (inSampleSize * 2) >= bucket) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    static int toBucket(Point sizeHint) {
+        final int length = sizeHint == null ? 0 : Math.max(sizeHint.x, sizeHint.y);
+        for (int each : BUCKETS) {
+            if (length <= each) {
+                return each;
+            }
+        }
+        return BUCKETS[BUCKETS.length - 1];
+    }
+
+    private AssetFileDescriptor openBytes(byte[] thumbnail) throws IOException {
+        return new AssetFileDescriptor(mStreamPump.open(new ByteArrayInputStream(thumbnail)), 0, thumbnail.length);
+    }
+
+    private void putDiskCache(String key, byte[] thumbnail) {
+        try {
+            final FileCache.Editor editor = mDiskCache.edit(key);
+            if (editor == null) {
+                return;
+            }
+            OutputStream out = null;
+            boolean committed = false;
+            try {
+                out = editor.newOutputStream();
+                out.write(thumbnail);
+                out.close();
+                editor.commit();
+                committed = true;
+            } finally {
+                closeQuietly(out);
+                if (!committed) {
+                    editor.abort();
+                }
+            }
+        } catch (IOException ignore) {
+            // メモリにはあるので、次に使われた時にまた作ればいい
+        }
+    }
+
+    private static int longSide(SkyDrivePhoto.Image image) {
+        return Math.max(image.getWidth(), image.getHeight());
+    }
+
+    private static void drain(InputStream in, File dest, CancellationSignal signal) throws IOException {
+        final OutputStream out = new FileOutputStream(dest);
+        try {
+            final byte[] buf = new byte[BUFFER_SIZE];
+            for (int c; (c = in.read(buf)) > -1;) {
+                throwIfCanceled(signal);
+                out.write(buf, 0, c);
+            }
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void throwIfCanceled(CancellationSignal signal) {
+        if (signal != null) {
+            signal.throwIfCanceled();
+        }
+    }
+
+    private static void closeQuietly(Closeable res) {
+        if (res == null) {
+            return;
+        }
+        try {
+            res.close();
+        } catch (IOException e) {
+        }
+    }
+}
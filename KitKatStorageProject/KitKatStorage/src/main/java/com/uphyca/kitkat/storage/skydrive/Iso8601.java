@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2013 uPhyca Inc. http://www.uphyca.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.uphyca.kitkat.storage.skydrive;
+
+/**
+ * Live APIの日時(ISO 8601)とエポックミリ秒を相互に変換する。
+ * SimpleDateFormatと違って状態を持たないので、どのスレッドからでも使える。
+ *
+ * @author masui@uphyca.com
+ */
+public final class Iso8601 {
+
+    private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    private Iso8601() {
+        throw new AssertionError();
+    }
+
+    /**
+     * yyyy-MM-ddTHH:mm:ss[.SSS][Z|+hh:mm|+hhmm] 形式の文字列をエポックミリ秒にする。
+     * タイムゾーンが無い場合はUTCとみなす。
+     *
+     * @param value 日時
+     * @param defaultValue 解析できなかった場合の値
+     * @return エポックミリ秒
+     */
+    public static long parse(CharSequence value, long defaultValue) {
+        if (value == null || value.length() < 19) {
+            return defaultValue;
+        }
+        final int year = digits(value, 0, 4);
+        final int month = digits(value, 5, 2);
+        final int day = digits(value, 8, 2);
+        final int hour = digits(value, 11, 2);
+        final int minute = digits(value, 14, 2);
+        final int second = digits(value, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return defaultValue;
+        }
+        if (value.charAt(4) != '-' || value.charAt(7) != '-' || (value.charAt(10) != 'T' && value.charAt(10) != ' ') || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return defaultValue;
+        }
+
+        final int length = value.length();
+        int pos = 19;
+        int millis = 0;
+        if (pos < length && value.charAt(pos) == '.') {
+            // ミリ秒より細かい桁は捨てる
+            int scale = 100;
+            for (++pos; pos < length && isDigit(value.charAt(pos)); ++pos) {
+                millis += (value.charAt(pos) - '0') * scale;
+                scale /= 10;
+            }
+        }
+
+        int offsetMinutes = 0;
+        if (pos < length) {
+            final char sign = value.charAt(pos);
+            if (sign == 'Z' && pos + 1 == length) {
+                pos = length;
+            } else if (sign == '+' || sign == '-') {
+                final int offsetHour = digits(value, pos + 1, 2);
+                final int colon = pos + 3 < length && value.charAt(pos + 3) == ':' ? 1 : 0;
+                final int offsetMinute = digits(value, pos + 3 + colon, 2);
+                if (offsetHour < 0 || offsetMinute < 0 || pos + 5 + colon != length) {
+                    return defaultValue;
+                }
+                offsetMinutes = offsetHour * 60 + offsetMinute;
+                if (sign == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+            } else {
+                return defaultValue;
+            }
+        }
+
+        final long days = daysFromCivil(year, month, day);
+        return days * MILLIS_PER_DAY + ((hour * 60L + minute - offsetMinutes) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * エポックミリ秒を yyyy-MM-ddTHH:mm:ss+0000 形式(UTC)にする。
+     *
+     * @param millis エポックミリ秒
+     * @return 日時
+     */
+    public static String format(long millis) {
+        final long days = floorDiv(millis, MILLIS_PER_DAY);
+        final int secondsOfDay = (int) ((millis - days * MILLIS_PER_DAY) / 1000);
+
+        // days from civil の逆変換
+        final long z = days + 719468;
+        final long era = floorDiv(z, 146097);
+        final int doe = (int) (z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        final StringBuilder sb = new StringBuilder(24);
+        pad(sb, year, 4).append('-');
+        pad(sb, month, 2).append('-');
+        pad(sb, day, 2).append('T');
+        pad(sb, secondsOfDay / 3600, 2).append(':');
+        pad(sb, secondsOfDay / 60 % 60, 2).append(':');
+        pad(sb, secondsOfDay % 60, 2).append("+0000");
+        return sb.toString();
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yoe = y - era * 400;
+        final int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int digits(CharSequence value, int start, int count) {
+        if (start + count > value.length()) {
+            return -1;
+        }
+        int result = 0;
+        for (int i = start; i < start + count; ++i) {
+            final char c = value.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            result = result * 10 + (c - '0');
+        }
+        return result;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static long floorDiv(long x, long y) {
+        final long q = x / y;
+        return (x % y != 0 && ((x ^ y) < 0)) ? q - 1 : q;
+    }
+
+    private static StringBuilder pad(StringBuilder sb, long value, int width) {
+        final String s = Long.toString(value);
+        for (int i = s.length(); i < width; ++i) {
+            sb.append('0');
+        }
+        return sb.append(s);
+    }
+}
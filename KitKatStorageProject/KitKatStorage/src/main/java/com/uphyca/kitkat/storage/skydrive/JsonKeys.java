@@ -31,6 +31,23 @@ public final class JsonKeys {
     public static final String TYPE = "type";
     public static final String PARENT_ID = "parent_id";
     public static final String SOURCE = "source";
+    public static final String ACCESS = "access";
+    public static final String BITRATE = "bitrate";
+    public static final String COMMENTS_COUNT = "comments_count";
+    public static final String COMMENTS_ENABLED = "comments_enabled";
+    public static final String COUNT = "count";
+    public static final String DURATION = "duration";
+    public static final String HEIGHT = "height";
+    public static final String IMAGES = "images";
+    public static final String IS_EMBEDDABLE = "is_embeddable";
+    public static final String PICTURE = "picture";
+    public static final String SHARED_WITH = "shared_with";
+    public static final String SIZE = "size";
+    public static final String TAGS_COUNT = "tags_count";
+    public static final String TAGS_ENABLED = "tags_enabled";
+    public static final String UPLOAD_LOCATION = "upload_location";
+    public static final String WHEN_TAKEN = "when_taken";
+    public static final String WIDTH = "width";
 
     private JsonKeys() {
         throw new AssertionError();
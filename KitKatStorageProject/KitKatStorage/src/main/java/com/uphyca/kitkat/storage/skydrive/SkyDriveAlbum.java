@@ -4,14 +4,22 @@
 
 package com.uphyca.kitkat.storage.skydrive;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SkyDriveAlbum extends SkyDriveObject {
 
     public static final String TYPE = "album";
 
+    private final int mCount;
+
     public SkyDriveAlbum(JSONObject object) {
-        super(object);
+        this(Builder.fromJson(object));
+    }
+
+    SkyDriveAlbum(Builder builder) {
+        super(builder);
+        mCount = builder.mCount;
     }
 
     @Override
@@ -19,7 +27,22 @@ public class SkyDriveAlbum extends SkyDriveObject {
         visitor.visit(this);
     }
 
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public boolean isFolder() {
+        return true;
+    }
+
     public int getCount() {
-        return mObject.optInt("count");
+        return mCount;
+    }
+
+    @Override
+    protected void writeJson(JSONObject json) throws JSONException {
+        json.put(JsonKeys.COUNT, mCount);
     }
 }
@@ -4,14 +4,30 @@
 
 package com.uphyca.kitkat.storage.skydrive;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SkyDriveFile extends SkyDriveObject {
 
     public static final String TYPE = "file";
 
+    private final long mSize;
+    private final int mCommentsCount;
+    private final boolean mCommentsEnabled;
+    private final String mSource;
+    private final boolean mEmbeddable;
+
     public SkyDriveFile(JSONObject file) {
-        super(file);
+        this(Builder.fromJson(file));
+    }
+
+    SkyDriveFile(Builder builder) {
+        super(builder);
+        mSize = builder.mSize;
+        mCommentsCount = builder.mCommentsCount;
+        mCommentsEnabled = builder.mCommentsEnabled;
+        mSource = builder.mSource;
+        mEmbeddable = builder.mEmbeddable;
     }
 
     @Override
@@ -19,23 +35,38 @@ public class SkyDriveFile extends SkyDriveObject {
         visitor.visit(this);
     }
 
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
     public long getSize() {
-        return mObject.optLong("size");
+        return mSize;
     }
 
     public int getCommentsCount() {
-        return mObject.optInt("comments_count");
+        return mCommentsCount;
     }
 
     public boolean getCommentsEnabled() {
-        return mObject.optBoolean("comments_enabled");
+        return mCommentsEnabled;
     }
 
     public String getSource() {
-        return mObject.optString("source");
+        return mSource;
     }
 
     public boolean getIsEmbeddable() {
-        return mObject.optBoolean("is_embeddable");
+        return mEmbeddable;
+    }
+
+    @Override
+    protected void writeJson(JSONObject json) throws JSONException {
+        json.put(JsonKeys.SIZE, mSize);
+        json.put(JsonKeys.COMMENTS_COUNT, mCommentsCount);
+        json.put(JsonKeys.COMMENTS_ENABLED, mCommentsEnabled);
+        putString(json, JsonKeys.SOURCE, mSource);
+        json.put(JsonKeys.IS_EMBEDDABLE, mEmbeddable);
     }
 }
@@ -4,13 +4,22 @@
 
 package com.uphyca.kitkat.storage.skydrive;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SkyDriveFolder extends SkyDriveObject {
+
     public static final String TYPE = "folder";
 
+    private final int mCount;
+
     public SkyDriveFolder(JSONObject object) {
-        super(object);
+        this(Builder.fromJson(object));
+    }
+
+    SkyDriveFolder(Builder builder) {
+        super(builder);
+        mCount = builder.mCount;
     }
 
     @Override
@@ -18,7 +27,22 @@ public class SkyDriveFolder extends SkyDriveObject {
         visitor.visit(this);
     }
 
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public boolean isFolder() {
+        return true;
+    }
+
     public int getCount() {
-        return mObject.optInt("count");
+        return mCount;
+    }
+
+    @Override
+    protected void writeJson(JSONObject json) throws JSONException {
+        json.put(JsonKeys.COUNT, mCount);
     }
 }
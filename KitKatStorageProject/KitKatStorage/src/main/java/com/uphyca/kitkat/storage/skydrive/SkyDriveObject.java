@@ -4,8 +4,15 @@
 
 package com.uphyca.kitkat.storage.skydrive;
 
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
+/**
+ * SkyDrive&trade;のドキュメント。
+ * JSONObjectを持ち続けずに、デコードした時点で値を取り出して保持する不変オブジェクト。
+ * 日時はエポックミリ秒、サイズはlongで持つ。JSONが必要な場合は {@link #toJson()} で都度組み立てる。
+ */
 public abstract class SkyDriveObject {
     public interface Visitor {
         public void visit(SkyDriveAlbum album);
@@ -17,120 +24,451 @@ public abstract class SkyDriveObject {
     }
 
     public static class From {
-        private final JSONObject mFrom;
+        private final String mName;
+        private final String mId;
 
         public From(JSONObject from) {
-            assert from != null;
-            mFrom = from;
+            this(from.optString(JsonKeys.NAME), from.optString(JsonKeys.ID));
+        }
+
+        public From(String name, String id) {
+            mName = name;
+            mId = id;
         }
 
         public String getName() {
-            return mFrom.optString("name");
+            return mName;
         }
 
         public String getId() {
-            return mFrom.optString("id");
+            return mId;
         }
 
         public JSONObject toJson() {
-            return mFrom;
+            final JSONObject json = new JSONObject();
+            try {
+                putString(json, JsonKeys.NAME, mName);
+                putString(json, JsonKeys.ID, mId);
+            } catch (JSONException e) {
+                throw new AssertionError(e);
+            }
+            return json;
         }
     }
 
     public static class SharedWith {
-        private final JSONObject mSharedWidth;
+        private final String mAccess;
 
         public SharedWith(JSONObject sharedWith) {
-            assert sharedWith != null;
-            mSharedWidth = sharedWith;
+            this(sharedWith.optString(JsonKeys.ACCESS));
+        }
+
+        public SharedWith(String access) {
+            mAccess = access;
         }
 
         public String getAccess() {
-            return mSharedWidth.optString("access");
+            return mAccess;
         }
 
         public JSONObject toJson() {
-            return mSharedWidth;
+            final JSONObject json = new JSONObject();
+            try {
+                putString(json, JsonKeys.ACCESS, mAccess);
+            } catch (JSONException e) {
+                throw new AssertionError(e);
+            }
+            return json;
         }
     }
 
+    /**
+     * SkyDriveObjectを組み立てる。
+     * 型に関係の無い値は無視されるので、JSONのキーをそのまま順に設定すればよい。
+     */
+    public static final class Builder {
+        String mId = "";
+        String mName = "";
+        String mParentId = "";
+        String mDescription;
+        String mType = "";
+        String mLink = "";
+        long mCreatedAt;
+        long mUpdatedAt;
+        String mUploadLocation = "";
+        From mFrom;
+        SharedWith mSharedWith;
+        long mSize;
+        int mCount;
+        int mCommentsCount;
+        boolean mCommentsEnabled;
+        String mSource = "";
+        boolean mEmbeddable;
+        int mTagsCount;
+        boolean mTagsEnabled;
+        String mPicture = "";
+        SkyDrivePhoto.Image[] mImages = SkyDrivePhoto.NO_IMAGES;
+        long mWhenTaken;
+        int mHeight;
+        int mWidth;
+        int mDuration;
+        int mBitrate;
+
+        /**
+         * JSONObjectの値を取り出したBuilderを返す。
+         *
+         * @param object Live APIのレスポンス
+         * @return Builder
+         */
+        public static Builder fromJson(JSONObject object) {
+            final Builder builder = new Builder();
+            builder.setId(object.optString(JsonKeys.ID))
+                   .setName(object.optString(JsonKeys.NAME))
+                   .setParentId(object.optString(JsonKeys.PARENT_ID))
+                   .setDescription(object.isNull(JsonKeys.DESCRIPTION) ? null : object.optString(JsonKeys.DESCRIPTION))
+                   .setType(object.optString(JsonKeys.TYPE))
+                   .setLink(object.optString(JsonKeys.LINK))
+                   .setCreatedTime(object.optString(JsonKeys.CREATED_TIME))
+                   .setUpdatedTime(object.optString(JsonKeys.UPDATED_TIME))
+                   .setUploadLocation(object.optString(JsonKeys.UPLOAD_LOCATION))
+                   .setSize(object.optLong(JsonKeys.SIZE))
+                   .setCount(object.optInt(JsonKeys.COUNT))
+                   .setCommentsCount(object.optInt(JsonKeys.COMMENTS_COUNT))
+                   .setCommentsEnabled(object.optBoolean(JsonKeys.COMMENTS_ENABLED))
+                   .setSource(object.optString(JsonKeys.SOURCE))
+                   .setEmbeddable(object.optBoolean(JsonKeys.IS_EMBEDDABLE))
+                   .setTagsCount(object.optInt(JsonKeys.TAGS_COUNT))
+                   .setTagsEnabled(object.optBoolean(JsonKeys.TAGS_ENABLED))
+                   .setPicture(object.optString(JsonKeys.PICTURE))
+                   .setWhenTaken(object.isNull(JsonKeys.WHEN_TAKEN) ? null : object.optString(JsonKeys.WHEN_TAKEN))
+                   .setHeight(object.optInt(JsonKeys.HEIGHT))
+                   .setWidth(object.optInt(JsonKeys.WIDTH))
+                   .setDuration(object.optInt(JsonKeys.DURATION))
+                   .setBitrate(object.optInt(JsonKeys.BITRATE));
+            final JSONObject from = object.optJSONObject(JsonKeys.FROM);
+            if (from != null) {
+                builder.setFrom(new From(from));
+            }
+            final JSONObject sharedWith = object.optJSONObject(JsonKeys.SHARED_WITH);
+            if (sharedWith != null) {
+                builder.setSharedWith(new SharedWith(sharedWith));
+            }
+            final JSONArray images = object.optJSONArray(JsonKeys.IMAGES);
+            if (images != null) {
+                final SkyDrivePhoto.Image[] imgs = new SkyDrivePhoto.Image[images.length()];
+                for (int i = 0; i < imgs.length; i++) {
+                    imgs[i] = new SkyDrivePhoto.Image(images.optJSONObject(i));
+                }
+                builder.setImages(imgs);
+            }
+            return builder;
+        }
 
-    public static SkyDriveObject create(JSONObject skyDriveObject) {
-        String type = skyDriveObject.optString("type");
+        public Builder setId(String id) {
+            mId = id;
+            return this;
+        }
+
+        public Builder setName(String name) {
+            mName = name;
+            return this;
+        }
+
+        public Builder setParentId(String parentId) {
+            mParentId = parentId;
+            return this;
+        }
+
+        public Builder setDescription(String description) {
+            mDescription = description;
+            return this;
+        }
+
+        public Builder setType(String type) {
+            mType = type;
+            return this;
+        }
+
+        public Builder setLink(String link) {
+            mLink = link;
+            return this;
+        }
+
+        public Builder setCreatedTime(String createdTime) {
+            mCreatedAt = Iso8601.parse(createdTime, 0L);
+            return this;
+        }
+
+        public Builder setUpdatedTime(String updatedTime) {
+            mUpdatedAt = Iso8601.parse(updatedTime, 0L);
+            return this;
+        }
+
+        public Builder setUploadLocation(String uploadLocation) {
+            mUploadLocation = uploadLocation;
+            return this;
+        }
+
+        public Builder setFrom(From from) {
+            mFrom = from;
+            return this;
+        }
+
+        public Builder setSharedWith(SharedWith sharedWith) {
+            mSharedWith = sharedWith;
+            return this;
+        }
 
-        if (type.equals(SkyDriveFolder.TYPE)) {
-            return new SkyDriveFolder(skyDriveObject);
-        } else if (type.equals(SkyDriveFile.TYPE)) {
-            return new SkyDriveFile(skyDriveObject);
-        } else if (type.equals(SkyDriveAlbum.TYPE)) {
-            return new SkyDriveAlbum(skyDriveObject);
-        } else if (type.equals(SkyDrivePhoto.TYPE)) {
-            return new SkyDrivePhoto(skyDriveObject);
-        } else if (type.equals(SkyDriveVideo.TYPE)) {
-            return new SkyDriveVideo(skyDriveObject);
-        } else if (type.equals(SkyDriveAudio.TYPE)) {
-            return new SkyDriveAudio(skyDriveObject);
+        public Builder setSize(long size) {
+            mSize = size;
+            return this;
         }
 
-        throw new AssertionError("Unknown SkyDriveObject type");
+        public Builder setCount(int count) {
+            mCount = count;
+            return this;
+        }
+
+        public Builder setCommentsCount(int commentsCount) {
+            mCommentsCount = commentsCount;
+            return this;
+        }
+
+        public Builder setCommentsEnabled(boolean commentsEnabled) {
+            mCommentsEnabled = commentsEnabled;
+            return this;
+        }
+
+        public Builder setSource(String source) {
+            mSource = source;
+            return this;
+        }
+
+        public Builder setEmbeddable(boolean embeddable) {
+            mEmbeddable = embeddable;
+            return this;
+        }
+
+        public Builder setTagsCount(int tagsCount) {
+            mTagsCount = tagsCount;
+            return this;
+        }
+
+        public Builder setTagsEnabled(boolean tagsEnabled) {
+            mTagsEnabled = tagsEnabled;
+            return this;
+        }
+
+        public Builder setPicture(String picture) {
+            mPicture = picture;
+            return this;
+        }
+
+        public Builder setImages(SkyDrivePhoto.Image[] images) {
+            mImages = images;
+            return this;
+        }
+
+        public Builder setWhenTaken(String whenTaken) {
+            mWhenTaken = Iso8601.parse(whenTaken, 0L);
+            return this;
+        }
+
+        public Builder setHeight(int height) {
+            mHeight = height;
+            return this;
+        }
+
+        public Builder setWidth(int width) {
+            mWidth = width;
+            return this;
+        }
+
+        public Builder setDuration(int duration) {
+            mDuration = duration;
+            return this;
+        }
+
+        public Builder setBitrate(int bitrate) {
+            mBitrate = bitrate;
+            return this;
+        }
+
+        public SkyDriveObject build() {
+            switch (mType) {
+                case SkyDriveFolder.TYPE:
+                    return new SkyDriveFolder(this);
+                case SkyDriveFile.TYPE:
+                    return new SkyDriveFile(this);
+                case SkyDriveAlbum.TYPE:
+                    return new SkyDriveAlbum(this);
+                case SkyDrivePhoto.TYPE:
+                    return new SkyDrivePhoto(this);
+                case SkyDriveVideo.TYPE:
+                    return new SkyDriveVideo(this);
+                case SkyDriveAudio.TYPE:
+                    return new SkyDriveAudio(this);
+                default:
+                    throw new AssertionError("Unknown SkyDriveObject type");
+            }
+        }
     }
 
-    protected final JSONObject mObject;
+    public static SkyDriveObject create(JSONObject skyDriveObject) {
+        return Builder.fromJson(skyDriveObject)
+                      .build();
+    }
 
-    public SkyDriveObject(JSONObject object) {
-        assert object != null;
-        mObject = object;
+    private final String mId;
+    private final String mName;
+    private final String mParentId;
+    private final String mDescription;
+    private final String mLink;
+    private final long mCreatedAt;
+    private final long mUpdatedAt;
+    private final String mUploadLocation;
+    private final From mFrom;
+    private final SharedWith mSharedWith;
+
+    SkyDriveObject(Builder builder) {
+        mId = builder.mId;
+        mName = builder.mName;
+        mParentId = builder.mParentId;
+        mDescription = builder.mDescription;
+        mLink = builder.mLink;
+        mCreatedAt = builder.mCreatedAt;
+        mUpdatedAt = builder.mUpdatedAt;
+        mUploadLocation = builder.mUploadLocation;
+        mFrom = builder.mFrom;
+        mSharedWith = builder.mSharedWith;
     }
 
     public abstract void accept(Visitor visitor);
 
     public String getId() {
-        return mObject.optString("id");
+        return mId;
     }
 
+    /**
+     * @return 作成者。レスポンスに含まれていなければnull
+     */
     public From getFrom() {
-        return new From(mObject.optJSONObject("from"));
+        return mFrom;
     }
 
     public String getName() {
-        return mObject.optString("name");
+        return mName;
     }
 
     public String getParentId() {
-        return mObject.optString("parent_id");
+        return mParentId;
     }
 
     public String getDescription() {
-        return mObject.isNull("description") ? null : mObject.optString("description");
+        return mDescription;
     }
 
-    public String getType() {
-        return mObject.optString("type");
+    public abstract String getType();
+
+    /**
+     * @return フォルダかアルバムならtrue
+     */
+    public boolean isFolder() {
+        return false;
+    }
+
+    /**
+     * @return サイズ(バイト)。サイズを持たない型は0
+     */
+    public long getSize() {
+        return 0L;
     }
 
     public String getLink() {
-        return mObject.optString("link");
+        return mLink;
     }
 
     public String getCreatedTime() {
-        return mObject.optString("created_time");
+        return formatTime(mCreatedAt);
+    }
+
+    /**
+     * @return 作成日時(エポックミリ秒)。不明な場合は0
+     */
+    public long getCreatedAt() {
+        return mCreatedAt;
     }
 
     public String getUpdatedTime() {
-        return mObject.optString("updated_time");
+        return formatTime(mUpdatedAt);
+    }
+
+    /**
+     * @return 更新日時(エポックミリ秒)。不明な場合は0
+     */
+    public long getUpdatedAt() {
+        return mUpdatedAt;
     }
 
     public String getUploadLocation() {
-        return mObject.optString("upload_location");
+        return mUploadLocation;
     }
 
+    /**
+     * @return 共有の設定。レスポンスに含まれていなければnull
+     */
     public SharedWith getSharedWith() {
-        return new SharedWith(mObject.optJSONObject("shared_with"));
+        return mSharedWith;
     }
 
+    /**
+     * 保持している値からJSONObjectを組み立てる。呼ぶたびに新しいインスタンスを返す。
+     *
+     * @return Live APIのレスポンスと同じ形のJSON
+     */
     public JSONObject toJson() {
-        return mObject;
+        final JSONObject json = new JSONObject();
+        try {
+            putString(json, JsonKeys.ID, mId);
+            putString(json, JsonKeys.NAME, mName);
+            putString(json, JsonKeys.PARENT_ID, mParentId);
+            putString(json, JsonKeys.DESCRIPTION, mDescription);
+            json.put(JsonKeys.TYPE, getType());
+            putString(json, JsonKeys.LINK, mLink);
+            putTime(json, JsonKeys.CREATED_TIME, mCreatedAt);
+            putTime(json, JsonKeys.UPDATED_TIME, mUpdatedAt);
+            putString(json, JsonKeys.UPLOAD_LOCATION, mUploadLocation);
+            if (mFrom != null) {
+                json.put(JsonKeys.FROM, mFrom.toJson());
+            }
+            if (mSharedWith != null) {
+                json.put(JsonKeys.SHARED_WITH, mSharedWith.toJson());
+            }
+            writeJson(json);
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+        return json;
     }
 
+    /**
+     * サブクラス固有の値をJSONに書く。
+     */
+    protected abstract void writeJson(JSONObject json) throws JSONException;
+
+    static void putString(JSONObject json, String name, String value) throws JSONException {
+        if (value != null && value.length() > 0) {
+            json.put(name, value);
+        }
+    }
 
+    static void putTime(JSONObject json, String name, long value) throws JSONException {
+        if (value != 0L) {
+            json.put(name, Iso8601.format(value));
+        }
+    }
+
+    static String formatTime(long value) {
+        return value != 0L ? Iso8601.format(value) : "";
+    }
 }
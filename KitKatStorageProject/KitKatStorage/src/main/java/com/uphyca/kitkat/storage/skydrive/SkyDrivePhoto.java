@@ -5,43 +5,91 @@
 package com.uphyca.kitkat.storage.skydrive;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SkyDrivePhoto extends SkyDriveObject {
 
     public static final String TYPE = "photo";
 
+    static final Image[] NO_IMAGES = new Image[0];
+
     public static class Image {
-        private final JSONObject mImage;
+        private final int mHeight;
+        private final int mWidth;
+        private final String mSource;
+        private final String mType;
 
         public Image(JSONObject image) {
-            assert image != null;
-            mImage = image;
+            this(image.optInt(JsonKeys.HEIGHT), image.optInt(JsonKeys.WIDTH), image.optString(JsonKeys.SOURCE), image.optString(JsonKeys.TYPE));
+        }
+
+        public Image(int height, int width, String source, String type) {
+            mHeight = height;
+            mWidth = width;
+            mSource = source;
+            mType = type;
         }
 
         public int getHeight() {
-            return mImage.optInt("height");
+            return mHeight;
         }
 
         public int getWidth() {
-            return mImage.optInt("width");
+            return mWidth;
         }
 
         public String getSource() {
-            return mImage.optString("source");
+            return mSource;
         }
 
         public String getType() {
-            return mImage.optString("type");
+            return mType;
         }
 
         public JSONObject toJson() {
-            return mImage;
+            final JSONObject json = new JSONObject();
+            try {
+                json.put(JsonKeys.HEIGHT, mHeight);
+                json.put(JsonKeys.WIDTH, mWidth);
+                putString(json, JsonKeys.SOURCE, mSource);
+                putString(json, JsonKeys.TYPE, mType);
+            } catch (JSONException e) {
+                throw new AssertionError(e);
+            }
+            return json;
         }
     }
 
+    private final long mSize;
+    private final int mCommentsCount;
+    private final boolean mCommentsEnabled;
+    private final String mSource;
+    private final int mTagsCount;
+    private final boolean mTagsEnabled;
+    private final String mPicture;
+    private final Image[] mImages;
+    private final long mWhenTaken;
+    private final int mHeight;
+    private final int mWidth;
+
     public SkyDrivePhoto(JSONObject photo) {
-        super(photo);
+        this(Builder.fromJson(photo));
+    }
+
+    SkyDrivePhoto(Builder builder) {
+        super(builder);
+        mSize = builder.mSize;
+        mCommentsCount = builder.mCommentsCount;
+        mCommentsEnabled = builder.mCommentsEnabled;
+        mSource = builder.mSource;
+        mTagsCount = builder.mTagsCount;
+        mTagsEnabled = builder.mTagsEnabled;
+        mPicture = builder.mPicture;
+        mImages = builder.mImages;
+        mWhenTaken = builder.mWhenTaken;
+        mHeight = builder.mHeight;
+        mWidth = builder.mWidth;
     }
 
     @Override
@@ -49,53 +97,84 @@ public class SkyDrivePhoto extends SkyDriveObject {
         visitor.visit(this);
     }
 
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
     public long getSize() {
-        return mObject.optLong("size");
+        return mSize;
     }
 
     public int getCommentsCount() {
-        return mObject.optInt("comments_count");
+        return mCommentsCount;
     }
 
     public boolean getCommentsEnabled() {
-        return mObject.optBoolean("comments_enabled");
+        return mCommentsEnabled;
     }
 
     public String getSource() {
-        return mObject.optString("source");
+        return mSource;
     }
 
     public int getTagsCount() {
-        return mObject.optInt("tags_count");
+        return mTagsCount;
     }
 
     public boolean getTagsEnabled() {
-        return mObject.optBoolean("tags_enabled");
+        return mTagsEnabled;
     }
 
     public String getPicture() {
-        return mObject.optString("picture");
+        return mPicture;
     }
 
+    /**
+     * @return 画像の配列。共有しているので変更しないこと
+     */
     public Image[] getImages() {
-        JSONArray images = mObject.optJSONArray("images");
-        Image[] imgs = new Image[images.length()];
-        for (int i = 0; i < images.length(); i++) {
-            imgs[i] = new Image(images.optJSONObject(i));
-        }
-
-        return imgs;
+        return mImages;
     }
 
     public String getWhenTaken() {
-        return mObject.isNull("when_taken") ? null : mObject.optString("when_taken");
+        return mWhenTaken != 0L ? Iso8601.format(mWhenTaken) : null;
+    }
+
+    /**
+     * @return 撮影日時(エポックミリ秒)。不明な場合は0
+     */
+    public long getWhenTakenAt() {
+        return mWhenTaken;
     }
 
     public int getHeight() {
-        return mObject.optInt("height");
+        return mHeight;
     }
 
     public int getWidth() {
-        return mObject.optInt("width");
+        return mWidth;
+    }
+
+    @Override
+    protected void writeJson(JSONObject json) throws JSONException {
+        json.put(JsonKeys.SIZE, mSize);
+        json.put(JsonKeys.COMMENTS_COUNT, mCommentsCount);
+        json.put(JsonKeys.COMMENTS_ENABLED, mCommentsEnabled);
+        putString(json, JsonKeys.SOURCE, mSource);
+        json.put(JsonKeys.TAGS_COUNT, mTagsCount);
+        json.put(JsonKeys.TAGS_ENABLED, mTagsEnabled);
+        putString(json, JsonKeys.PICTURE, mPicture);
+        if (mImages.length > 0) {
+            final JSONArray images = new JSONArray();
+            for (Image each : mImages) {
+                images.put(each.toJson());
+            }
+            json.put(JsonKeys.IMAGES, images);
+        }
+        putTime(json, JsonKeys.WHEN_TAKEN, mWhenTaken);
+        json.put(JsonKeys.HEIGHT, mHeight);
+        json.put(JsonKeys.WIDTH, mWidth);
     }
 }
@@ -4,14 +4,42 @@
 
 package com.uphyca.kitkat.storage.skydrive;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 public class SkyDriveVideo extends SkyDriveObject {
 
     public static final String TYPE = "video";
 
+    private final long mSize;
+    private final int mCommentsCount;
+    private final boolean mCommentsEnabled;
+    private final String mSource;
+    private final int mTagsCount;
+    private final boolean mTagsEnabled;
+    private final String mPicture;
+    private final int mHeight;
+    private final int mWidth;
+    private final int mDuration;
+    private final int mBitrate;
+
     public SkyDriveVideo(JSONObject object) {
-        super(object);
+        this(Builder.fromJson(object));
+    }
+
+    SkyDriveVideo(Builder builder) {
+        super(builder);
+        mSize = builder.mSize;
+        mCommentsCount = builder.mCommentsCount;
+        mCommentsEnabled = builder.mCommentsEnabled;
+        mSource = builder.mSource;
+        mTagsCount = builder.mTagsCount;
+        mTagsEnabled = builder.mTagsEnabled;
+        mPicture = builder.mPicture;
+        mHeight = builder.mHeight;
+        mWidth = builder.mWidth;
+        mDuration = builder.mDuration;
+        mBitrate = builder.mBitrate;
     }
 
     @Override
@@ -19,47 +47,68 @@ public class SkyDriveVideo extends SkyDriveObject {
         visitor.visit(this);
     }
 
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
     public long getSize() {
-        return mObject.optLong("size");
+        return mSize;
     }
 
     public int getCommentsCount() {
-        return mObject.optInt("comments_count");
+        return mCommentsCount;
     }
 
     public boolean getCommentsEnabled() {
-        return mObject.optBoolean("comments_enabled");
+        return mCommentsEnabled;
     }
 
     public String getSource() {
-        return mObject.optString("source");
+        return mSource;
     }
 
     public int getTagsCount() {
-        return mObject.optInt("tags_count");
+        return mTagsCount;
     }
 
     public boolean getTagsEnabled() {
-        return mObject.optBoolean("tags_enabled");
+        return mTagsEnabled;
     }
 
     public String getPicture() {
-        return mObject.optString("picture");
+        return mPicture;
     }
 
     public int getHeight() {
-        return mObject.optInt("height");
+        return mHeight;
     }
 
     public int getWidth() {
-        return mObject.optInt("width");
+        return mWidth;
     }
 
     public int getDuration() {
-        return mObject.optInt("duration");
+        return mDuration;
     }
 
     public int getBitrate() {
-        return mObject.optInt("bitrate");
+        return mBitrate;
+    }
+
+    @Override
+    protected void writeJson(JSONObject json) throws JSONException {
+        json.put(JsonKeys.SIZE, mSize);
+        json.put(JsonKeys.COMMENTS_COUNT, mCommentsCount);
+        json.put(JsonKeys.COMMENTS_ENABLED, mCommentsEnabled);
+        putString(json, JsonKeys.SOURCE, mSource);
+        json.put(JsonKeys.TAGS_COUNT, mTagsCount);
+        json.put(JsonKeys.TAGS_ENABLED, mTagsEnabled);
+        putString(json, JsonKeys.PICTURE, mPicture);
+        json.put(JsonKeys.HEIGHT, mHeight);
+        json.put(JsonKeys.WIDTH, mWidth);
+        json.put(JsonKeys.DURATION, mDuration);
+        json.put(JsonKeys.BITRATE, mBitrate);
     }
 }
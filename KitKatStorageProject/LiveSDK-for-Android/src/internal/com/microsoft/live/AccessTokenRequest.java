@@ -9,7 +9,6 @@ package com.microsoft.live;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.message.BasicNameValuePair;
 
 import android.text.TextUtils;
@@ -43,12 +42,12 @@ class AccessTokenRequest extends TokenRequest {
     /**
      * Constructs a new AccessTokenRequest, and initializes its member variables
      *
-     * @param client the HttpClient to make HTTP requests on
+     * @param client the HttpTransport to make HTTP requests on
      * @param clientId the client_id of the calling application
      * @param redirectUri the redirect_uri to be called back
      * @param code the authorization code received from the AuthorizationRequest
      */
-    public AccessTokenRequest(HttpClient client,
+    public AccessTokenRequest(HttpTransport client,
                               String clientId,
                               String redirectUri,
                               String code) {
@@ -0,0 +1,37 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * ApacheHttpTransport is an HttpTransport that sends requests with an Apache HttpClient.
+ */
+class ApacheHttpTransport implements HttpTransport {
+
+    private final HttpClient client;
+
+    public ApacheHttpTransport(HttpClient client) {
+        assert client != null;
+
+        this.client = client;
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        return this.client.execute(request);
+    }
+
+    /** @return the HttpClient requests are sent with */
+    public HttpClient getHttpClient() {
+        return this.client;
+    }
+}
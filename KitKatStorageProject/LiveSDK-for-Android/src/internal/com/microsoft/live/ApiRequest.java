@@ -14,7 +14,6 @@ import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.AUTH;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.message.BasicHeader;
@@ -115,7 +114,7 @@ abstract class ApiRequest<ResponseType> {
         return new BasicHeader(AUTH.WWW_AUTH_RESP, value);
     }
 
-    private final HttpClient client;
+    private final HttpTransport client;
     private final List<Observer> observers;
     private final String path;
     private final ResponseHandler<ResponseType> responseHandler;
@@ -127,7 +126,7 @@ abstract class ApiRequest<ResponseType> {
     protected final Uri pathUri;
 
     public ApiRequest(LiveConnectSession session,
-                      HttpClient client,
+                      HttpTransport client,
                       ResponseHandler<ResponseType> responseHandler,
                       String path) {
         this(session, client, responseHandler, path, ResponseCodes.SUPPRESS, Redirects.SUPPRESS);
@@ -142,7 +141,7 @@ abstract class ApiRequest<ResponseType> {
      * @param path of the request. it can be relative or absolute.
      */
     public ApiRequest(LiveConnectSession session,
-                      HttpClient client,
+                      HttpTransport client,
                       ResponseHandler<ResponseType> responseHandler,
                       String path,
                       ResponseCodes responseCodes,
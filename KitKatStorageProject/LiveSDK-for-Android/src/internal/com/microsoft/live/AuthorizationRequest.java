@@ -14,7 +14,6 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
-import org.apache.http.client.HttpClient;
 
 import android.app.Activity;
 import android.app.Dialog;
@@ -275,14 +274,14 @@ class AuthorizationRequest implements ObservableOAuthRequest, OAuthRequestObserv
     }
 
     private final Activity activity;
-    private final HttpClient client;
+    private final HttpTransport client;
     private final String clientId;
     private final DefaultObservableOAuthRequest observable;
     private final String redirectUri;
     private final String scope;
 
     public AuthorizationRequest(Activity activity,
-                                HttpClient client,
+                                HttpTransport client,
                                 String clientId,
                                 String redirectUri,
                                 String scope) {
@@ -21,6 +21,7 @@ enum Config {
     private Uri oAuthDesktopUri;
     private Uri oAuthLogoutUri;
     private Uri oAuthTokenUri;
+    private Uri uploadSessionUri;
 
     Config() {
         // initialize default values for constants
@@ -30,6 +31,7 @@ enum Config {
         oAuthDesktopUri = Uri.parse("https://login.live.com/oauth20_desktop.srf");
         oAuthLogoutUri = Uri.parse("https://login.live.com/oauth20_logout.srf");
         oAuthTokenUri = Uri.parse("https://login.live.com/oauth20_token.srf");
+        uploadSessionUri = Uri.parse("https://api.onedrive.com/v1.0");
     }
 
     public Uri getApiUri() {
@@ -56,6 +58,10 @@ enum Config {
         return oAuthTokenUri;
     }
 
+    public Uri getUploadSessionUri() {
+        return uploadSessionUri;
+    }
+
     public void setApiUri(Uri apiUri) {
         assert apiUri != null;
         this.apiUri = apiUri;
@@ -86,4 +92,9 @@ enum Config {
         assert oAuthTokenUri != null;
         this.oAuthTokenUri = oAuthTokenUri;
     }
+
+    public void setUploadSessionUri(Uri uploadSessionUri) {
+        assert uploadSessionUri != null;
+        this.uploadSessionUri = uploadSessionUri;
+    }
 }
@@ -7,7 +7,6 @@
 package com.microsoft.live;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.json.JSONObject;
 
@@ -27,7 +26,7 @@ class CopyRequest extends EntityEnclosingApiRequest<JSONObject> {
      * @param entity body of the request
      */
     public CopyRequest(LiveConnectSession session,
-                       HttpClient client,
+                       HttpTransport client,
                        String path,
                        HttpEntity entity) {
         super(session, client, JsonResponseHandler.INSTANCE, path, entity);
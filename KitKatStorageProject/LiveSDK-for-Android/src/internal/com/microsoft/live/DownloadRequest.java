@@ -8,21 +8,74 @@ package com.microsoft.live;
 
 import java.io.InputStream;
 
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 
+/**
+ * DownloadRequest downloads a resource, or a range of it with an HTTP Range header.
+ *
+ * The stream always starts at the requested offset. If the server ignores the Range header
+ * and sends the whole resource, the bytes before the offset are skipped on the client.
+ */
 class DownloadRequest extends ApiRequest<InputStream> {
 
     public static final String METHOD = HttpGet.METHOD_NAME;
 
-    public DownloadRequest(LiveConnectSession session, HttpClient client, String path) {
+    /** Passed as the length to download everything from the offset to the end. */
+    public static final long TO_END = -1L;
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String IDENTITY = "identity";
+    private static final String RANGE = "Range";
+
+    private final long offset;
+    private final long length;
+    private boolean partialContent;
+
+    public DownloadRequest(LiveConnectSession session, HttpTransport client, String path) {
+        this(session, client, path, 0L, TO_END);
+    }
+
+    /**
+     * @param offset of the first byte to download
+     * @param length number of bytes to download, or {@link #TO_END}
+     */
+    public DownloadRequest(LiveConnectSession session,
+                           HttpTransport client,
+                           String path,
+                           long offset,
+                           long length) {
         super(session,
               client,
               InputStreamResponseHandler.INSTANCE,
               path,
               ResponseCodes.UNSUPPRESSED,
               Redirects.UNSUPPRESSED);
+
+        assert offset >= 0L;
+        assert length >= 0L || length == TO_END;
+
+        this.offset = offset;
+        this.length = length;
+
+        this.addObserver(new Observer() {
+            @Override
+            public void onComplete(HttpResponse response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                DownloadRequest.this.partialContent = statusCode == HttpStatus.SC_PARTIAL_CONTENT;
+            }
+        });
+    }
+
+    @Override
+    public InputStream execute() throws LiveOperationException {
+        InputStream stream = super.execute();
+        if (this.isRanged() && !this.partialContent) {
+            return new RangeInputStream(stream, this.offset, this.length);
+        }
+        return stream;
     }
 
     @Override
@@ -32,6 +85,17 @@ class DownloadRequest extends ApiRequest<InputStream> {
 
     @Override
     protected HttpUriRequest createHttpRequest() throws LiveOperationException {
-        return new HttpGet(this.requestUri.toString());
+        HttpGet request = new HttpGet(this.requestUri.toString());
+        if (this.isRanged()) {
+            String last = this.length == TO_END ? "" : String.valueOf(this.offset + this.length - 1);
+            request.addHeader(RANGE, "bytes=" + this.offset + "-" + last);
+            // A server may apply the range to the encoded bytes, so ask for the bytes as stored.
+            request.addHeader(ACCEPT_ENCODING, IDENTITY);
+        }
+        return request;
+    }
+
+    private boolean isRanged() {
+        return this.offset > 0L || this.length != TO_END;
     }
 }
@@ -13,7 +13,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.entity.HttpEntityWrapper;
 
@@ -76,7 +75,7 @@ abstract class EntityEnclosingApiRequest<ResponseType> extends ApiRequest<Respon
                                         List<UploadProgressListener> listeners) {
             super(outstream);
 
-            assert totalBytes >= 0L;
+            // totalBytes is negative when the length is not known in advance.
             assert listeners != null;
 
             this.listeners = listeners;
@@ -109,7 +108,7 @@ abstract class EntityEnclosingApiRequest<ResponseType> extends ApiRequest<Respon
         }
 
         private void notifyListeners() {
-            assert this.numBytesWritten <= this.totalBytes;
+            assert this.totalBytes < 0L || this.numBytesWritten <= this.totalBytes;
 
             for (final UploadProgressListener listener : this.listeners) {
                 listener.onProgress(this.totalBytes, this.numBytesWritten);
@@ -122,7 +121,7 @@ abstract class EntityEnclosingApiRequest<ResponseType> extends ApiRequest<Respon
     private final List<UploadProgressListener> listeners;
 
     public EntityEnclosingApiRequest(LiveConnectSession session,
-                                     HttpClient client,
+                                     HttpTransport client,
                                      ResponseHandler<ResponseType> responseHandler,
                                      String path,
                                      HttpEntity entity) {
@@ -144,7 +143,7 @@ abstract class EntityEnclosingApiRequest<ResponseType> extends ApiRequest<Respon
      * @param entity of the request
      */
     public EntityEnclosingApiRequest(LiveConnectSession session,
-                                     HttpClient client,
+                                     HttpTransport client,
                                      ResponseHandler<ResponseType> responseHandler,
                                      String path,
                                      HttpEntity entity,
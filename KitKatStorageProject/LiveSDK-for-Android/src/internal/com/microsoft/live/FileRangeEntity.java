@@ -0,0 +1,126 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * FileRangeEntity sends a range of a file. It is repeatable, and reads the range directly
+ * from the file instead of loading it into memory.
+ *
+ * The range is read from an already open channel with positional reads, so every chunk of an
+ * upload comes from the same file even if the path is replaced while the upload is running.
+ * The channel is owned by the caller, and is not closed by this entity.
+ */
+class FileRangeEntity extends AbstractHttpEntity {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Reads a range of a channel without moving the position of the channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+
+        ChannelInputStream(FileChannel channel, long offset, long length) {
+            this.channel = channel;
+            this.position = offset;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = this.read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (this.remaining <= 0L) {
+                return -1;
+            }
+            int toRead = (int) Math.min(count, this.remaining);
+            int read = this.channel.read(ByteBuffer.wrap(buffer, offset, toRead), this.position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of file at " + this.position);
+            }
+            this.position += read;
+            this.remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0L, Math.min(n, this.remaining));
+            this.position += skipped;
+            this.remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, this.remaining);
+        }
+    }
+
+    private final FileChannel channel;
+    private final long offset;
+    private final long length;
+
+    public FileRangeEntity(FileChannel channel, long offset, long length) {
+        assert channel != null;
+        assert offset >= 0L;
+        assert length >= 0L;
+
+        this.channel = channel;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new ChannelInputStream(this.channel, this.offset, this.length);
+    }
+
+    @Override
+    public long getContentLength() {
+        return this.length;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream outstream) throws IOException {
+        InputStream in = this.getContent();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            outstream.write(buffer, 0, read);
+        }
+    }
+}
@@ -6,7 +6,6 @@
 
 package com.microsoft.live;
 
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.json.JSONObject;
@@ -25,7 +24,7 @@ class GetRequest extends ApiRequest<JSONObject> {
      * @param client to perform Http requests on
      * @param path of the request
      */
-    public GetRequest(LiveConnectSession session, HttpClient client, String path) {
+    public GetRequest(LiveConnectSession session, HttpTransport client, String path) {
         super(session, client, JsonResponseHandler.INSTANCE, path);
     }
 
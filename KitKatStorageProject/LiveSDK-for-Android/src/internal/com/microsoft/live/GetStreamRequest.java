@@ -0,0 +1,50 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.InputStream;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * GetStreamRequest is a subclass of an ApiRequest and performs a GET request,
+ * but hands the JSON response body back as an unparsed InputStream.
+ * Response codes are suppressed, so errors arrive as a JSON body with an "error" key
+ * just like with GetRequest.
+ */
+class GetStreamRequest extends ApiRequest<InputStream> {
+
+    public static final String METHOD = HttpGet.METHOD_NAME;
+
+    /**
+     * Constructs a new GetStreamRequest and initializes its member variables.
+     *
+     * @param session with the access_token
+     * @param client to perform Http requests on
+     * @param path of the request
+     */
+    public GetStreamRequest(LiveConnectSession session, HttpTransport client, String path) {
+        super(session, client, InputStreamResponseHandler.INSTANCE, path);
+    }
+
+    /** @return the string "GET" */
+    @Override
+    public String getMethod() {
+        return METHOD;
+    }
+
+    /**
+     * Factory method override that constructs a HttpGet request
+     *
+     * @return a HttpGet request
+     */
+    @Override
+    protected HttpUriRequest createHttpRequest() {
+        return new HttpGet(this.requestUri.toString());
+    }
+}
@@ -0,0 +1,70 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+
+/**
+ * GzipDecompressingEntity wraps a gzip encoded entity, and hands out the decompressed content.
+ * The decompressed length is not known up front, so the content length is -1.
+ */
+class GzipDecompressingEntity extends HttpEntityWrapper {
+
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    public GzipDecompressingEntity(HttpEntity entity) {
+        super(entity);
+    }
+
+    /**
+     * @return the gzip encoded entity, as it was received
+     */
+    public HttpEntity getWrappedEntity() {
+        return this.wrappedEntity;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        return new GZIPInputStream(this.wrappedEntity.getContent(), BUFFER_SIZE);
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        InputStream in = this.getContent();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.IOException;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.DefaultConnectionReuseStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * HttpClientFactory creates the HttpTransport shared by the LiveConnectClients from
+ * {@link HttpClientSettings}. The Apache transport is a pooled, thread safe client with
+ * per-route limits, a keep-alive strategy, idle connection reaping and transparent gzip.
+ */
+final class HttpClientFactory {
+
+    private static final String ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String GZIP = "gzip";
+    private static final String KEEP_ALIVE = "Keep-Alive";
+    private static final String RANGE = "Range";
+    private static final String TIMEOUT = "timeout";
+
+    /**
+     * Asks for gzip encoded responses, unless the request already says what it accepts, or asks
+     * for a range, which a server may apply to the encoded bytes.
+     */
+    private static final HttpRequestInterceptor GZIP_REQUEST_INTERCEPTOR =
+            new HttpRequestInterceptor() {
+        @Override
+        public void process(HttpRequest request, HttpContext context)
+                throws HttpException, IOException {
+            if (!request.containsHeader(ACCEPT_ENCODING) && !request.containsHeader(RANGE)) {
+                request.addHeader(ACCEPT_ENCODING, GZIP);
+            }
+        }
+    };
+
+    /**
+     * Decompresses gzip encoded responses. The Content-Length header is removed, because it
+     * describes the compressed body, and observers use it to report download progress.
+     */
+    private static final HttpResponseInterceptor GZIP_RESPONSE_INTERCEPTOR =
+            new HttpResponseInterceptor() {
+        @Override
+        public void process(HttpResponse response, HttpContext context)
+                throws HttpException, IOException {
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return;
+            }
+
+            Header encoding = entity.getContentEncoding();
+            if (encoding == null) {
+                return;
+            }
+
+            for (HeaderElement element : encoding.getElements()) {
+                if (GZIP.equalsIgnoreCase(element.getName())) {
+                    response.setEntity(new GzipDecompressingEntity(entity));
+                    response.removeHeaders(HTTP.CONTENT_ENCODING);
+                    response.removeHeaders(HTTP.CONTENT_LEN);
+                    return;
+                }
+            }
+        }
+    };
+
+    /**
+     * Decides whether to keep the connection on the entity as it was received. The gzip response
+     * interceptor runs first, and its entity has no length, which would close every connection
+     * that carried a gzip response.
+     */
+    private static final ConnectionReuseStrategy REUSE_STRATEGY =
+            new DefaultConnectionReuseStrategy() {
+        @Override
+        public boolean keepAlive(HttpResponse response, HttpContext context) {
+            HttpEntity entity = response.getEntity();
+            if (!(entity instanceof GzipDecompressingEntity)) {
+                return super.keepAlive(response, context);
+            }
+
+            response.setEntity(((GzipDecompressingEntity) entity).getWrappedEntity());
+            try {
+                return super.keepAlive(response, context);
+            } finally {
+                response.setEntity(entity);
+            }
+        }
+    };
+
+    /**
+     * Creates a new HttpTransport.
+     *
+     * @param settings to configure the transport with
+     * @return a new HttpTransport that is safe to share between threads
+     */
+    public static HttpTransport newHttpTransport(HttpClientSettings settings) {
+        assert settings != null;
+
+        HttpTransport apache = new ApacheHttpTransport(newHttpClient(settings));
+        switch (settings.getTransport()) {
+            case APACHE:
+                return apache;
+            case URL_CONNECTION:
+                // Apache is still needed for the methods HttpURLConnection does not know.
+                return new UrlConnectionHttpTransport(settings.getConnectTimeoutMillis(),
+                                                      settings.getSocketTimeoutMillis(),
+                                                      apache);
+            default:
+                throw new AssertionError(settings.getTransport());
+        }
+    }
+
+    /**
+     * Creates a new HttpClient.
+     *
+     * @param settings to configure the client with
+     * @return a new HttpClient that is safe to share between threads
+     */
+    public static HttpClient newHttpClient(HttpClientSettings settings) {
+        assert settings != null;
+
+        HttpParams params = new BasicHttpParams();
+        HttpConnectionParams.setConnectionTimeout(params, settings.getConnectTimeoutMillis());
+        HttpConnectionParams.setSoTimeout(params, settings.getSocketTimeoutMillis());
+        HttpConnectionParams.setTcpNoDelay(params, true);
+
+        ConnManagerParams.setMaxTotalConnections(params, settings.getMaxTotalConnections());
+        ConnManagerParams.setMaxConnectionsPerRoute(
+                params,
+                new ConnPerRouteBean(settings.getMaxConnectionsPerRoute()));
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http",
+                                           PlainSocketFactory.getSocketFactory(),
+                                           80));
+        schemeRegistry.register(new Scheme("https",
+                                           SSLSocketFactory.getSocketFactory(),
+                                           443));
+
+        // Create an HttpClient with the ThreadSafeClientConnManager.
+        // This connection manager must be used if more than one thread will
+        // be using the HttpClient, which is a common scenario.
+        ClientConnectionManager cm = new ThreadSafeClientConnManager(params, schemeRegistry);
+        DefaultHttpClient client = new DefaultHttpClient(cm, params);
+        client.setKeepAliveStrategy(newKeepAliveStrategy(settings.getKeepAliveMillis()));
+
+        if (settings.isGzipEnabled()) {
+            client.addRequestInterceptor(GZIP_REQUEST_INTERCEPTOR);
+            client.addResponseInterceptor(GZIP_RESPONSE_INTERCEPTOR);
+            client.setReuseStrategy(REUSE_STRATEGY);
+        }
+
+        new IdleConnectionReaper(cm, settings.getIdleConnectionTimeoutMillis()).start();
+
+        return client;
+    }
+
+    /**
+     * Keeps connections alive for as long as the server's Keep-Alive header says, or for the
+     * given default. The Apache default keeps them forever, and relies on stale checks.
+     */
+    private static ConnectionKeepAliveStrategy newKeepAliveStrategy(final long keepAliveMillis) {
+        return new ConnectionKeepAliveStrategy() {
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+                HeaderElementIterator it =
+                        new BasicHeaderElementIterator(response.headerIterator(KEEP_ALIVE));
+                while (it.hasNext()) {
+                    HeaderElement element = it.nextElement();
+                    String value = element.getValue();
+                    if (value != null && TIMEOUT.equalsIgnoreCase(element.getName())) {
+                        try {
+                            return Long.parseLong(value) * 1000;
+                        } catch (NumberFormatException ignore) {
+                        }
+                    }
+                }
+
+                return keepAliveMillis;
+            }
+        };
+    }
+
+    private HttpClientFactory() { throw new AssertionError(); }
+}
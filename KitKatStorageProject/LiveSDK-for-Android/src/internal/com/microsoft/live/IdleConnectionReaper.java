@@ -0,0 +1,54 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * IdleConnectionReaper periodically closes pooled connections that expired or sat idle
+ * for too long, so that a later request does not pick up a connection the server already
+ * dropped. It stops once the connection manager is garbage collected.
+ */
+class IdleConnectionReaper extends Thread {
+
+    private final WeakReference<ClientConnectionManager> connectionManager;
+    private final long idleTimeoutMillis;
+
+    public IdleConnectionReaper(ClientConnectionManager connectionManager, long idleTimeoutMillis) {
+        super("LiveConnectClient-IdleConnectionReaper");
+        assert connectionManager != null;
+        assert idleTimeoutMillis > 0;
+
+        this.connectionManager = new WeakReference<ClientConnectionManager>(connectionManager);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+        // Check twice per timeout, so that no connection is idle much longer than requested.
+        long interval = Math.max(this.idleTimeoutMillis / 2, 1000L);
+        while (true) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            ClientConnectionManager cm = this.connectionManager.get();
+            if (cm == null) {
+                return;
+            }
+
+            cm.closeExpiredConnections();
+            cm.closeIdleConnections(this.idleTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -7,7 +7,6 @@
 package com.microsoft.live;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.json.JSONObject;
@@ -28,7 +27,7 @@ class PutRequest extends EntityEnclosingApiRequest<JSONObject> {
      * @param entity body of the request
      */
     public PutRequest(LiveConnectSession session,
-                      HttpClient client,
+                      HttpTransport client,
                       String path,
                       HttpEntity entity) {
         super(session, client, JsonResponseHandler.INSTANCE, path, entity);
@@ -0,0 +1,98 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * RangeInputStream reads a range of the wrapped stream. It is used when the server sends the
+ * whole resource in response to a Range request.
+ */
+class RangeInputStream extends FilterInputStream {
+
+    private long toSkip;
+    private long remaining;
+
+    /**
+     * @param in stream of the whole resource
+     * @param offset of the first byte to read
+     * @param length number of bytes to read, or {@link DownloadRequest#TO_END}
+     */
+    public RangeInputStream(InputStream in, long offset, long length) {
+        super(in);
+
+        assert offset >= 0L;
+
+        this.toSkip = offset;
+        this.remaining = length == DownloadRequest.TO_END ? Long.MAX_VALUE : length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        int count = this.read(buffer, 0, 1);
+        return count == -1 ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        if (!this.skipToOffset() || this.remaining == 0L) {
+            return -1;
+        }
+        int read = this.in.read(buffer, offset, (int) Math.min(count, this.remaining));
+        if (read > 0) {
+            this.remaining -= read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        if (!this.skipToOffset()) {
+            return 0L;
+        }
+        long skipped = this.in.skip(Math.min(count, this.remaining));
+        this.remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (this.toSkip > 0L) {
+            return 0;
+        }
+        return (int) Math.min(this.in.available(), this.remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /** @return false if the stream ended before the offset */
+    private boolean skipToOffset() throws IOException {
+        // skip() may skip less than asked for, or nothing at all, without being at the end.
+        byte[] buffer = null;
+        while (this.toSkip > 0L) {
+            long skipped = this.in.skip(this.toSkip);
+            if (skipped <= 0L) {
+                if (buffer == null) {
+                    buffer = new byte[8192];
+                }
+                int read = this.in.read(buffer, 0, (int) Math.min(buffer.length, this.toSkip));
+                if (read == -1) {
+                    return false;
+                }
+                skipped = read;
+            }
+            this.toSkip -= skipped;
+        }
+        return true;
+    }
+}
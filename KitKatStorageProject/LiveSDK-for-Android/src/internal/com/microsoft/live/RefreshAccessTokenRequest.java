@@ -9,7 +9,6 @@ package com.microsoft.live;
 import java.util.List;
 
 import org.apache.http.NameValuePair;
-import org.apache.http.client.HttpClient;
 import org.apache.http.message.BasicNameValuePair;
 
 import android.text.TextUtils;
@@ -31,7 +30,7 @@ class RefreshAccessTokenRequest extends TokenRequest {
 
     private final String scope;
 
-    public RefreshAccessTokenRequest(HttpClient client,
+    public RefreshAccessTokenRequest(HttpTransport client,
                                      String clientId,
                                      String refreshToken,
                                      String scope) {
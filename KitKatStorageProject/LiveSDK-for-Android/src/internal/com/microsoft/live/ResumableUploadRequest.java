@@ -0,0 +1,326 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+/**
+ * ResumableUploadRequest uploads a file in chunks through an upload session, so that an
+ * interrupted upload continues from the last acknowledged byte instead of starting over.
+ *
+ * The Live Connect REST API only accepts the whole file in a single PUT, so the session is
+ * opened on the upload session endpoint, which accepts the same access token. If the service
+ * refuses to open a session, the file is sent in a single PUT as {@link UploadRequest} does.
+ *
+ * The file is opened once, and every chunk is read from that descriptor, so replacing the file
+ * while the upload is running does not mix old and new content within one session.
+ */
+class ResumableUploadRequest extends ApiRequest<JSONObject> {
+
+    public static final String METHOD = HttpPut.METHOD_NAME;
+
+    /** Chunks must be a multiple of 320 KiB. */
+    public static final int CHUNK_SIZE = 10 * 320 * 1024;
+
+    private static final String CONTENT_RANGE = "Content-Range";
+    private static final String ERROR_KEY = "error";
+    private static final String ID_KEY = "id";
+    private static final String NEXT_EXPECTED_RANGES_KEY = "nextExpectedRanges";
+    private static final String UPLOAD_URL_KEY = "uploadUrl";
+
+    private static final String HOME_FOLDER = "me/skydrive";
+    private static final String ROOT_ITEM = "root";
+
+    /** Stops a server that keeps rejecting the range from looping forever. */
+    private static final int MAX_RANGE_MISMATCHES = 3;
+
+    /**
+     * Builds the uri that opens an upload session for the given file in the given folder.
+     *
+     * Live Connect ids have the form folder.{cid}.{item id}, and the upload session endpoint
+     * addresses the folder by the item id alone. The colons must not be escaped, so the uri
+     * is not passed through {@link UriBuilder}.
+     */
+    private static String createSessionUri(String folderPath, String filename) {
+        String itemId;
+        if (HOME_FOLDER.equalsIgnoreCase(folderPath)) {
+            itemId = ROOT_ITEM;
+        } else {
+            itemId = folderPath.substring(folderPath.lastIndexOf('.') + 1);
+        }
+        return Config.INSTANCE.getUploadSessionUri().buildUpon()
+                                                    .appendEncodedPath("drive/items")
+                                                    .appendEncodedPath(Uri.encode(itemId) + ":")
+                                                    .appendEncodedPath(Uri.encode(filename) + ":")
+                                                    .appendEncodedPath("upload.createSession")
+                                                    .build()
+                                                    .toString();
+    }
+
+    /**
+     * Converts the id of an uploaded item back to the Live Connect form file.{cid}.{item id}.
+     */
+    private static String toLiveFileId(String itemId) {
+        int separator = itemId.indexOf('!');
+        if (separator == -1) {
+            return itemId;
+        }
+        String cid = itemId.substring(0, separator).toLowerCase();
+        return "file." + cid + "." + itemId;
+    }
+
+    private final HttpTransport client;
+    private final String folderPath;
+    private final String sessionUri;
+    private final String filename;
+    private final File file;
+    private final OverwriteOption overwrite;
+    private final LiveUploadSession uploadSession;
+    private final LiveUploadSessionListener listener;
+    private final LiveConnectSession session;
+
+    public ResumableUploadRequest(LiveConnectSession session,
+                                  HttpTransport client,
+                                  String path,
+                                  String filename,
+                                  File file,
+                                  OverwriteOption overwrite,
+                                  LiveUploadSession uploadSession,
+                                  LiveUploadSessionListener listener) {
+        super(session, client, JsonResponseHandler.INSTANCE, path);
+
+        assert file != null;
+        assert overwrite != null;
+        assert uploadSession != null;
+        assert listener != null;
+
+        this.client = client;
+        this.folderPath = path;
+        this.sessionUri = createSessionUri(path, filename);
+        this.filename = filename;
+        this.file = file;
+        this.overwrite = overwrite;
+        this.uploadSession = uploadSession;
+        this.listener = listener;
+        this.session = session;
+    }
+
+    @Override
+    public String getMethod() {
+        return METHOD;
+    }
+
+    @Override
+    public JSONObject execute() throws LiveOperationException {
+        RandomAccessFile in;
+        try {
+            in = new RandomAccessFile(this.file, "r");
+        } catch (IOException e) {
+            throw new LiveOperationException(ErrorMessages.CLIENT_ERROR, e);
+        }
+        try {
+            return this.execute(in.getChannel());
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private JSONObject execute(FileChannel channel) throws LiveOperationException {
+        long totalBytes;
+        try {
+            totalBytes = channel.size();
+        } catch (IOException e) {
+            throw new LiveOperationException(ErrorMessages.CLIENT_ERROR, e);
+        }
+
+        if (this.uploadSession.getUploadUrl() != null) {
+            // Ask the server which bytes it already has, as the last acknowledgement may not
+            // have been persisted.
+            this.queryStatus();
+        }
+
+        if (this.uploadSession.getUploadUrl() == null) {
+            JSONObject response = super.execute();
+            String uploadUrl = response == null ? null : response.optString(UPLOAD_URL_KEY, null);
+            if (TextUtils.isEmpty(uploadUrl)) {
+                return this.uploadInOnePiece(channel, totalBytes);
+            }
+            this.updateSession(uploadUrl, 0L);
+        }
+
+        int rangeMismatches = 0;
+        while (true) {
+            long offset = this.uploadSession.getOffset();
+            long length = Math.min(CHUNK_SIZE, totalBytes - offset);
+            HttpPut request = new HttpPut(this.uploadSession.getUploadUrl());
+            request.addHeader(CONTENT_RANGE,
+                              "bytes " + offset + "-" + (offset + length - 1) + "/" + totalBytes);
+            request.setEntity(new FileRangeEntity(channel, offset, length));
+
+            HttpResponse response = this.send(request);
+            int statusCode = response.getStatusLine().getStatusCode();
+            JSONObject result = this.readJson(response);
+
+            switch (statusCode) {
+            case HttpStatus.SC_OK:
+            case HttpStatus.SC_CREATED:
+                this.updateSession(null, 0L);
+                return this.toLiveResult(result);
+            case HttpStatus.SC_ACCEPTED:
+                this.updateSession(this.uploadSession.getUploadUrl(), parseNextOffset(result));
+                break;
+            case HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE:
+                if (++rangeMismatches > MAX_RANGE_MISMATCHES) {
+                    throw new LiveOperationException(ErrorMessages.SERVER_ERROR);
+                }
+                this.queryStatus();
+                if (this.uploadSession.getUploadUrl() == null) {
+                    throw new LiveOperationException(ErrorMessages.SERVER_ERROR);
+                }
+                break;
+            case HttpStatus.SC_NOT_FOUND:
+                // The session expired. The next attempt starts a new one.
+                this.updateSession(null, 0L);
+                return result;
+            default:
+                // Keep the session, so that the next attempt continues where this one stopped.
+                if (result != null && result.has(ERROR_KEY)) {
+                    return result;
+                }
+                throw new LiveOperationException(ErrorMessages.SERVER_ERROR);
+            }
+        }
+    }
+
+    @Override
+    protected HttpUriRequest createHttpRequest() throws LiveOperationException {
+        JSONObject item = new JSONObject();
+        JSONObject body = new JSONObject();
+        try {
+            item.put("@name.conflictBehavior", this.conflictBehavior());
+            body.put("item", item);
+        } catch (JSONException e) {
+            throw new LiveOperationException(ErrorMessages.CLIENT_ERROR, e);
+        }
+
+        HttpPost request = new HttpPost(this.sessionUri);
+        try {
+            request.setEntity(new JsonEntity(body));
+        } catch (UnsupportedEncodingException e) {
+            throw new LiveOperationException(ErrorMessages.CLIENT_ERROR, e);
+        }
+        return request;
+    }
+
+    private String conflictBehavior() {
+        switch (this.overwrite) {
+        case Overwrite:
+            return "replace";
+        case Rename:
+            return "rename";
+        default:
+            return "fail";
+        }
+    }
+
+    /**
+     * Updates the offset from the server, or forgets the session if the server no longer
+     * knows it.
+     */
+    private void queryStatus() throws LiveOperationException {
+        HttpResponse response = this.send(new HttpGet(this.uploadSession.getUploadUrl()));
+        JSONObject status = this.readJson(response);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_OK) {
+            this.updateSession(null, 0L);
+            return;
+        }
+        this.updateSession(this.uploadSession.getUploadUrl(), parseNextOffset(status));
+    }
+
+    private static long parseNextOffset(JSONObject status) throws LiveOperationException {
+        JSONArray ranges = status == null ? null : status.optJSONArray(NEXT_EXPECTED_RANGES_KEY);
+        if (ranges == null || ranges.length() == 0) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR);
+        }
+        // Ranges look like "start-end" or "start-". Chunks are sent in order, so the first
+        // missing byte is where to continue.
+        String range = ranges.optString(0);
+        try {
+            return Long.parseLong(range.substring(0, range.indexOf('-')));
+        } catch (RuntimeException e) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+        }
+    }
+
+    private JSONObject toLiveResult(JSONObject result) throws LiveOperationException {
+        if (result == null || !result.has(ID_KEY)) {
+            return result;
+        }
+        try {
+            result.put(ID_KEY, toLiveFileId(result.getString(ID_KEY)));
+        } catch (JSONException e) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+        }
+        return result;
+    }
+
+    private JSONObject uploadInOnePiece(FileChannel channel, long totalBytes)
+            throws LiveOperationException {
+        UploadRequest request = new UploadRequest(this.session,
+                                                  this.client,
+                                                  this.folderPath,
+                                                  new FileRangeEntity(channel, 0L, totalBytes),
+                                                  this.filename,
+                                                  this.overwrite);
+        return request.execute();
+    }
+
+    /**
+     * Sends a request to the upload URL. The URL carries its own authorization, so unlike
+     * the requests made through {@link ApiRequest#execute()} no access token is added.
+     */
+    private HttpResponse send(HttpUriRequest request) throws LiveOperationException {
+        try {
+            return this.client.execute(request);
+        } catch (IOException e) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+        }
+    }
+
+    private JSONObject readJson(HttpResponse response) throws LiveOperationException {
+        try {
+            return JsonResponseHandler.INSTANCE.handleResponse(response);
+        } catch (IOException e) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+        }
+    }
+
+    private void updateSession(String uploadUrl, long offset) {
+        this.uploadSession.update(uploadUrl, offset);
+        this.listener.onSessionUpdated(this.uploadSession);
+    }
+}
@@ -15,7 +15,6 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URLEncodedUtils;
@@ -37,16 +36,16 @@ abstract class TokenRequest {
     private static final String CONTENT_TYPE =
             URLEncodedUtils.CONTENT_TYPE + ";charset=" + HTTP.UTF_8;
 
-    protected final HttpClient client;
+    protected final HttpTransport client;
     protected final String clientId;
 
     /**
      * Constructs a new TokenRequest instance and initializes its parameters.
      *
-     * @param client the HttpClient to make HTTP requests on
+     * @param client the HttpTransport to make HTTP requests on
      * @param clientId the client_id of the calling application
      */
-    public TokenRequest(HttpClient client, String clientId) {
+    public TokenRequest(HttpTransport client, String clientId) {
         assert client != null;
         assert clientId != null;
         assert !TextUtils.isEmpty(clientId);
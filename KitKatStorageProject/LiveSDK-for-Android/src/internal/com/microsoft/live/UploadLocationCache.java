@@ -0,0 +1,74 @@
+package com.microsoft.live;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.os.SystemClock;
+
+/**
+ * UploadLocationCache remembers the upload_location returned for a folder or file path,
+ * so that consecutive uploads to the same path do not have to GET it every time.
+ * Entries expire after a fixed TTL and are bound to the session that fetched them.
+ * Singleton--use INSTANCE.
+ */
+enum UploadLocationCache {
+    INSTANCE;
+
+    /** Upload locations are stable, but do not trust them forever. */
+    private static final long TTL_MILLIS = 10 * 60 * 1000L;
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static class Entry {
+        final LiveConnectSession session;
+        final String uploadLocation;
+        final long expiresAt;
+
+        Entry(LiveConnectSession session, String uploadLocation, long expiresAt) {
+            this.session = session;
+            this.uploadLocation = uploadLocation;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Map<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return this.size() > MAX_ENTRIES;
+                }
+            };
+
+    /**
+     * @return the cached upload_location for the path, or null if there is none
+     *         or it was fetched by another session or it has expired.
+     */
+    public synchronized String get(LiveConnectSession session, String path) {
+        Entry entry = this.entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.session != session || entry.expiresAt <= SystemClock.elapsedRealtime()) {
+            this.entries.remove(path);
+            return null;
+        }
+
+        return entry.uploadLocation;
+    }
+
+    public synchronized void put(LiveConnectSession session, String path, String uploadLocation) {
+        long expiresAt = SystemClock.elapsedRealtime() + TTL_MILLIS;
+        this.entries.put(path, new Entry(session, uploadLocation, expiresAt));
+    }
+
+    public synchronized void remove(String path) {
+        this.entries.remove(path);
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+    }
+}
@@ -7,7 +7,8 @@
 package com.microsoft.live;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.client.HttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
@@ -26,6 +27,10 @@ class UploadRequest extends EntityEnclosingApiRequest<JSONObject> {
     private static final String UPLOAD_LOCATION_KEY = "upload_location";
 
     private HttpUriRequest currentRequest;
+
+    /** The status code of the last response, or 0 if no response was received. */
+    private int lastStatusCode;
+
     private final String filename;
 
     /**
@@ -36,8 +41,10 @@ class UploadRequest extends EntityEnclosingApiRequest<JSONObject> {
 
     private final OverwriteOption overwrite;
 
+    private final LiveConnectSession session;
+
     public UploadRequest(LiveConnectSession session,
-                         HttpClient client,
+                         HttpTransport client,
                          String path,
                          HttpEntity entity,
                          String filename,
@@ -54,9 +61,17 @@ class UploadRequest extends EntityEnclosingApiRequest<JSONObject> {
 
         this.filename = filename;
         this.overwrite = overwrite;
+        this.session = session;
 
         String lowerCasePath = this.pathUri.getPath().toLowerCase();
         this.isFileUpload = lowerCasePath.indexOf(FILE_PATH) != -1;
+
+        this.addObserver(new Observer() {
+            @Override
+            public void onComplete(HttpResponse response) {
+                UploadRequest.this.lastStatusCode = response.getStatusLine().getStatusCode();
+            }
+        });
     }
 
     @Override
@@ -66,43 +81,81 @@ class UploadRequest extends EntityEnclosingApiRequest<JSONObject> {
 
     @Override
     public JSONObject execute() throws LiveOperationException {
-        UriBuilder uploadRequestUri;
+        if (!this.pathUri.isRelative()) {
+            return this.upload(this.requestUri);
+        }
 
         // if the path was relative, we have to retrieve the upload location, because if we don't,
         // we will proxy the upload request, which is a waste of resources.
-        if (this.pathUri.isRelative()) {
-            JSONObject response = this.getUploadLocation();
-
-            // We could of tried to get the upload location on an invalid path.
-            // If we did, just return that response.
-            // If the user passes in a path that does contain an upload location, then
-            // we need to throw an error.
-            if (response.has(ERROR_KEY)) {
+        // The upload location of a folder rarely changes, so try the cached one first.
+        String cacheKey = this.pathUri.getPath();
+        String cachedLocation = UploadLocationCache.INSTANCE.get(this.session, cacheKey);
+        if (cachedLocation != null) {
+            // Failures that say nothing about the location (e.g., a dropped connection,
+            // a name conflict or a server error) are returned as they are, without retrying.
+            JSONObject response = this.upload(this.createUploadRequestUri(cachedLocation));
+            if (response == null || !response.has(ERROR_KEY) || !this.isStaleLocation()) {
                 return response;
-            } else if (!response.has(UPLOAD_LOCATION_KEY)) {
-                throw new LiveOperationException(ErrorMessages.MISSING_UPLOAD_LOCATION);
             }
 
-            // once we have the file object, get the upload location
-            String uploadLocation;
-            try {
-                uploadLocation = response.getString(UPLOAD_LOCATION_KEY);
-            } catch (JSONException e) {
-                throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+            // The cached location is stale. Forget it, and retry with a fresh one
+            // if the entity can be sent twice.
+            UploadLocationCache.INSTANCE.remove(cacheKey);
+            if (!this.entity.isRepeatable()) {
+                return response;
             }
+        }
 
-            uploadRequestUri = UriBuilder.newInstance(Uri.parse(uploadLocation));
+        JSONObject response = this.getUploadLocation();
 
-            // The original path might have query parameters that were sent to the 
-            // the upload location request, and those same query parameters will need
-            // to be sent to the HttpPut upload request too. Also, the returned upload_location
-            // *could* have query parameters on it. We want to keep those intact and in front of the
-            // the client's query parameters.
-            uploadRequestUri.appendQueryString(this.pathUri.getQuery());
-        } else {
-            uploadRequestUri = this.requestUri;
+        // We could of tried to get the upload location on an invalid path.
+        // If we did, just return that response.
+        // If the user passes in a path that does contain an upload location, then
+        // we need to throw an error.
+        if (response.has(ERROR_KEY)) {
+            return response;
+        } else if (!response.has(UPLOAD_LOCATION_KEY)) {
+            throw new LiveOperationException(ErrorMessages.MISSING_UPLOAD_LOCATION);
         }
 
+        // once we have the file object, get the upload location
+        String uploadLocation;
+        try {
+            uploadLocation = response.getString(UPLOAD_LOCATION_KEY);
+        } catch (JSONException e) {
+            throw new LiveOperationException(ErrorMessages.SERVER_ERROR, e);
+        }
+
+        UploadLocationCache.INSTANCE.put(this.session, cacheKey, uploadLocation);
+
+        JSONObject uploadResponse = this.upload(this.createUploadRequestUri(uploadLocation));
+        if (uploadResponse != null && uploadResponse.has(ERROR_KEY) && this.isStaleLocation()) {
+            UploadLocationCache.INSTANCE.remove(cacheKey);
+        }
+        return uploadResponse;
+    }
+
+    /**
+     * @return true if the last response says the upload location no longer exists.
+     */
+    private boolean isStaleLocation() {
+        return this.lastStatusCode == HttpStatus.SC_NOT_FOUND ||
+               this.lastStatusCode == HttpStatus.SC_GONE;
+    }
+
+    private UriBuilder createUploadRequestUri(String uploadLocation) {
+        UriBuilder uploadRequestUri = UriBuilder.newInstance(Uri.parse(uploadLocation));
+
+        // The original path might have query parameters that were sent to the 
+        // the upload location request, and those same query parameters will need
+        // to be sent to the HttpPut upload request too. Also, the returned upload_location
+        // *could* have query parameters on it. We want to keep those intact and in front of the
+        // the client's query parameters.
+        uploadRequestUri.appendQueryString(this.pathUri.getQuery());
+        return uploadRequestUri;
+    }
+
+    private JSONObject upload(UriBuilder uploadRequestUri) throws LiveOperationException {
         if (!this.isFileUpload) {
             // if it is not a file upload it is a folder upload and we must
             // add the file name to the upload location
@@ -115,6 +168,7 @@ class UploadRequest extends EntityEnclosingApiRequest<JSONObject> {
         uploadRequest.setEntity(this.entity);
 
         this.currentRequest = uploadRequest;
+        this.lastStatusCode = 0;
 
         return super.execute();
     }
@@ -82,8 +82,9 @@ class UriBuilder {
      * @return a new Uri Builder based off the given Uri.
      */
     public static UriBuilder newInstance(Uri uri) {
+        // The host is written out as the authority, so take the authority to keep the port.
         return new UriBuilder().scheme(uri.getScheme())
-                               .host(uri.getHost())
+                               .host(uri.getEncodedAuthority())
                                .path(uri.getPath())
                                .query(uri.getQuery());
     }
@@ -187,7 +188,7 @@ class UriBuilder {
      */
     public Uri build() {
         return new Uri.Builder().scheme(this.scheme)
-                                .authority(this.host)
+                                .encodedAuthority(this.host)
                                 .path(this.path == null ? "" : this.path.toString())
                                 .encodedQuery(TextUtils.join("&", this.queryParameters))
                                 .build();
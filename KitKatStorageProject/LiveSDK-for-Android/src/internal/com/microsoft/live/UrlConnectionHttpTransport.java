@@ -0,0 +1,184 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.http.protocol.HTTP;
+
+/**
+ * UrlConnectionHttpTransport is an HttpTransport that sends requests with
+ * {@link HttpURLConnection}.
+ *
+ * Request bodies are streamed: in fixed length mode when the entity knows its length, and in
+ * chunked mode otherwise, so that they are never buffered in memory. Response bodies are handed
+ * out as the connection's own InputStream, without copying. Connection pooling, keep-alive and
+ * gzip are done by the platform's HttpURLConnection.
+ *
+ * HttpURLConnection only knows the standard HTTP methods. Requests with other methods, such as
+ * COPY and MOVE, are sent with the fallback transport.
+ */
+class UrlConnectionHttpTransport implements HttpTransport {
+
+    private static final Set<String> SUPPORTED_METHODS = new HashSet<String>(
+            Arrays.asList("GET", "POST", "HEAD", "OPTIONS", "PUT", "DELETE", "TRACE"));
+
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+    private final HttpTransport fallback;
+
+    /**
+     * @param connectTimeoutMillis timeout to establish a connection
+     * @param readTimeoutMillis timeout while waiting for data
+     * @param fallback to send requests with methods HttpURLConnection does not support
+     */
+    public UrlConnectionHttpTransport(int connectTimeoutMillis,
+                                      int readTimeoutMillis,
+                                      HttpTransport fallback) {
+        assert connectTimeoutMillis >= 0;
+        assert readTimeoutMillis >= 0;
+        assert fallback != null;
+
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public HttpResponse execute(HttpUriRequest request) throws IOException {
+        String method = request.getMethod();
+        if (!SUPPORTED_METHODS.contains(method)) {
+            return this.fallback.execute(request);
+        }
+
+        HttpURLConnection connection =
+                (HttpURLConnection) request.getURI().toURL().openConnection();
+        try {
+            connection.setConnectTimeout(this.connectTimeoutMillis);
+            connection.setReadTimeout(this.readTimeoutMillis);
+            connection.setRequestMethod(method);
+
+            for (Header header : request.getAllHeaders()) {
+                connection.addRequestProperty(header.getName(), header.getValue());
+            }
+
+            if (request instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+                if (entity != null) {
+                    writeEntity(connection, entity);
+                }
+            }
+
+            return readResponse(connection);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        } catch (RuntimeException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    private static void writeEntity(HttpURLConnection connection, HttpEntity entity)
+            throws IOException {
+        connection.setDoOutput(true);
+
+        long contentLength = entity.getContentLength();
+        if (contentLength >= 0 && contentLength <= Integer.MAX_VALUE) {
+            connection.setFixedLengthStreamingMode((int) contentLength);
+        } else {
+            connection.setChunkedStreamingMode(BUFFER_SIZE);
+        }
+
+        Header contentType = entity.getContentType();
+        if (contentType != null) {
+            connection.setRequestProperty(HTTP.CONTENT_TYPE, contentType.getValue());
+        }
+
+        OutputStream out = connection.getOutputStream();
+        try {
+            entity.writeTo(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static HttpResponse readResponse(HttpURLConnection connection) throws IOException {
+        int statusCode = connection.getResponseCode();
+        if (statusCode == -1) {
+            throw new IOException("Invalid HTTP response from " + connection.getURL());
+        }
+
+        HttpResponse response = new BasicHttpResponse(
+                new BasicStatusLine(HttpVersion.HTTP_1_1,
+                                    statusCode,
+                                    connection.getResponseMessage()));
+
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            // The null key holds the status line.
+            if (header.getKey() == null) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                response.addHeader(header.getKey(), value);
+            }
+        }
+
+        InputStream content;
+        if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+            content = connection.getErrorStream();
+        } else {
+            content = connection.getInputStream();
+        }
+
+        BasicHttpEntity entity = new BasicHttpEntity();
+        if (content == null) {
+            entity.setContent(new ByteArrayInputStream(new byte[0]));
+            entity.setContentLength(0);
+        } else {
+            entity.setContent(content);
+            // getContentLength() is an int, and loses the length of resources over 2 GB.
+            entity.setContentLength(parseContentLength(connection.getHeaderField(HTTP.CONTENT_LEN)));
+        }
+        entity.setContentType(response.getFirstHeader(HTTP.CONTENT_TYPE));
+        entity.setContentEncoding(response.getFirstHeader(HTTP.CONTENT_ENCODING));
+        response.setEntity(entity);
+
+        return response;
+    }
+
+    private static long parseContentLength(String value) {
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+/**
+ * HttpClientSettings configures the HTTP transport shared by the LiveConnectClients.
+ * Use the {@link Builder} to create one, and pass it to
+ * {@link LiveConnectClient#setHttpClientSettings(HttpClientSettings)}.
+ */
+public final class HttpClientSettings {
+
+    /** The HTTP stack requests are sent with. */
+    public enum Transport {
+        /** Apache HttpClient, with the connection pool configured by these settings. */
+        APACHE,
+
+        /**
+         * {@link java.net.HttpURLConnection}, which streams request bodies and pools
+         * connections by itself. Only the timeouts of these settings apply to it.
+         */
+        URL_CONNECTION
+    }
+
+    public static class Builder {
+        private Transport transport = Transport.APACHE;
+        private int connectTimeoutMillis = 30 * 1000;
+        private int socketTimeoutMillis = 30 * 1000;
+        private int maxTotalConnections = 100;
+        private int maxConnectionsPerRoute = 10;
+        private long keepAliveMillis = 30 * 1000L;
+        private long idleConnectionTimeoutMillis = 60 * 1000L;
+        private boolean gzipEnabled = true;
+
+        public HttpClientSettings build() {
+            return new HttpClientSettings(this);
+        }
+
+        /** The HTTP stack to send requests with. */
+        public Builder transport(Transport transport) {
+            assert transport != null;
+
+            this.transport = transport;
+            return this;
+        }
+
+        /** Timeout to establish a connection. */
+        public Builder connectTimeoutMillis(int connectTimeoutMillis) {
+            assert connectTimeoutMillis >= 0;
+
+            this.connectTimeoutMillis = connectTimeoutMillis;
+            return this;
+        }
+
+        /** Timeout while waiting for data on an established connection. */
+        public Builder socketTimeoutMillis(int socketTimeoutMillis) {
+            assert socketTimeoutMillis >= 0;
+
+            this.socketTimeoutMillis = socketTimeoutMillis;
+            return this;
+        }
+
+        /** Maximum number of pooled connections over all hosts. */
+        public Builder maxTotalConnections(int maxTotalConnections) {
+            assert maxTotalConnections > 0;
+
+            this.maxTotalConnections = maxTotalConnections;
+            return this;
+        }
+
+        /**
+         * Maximum number of pooled connections per host. The Apache default is 2, which makes
+         * parallel calls to the same API host queue behind each other.
+         */
+        public Builder maxConnectionsPerRoute(int maxConnectionsPerRoute) {
+            assert maxConnectionsPerRoute > 0;
+
+            this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+            return this;
+        }
+
+        /**
+         * How long a connection is kept alive when the server does not say so in a
+         * Keep-Alive header.
+         */
+        public Builder keepAliveMillis(long keepAliveMillis) {
+            assert keepAliveMillis >= 0;
+
+            this.keepAliveMillis = keepAliveMillis;
+            return this;
+        }
+
+        /** Pooled connections idle longer than this are closed in the background. */
+        public Builder idleConnectionTimeoutMillis(long idleConnectionTimeoutMillis) {
+            assert idleConnectionTimeoutMillis > 0;
+
+            this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+            return this;
+        }
+
+        /** Whether to request gzip responses and decompress them transparently. */
+        public Builder gzipEnabled(boolean gzipEnabled) {
+            this.gzipEnabled = gzipEnabled;
+            return this;
+        }
+    }
+
+    /** The settings used when none are given. */
+    public static final HttpClientSettings DEFAULT = new Builder().build();
+
+    private final Transport transport;
+    private final int connectTimeoutMillis;
+    private final int socketTimeoutMillis;
+    private final int maxTotalConnections;
+    private final int maxConnectionsPerRoute;
+    private final long keepAliveMillis;
+    private final long idleConnectionTimeoutMillis;
+    private final boolean gzipEnabled;
+
+    HttpClientSettings(Builder builder) {
+        this.transport = builder.transport;
+        this.connectTimeoutMillis = builder.connectTimeoutMillis;
+        this.socketTimeoutMillis = builder.socketTimeoutMillis;
+        this.maxTotalConnections = builder.maxTotalConnections;
+        this.maxConnectionsPerRoute = builder.maxConnectionsPerRoute;
+        this.keepAliveMillis = builder.keepAliveMillis;
+        this.idleConnectionTimeoutMillis = builder.idleConnectionTimeoutMillis;
+        this.gzipEnabled = builder.gzipEnabled;
+    }
+
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return this.connectTimeoutMillis;
+    }
+
+    public int getSocketTimeoutMillis() {
+        return this.socketTimeoutMillis;
+    }
+
+    public int getMaxTotalConnections() {
+        return this.maxTotalConnections;
+    }
+
+    public int getMaxConnectionsPerRoute() {
+        return this.maxConnectionsPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return this.keepAliveMillis;
+    }
+
+    public long getIdleConnectionTimeoutMillis() {
+        return this.idleConnectionTimeoutMillis;
+    }
+
+    public boolean isGzipEnabled() {
+        return this.gzipEnabled;
+    }
+}
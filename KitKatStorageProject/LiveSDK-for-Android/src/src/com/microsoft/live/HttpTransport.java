@@ -0,0 +1,33 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+import java.io.IOException;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+/**
+ * HttpTransport sends the HTTP requests made by the SDK. Every request goes through an
+ * HttpTransport, so that the underlying HTTP stack can be replaced.
+ *
+ * Implementations must be safe to use from several threads at once.
+ *
+ * @see HttpClientSettings.Builder#transport(HttpClientSettings.Transport)
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends the request and returns the response. The response's entity, if any, must be
+     * consumed or closed by the caller.
+     *
+     * @param request to send
+     * @return the response of the server
+     * @throws IOException if the request could not be sent or the response not be read
+     */
+    public HttpResponse execute(HttpUriRequest request) throws IOException;
+}
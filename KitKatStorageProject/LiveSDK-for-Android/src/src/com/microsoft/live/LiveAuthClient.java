@@ -12,7 +12,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 
 import android.app.Activity;
@@ -216,9 +215,9 @@ public class LiveAuthClient {
     /**
      * Responsible for all network (i.e., HTTP) calls.
      * Tests will want to change this to mock the network and HTTP responses.
-     * @see #setHttpClient(HttpClient)
+     * @see #setHttpTransport(HttpTransport)
      */
-    private HttpClient httpClient;
+    private HttpTransport httpTransport;
 
     /** saved from initialize and used in the login call if login's scopes are null. */
     private Set<String> scopesFromInitialize;
@@ -227,7 +226,7 @@ public class LiveAuthClient {
     private final LiveConnectSession session;
 
     {
-        this.httpClient = new DefaultHttpClient();
+        this.httpTransport = new ApacheHttpTransport(new DefaultHttpClient());
         this.hasPendingLoginRequest = false;
         this.session = new LiveConnectSession(this);
     }
@@ -312,7 +311,7 @@ public class LiveAuthClient {
         }
 
         RefreshAccessTokenRequest request =
-                new RefreshAccessTokenRequest(this.httpClient,
+                new RefreshAccessTokenRequest(this.httpTransport,
                                               this.clientId,
                                               refreshToken,
                                               TextUtils.join(OAuth.SCOPE_DELIMITER, scopes));
@@ -437,7 +436,7 @@ public class LiveAuthClient {
         String scope = TextUtils.join(OAuth.SCOPE_DELIMITER, scopes);
         String redirectUri = Config.INSTANCE.getOAuthDesktopUri().toString();
         AuthorizationRequest request = new AuthorizationRequest(activity,
-                                                                this.httpClient,
+                                                                this.httpTransport,
                                                                 this.clientId,
                                                                 redirectUri,
                                                                 scope);
@@ -522,9 +521,9 @@ public class LiveAuthClient {
         listener.onAuthComplete(LiveStatus.UNKNOWN, null, userState);
     }
 
-    /** @return The {@link HttpClient} instance used by this {@code LiveAuthClient}. */
-    HttpClient getHttpClient() {
-        return this.httpClient;
+    /** @return The {@link HttpTransport} instance used by this {@code LiveAuthClient}. */
+    HttpTransport getHttpTransport() {
+        return this.httpTransport;
     }
 
     /** @return The {@link LiveConnectSession} instance that this {@code LiveAuthClient} created. */
@@ -546,7 +545,7 @@ public class LiveAuthClient {
         }
 
         RefreshAccessTokenRequest request =
-                new RefreshAccessTokenRequest(this.httpClient, this.clientId, refreshToken, scope);
+                new RefreshAccessTokenRequest(this.httpTransport, this.clientId, refreshToken, scope);
 
         OAuthResponse response;
         try {
@@ -563,13 +562,13 @@ public class LiveAuthClient {
     }
 
     /**
-     * Sets the {@link HttpClient} that is used for HTTP requests by this {@code LiveAuthClient}.
-     * Tests will want to change this to mock the network/HTTP responses.
-     * @param client The new HttpClient to be set.
+     * Sets the {@link HttpTransport} that is used for HTTP requests by this
+     * {@code LiveAuthClient}. Tests will want to change this to mock the network/HTTP responses.
+     * @param transport The new HttpTransport to be set.
      */
-    void setHttpClient(HttpClient client) {
-        assert client != null;
-        this.httpClient = client;
+    void setHttpTransport(HttpTransport transport) {
+        assert transport != null;
+        this.httpTransport = transport;
     }
 
     /**
@@ -29,21 +29,7 @@ import java.util.Map;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
-import org.apache.http.HttpVersion;
-import org.apache.http.client.HttpClient;
-import org.apache.http.conn.ClientConnectionManager;
-import org.apache.http.conn.params.ConnManagerParams;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HTTP;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -83,7 +69,12 @@ public class LiveConnectClient {
                 return;
             }
 
-            int contentLength = Integer.valueOf(header.getValue());
+            long contentLength;
+            try {
+                contentLength = Long.parseLong(header.getValue().trim());
+            } catch (NumberFormatException e) {
+                return;
+            }
 
             this.operation.setContentLength(contentLength);
         }
@@ -123,7 +114,7 @@ public class LiveConnectClient {
      * method on the given {@link LiveDownloadOperationListener} on a given event. When the download
      * is complete this writes the results to a file, and publishes progress updates.
      */
-    private static class FileDownloadObserver extends AsyncTask<InputStream, Integer, Runnable>
+    private static class FileDownloadObserver extends AsyncTask<InputStream, Long, Runnable>
                                               implements ApiRequestAsync.Observer<InputStream> {
         private class OnErrorRunnable implements Runnable {
             private final LiveOperationException exception;
@@ -170,8 +161,8 @@ public class LiveConnectClient {
             }
 
             try {
-                int totalBytes = operation.getContentLength();
-                int bytesRemaining = totalBytes;
+                long totalBytes = operation.getContentLengthLong();
+                long bytesRemaining = totalBytes;
 
                 int bytesRead;
                 while ((bytesRead = is.read(buffer)) != -1) {
@@ -203,15 +194,22 @@ public class LiveConnectClient {
         }
 
         @Override
-        protected void onProgressUpdate(Integer... values) {
-            int totalBytes = values[0];
-            int bytesRemaining = values[1];
+        protected void onProgressUpdate(Long... values) {
+            long totalBytes = values[0];
+            long bytesRemaining = values[1];
 
-            assert totalBytes >= 0;
-            assert bytesRemaining >= 0;
+            assert totalBytes >= 0L;
+            assert bytesRemaining >= 0L;
             assert totalBytes >= bytesRemaining;
 
-            listener.onDownloadProgress(totalBytes, bytesRemaining, operation);
+            // The listener takes ints. Scale files over 2 GB down so that the ratio is kept.
+            int shift = 0;
+            while ((totalBytes >> shift) > Integer.MAX_VALUE) {
+                ++shift;
+            }
+            listener.onDownloadProgress((int) (totalBytes >> shift),
+                                        (int) (bytesRemaining >> shift),
+                                        operation);
         }
 
         @Override
@@ -262,9 +260,11 @@ public class LiveConnectClient {
         public static final String DESTINATION = "destination";
         public static final String FILE = "file";
         public static final String FILENAME = "filename";
+        public static final String LISTENER = "listener";
         public static final String OVERWRITE = "overwrite";
         public static final String PATH = "path";
         public static final String SESSION = "session";
+        public static final String UPLOAD_SESSION = "uploadSession";
 
         private ParamNames() { throw new AssertionError(ErrorMessages.NON_INSTANTIABLE_CLASS); }
     }
@@ -334,13 +334,13 @@ public class LiveConnectClient {
     }
 
     private static int BUFFER_SIZE = 1 << 10;
-    private static int CONNECT_TIMEOUT_IN_MS = 30 * 1000;
 
     /** The key used for HTTP MOVE and HTTP COPY requests. */
     private static final String DESTINATION_KEY = "destination";
 
-    private static volatile HttpClient HTTP_CLIENT;
-    private static Object HTTP_CLIENT_LOCK = new Object();
+    private static volatile HttpTransport HTTP_TRANSPORT;
+    private static HttpClientSettings HTTP_CLIENT_SETTINGS = HttpClientSettings.DEFAULT;
+    private static Object HTTP_TRANSPORT_LOCK = new Object();
 
     /**
      * A LiveDownloadOperationListener that does nothing on each of the call backs.
@@ -363,8 +363,6 @@ public class LiveConnectClient {
      */
     private static final LiveUploadOperationListener NULL_UPLOAD_OPERATION_LISTENER;
 
-    private static int SOCKET_TIMEOUT_IN_MS = 30 * 1000;
-
     static {
         NULL_DOWNLOAD_OPERATION_LISTENER = new LiveDownloadOperationListener() {
             @Override
@@ -498,37 +496,33 @@ public class LiveConnectClient {
         return new JSONObject(tempBody);
     }
 
-    private static HttpClient getHttpClient() {
-        // The LiveConnectClients can share one HttpClient with a ThreadSafeConnManager.
-        if (HTTP_CLIENT == null) {
-            synchronized (HTTP_CLIENT_LOCK) {
-                if (HTTP_CLIENT == null) {
-                    HttpParams params = new BasicHttpParams();
-                    HttpConnectionParams.setConnectionTimeout(params, CONNECT_TIMEOUT_IN_MS);
-                    HttpConnectionParams.setSoTimeout(params, SOCKET_TIMEOUT_IN_MS);
-
-                    ConnManagerParams.setMaxTotalConnections(params, 100);
-                    HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
-
-                    SchemeRegistry schemeRegistry = new SchemeRegistry();
-                    schemeRegistry.register(new Scheme("http",
-                                                       PlainSocketFactory.getSocketFactory(),
-                                                       80));
-                    schemeRegistry.register(new Scheme("https",
-                                                       SSLSocketFactory.getSocketFactory(),
-                                                       443));
-
-                    // Create an HttpClient with the ThreadSafeClientConnManager.
-                    // This connection manager must be used if more than one thread will
-                    // be using the HttpClient, which is a common scenario.
-                    ClientConnectionManager cm =
-                            new ThreadSafeClientConnManager(params, schemeRegistry);
-                    HTTP_CLIENT = new DefaultHttpClient(cm, params);
+    private static HttpTransport getHttpTransport() {
+        // The LiveConnectClients can share one thread safe HttpTransport.
+        if (HTTP_TRANSPORT == null) {
+            synchronized (HTTP_TRANSPORT_LOCK) {
+                if (HTTP_TRANSPORT == null) {
+                    HTTP_TRANSPORT = HttpClientFactory.newHttpTransport(HTTP_CLIENT_SETTINGS);
                 }
             }
         }
 
-        return HTTP_CLIENT;
+        return HTTP_TRANSPORT;
+    }
+
+    /**
+     * Sets how the HttpTransport shared by LiveConnectClients is configured.
+     * Only LiveConnectClients constructed after this call use the new settings.
+     *
+     * @param settings to configure the shared HttpTransport with.
+     * @throws NullPointerException if settings is null.
+     */
+    public static void setHttpClientSettings(HttpClientSettings settings) {
+        LiveConnectUtils.assertNotNull(settings, "settings");
+
+        synchronized (HTTP_TRANSPORT_LOCK) {
+            HTTP_CLIENT_SETTINGS = settings;
+            HTTP_TRANSPORT = null;
+        }
     }
 
     /**
@@ -602,7 +596,7 @@ public class LiveConnectClient {
     }
 
     /** Change this to mock the HTTP responses. */
-    private HttpClient httpClient;
+    private HttpTransport httpTransport;
 
     private final LiveConnectSession session;
     private SessionState sessionState;
@@ -638,7 +632,7 @@ public class LiveConnectClient {
             }
         });
 
-        this.httpClient = getHttpClient();
+        this.httpTransport = getHttpTransport();
     }
 
     /**
@@ -737,7 +731,7 @@ public class LiveConnectClient {
     public LiveOperation delete(String path) throws LiveOperationException {
         assertValidRelativePath(path);
 
-        DeleteRequest request = new DeleteRequest(this.session, this.httpClient, path);
+        DeleteRequest request = new DeleteRequest(this.session, this.httpTransport, path);
 
         return execute(request);
     }
@@ -785,7 +779,7 @@ public class LiveConnectClient {
             listener = NULL_OPERATION_LISTENER;
         }
 
-        DeleteRequest request = new DeleteRequest(this.session, this.httpClient, path);
+        DeleteRequest request = new DeleteRequest(this.session, this.httpTransport, path);
 
 
         return executeAsync(request, listener, userState);
@@ -801,9 +795,38 @@ public class LiveConnectClient {
      * @throws NullPointerException if the path is null.
      */
     public LiveDownloadOperation download(String path) throws LiveOperationException {
+        return this.download(path, 0L, -1L);
+    }
+
+    /**
+     * Downloads a range of a resource by performing a synchronous HTTP GET with a Range header
+     * on the Live Connect REST API that returns the response as an {@link java.io.InputStream}.
+     *
+     * Use this to continue an interrupted download, or to read part of a large file without
+     * downloading what comes before it. The stream starts at offset even if the server does
+     * not support ranges.
+     *
+     * @param path object_id of the resource to download.
+     * @param offset of the first byte to download. It must be less than the size of the resource.
+     * @param length number of bytes to download, or -1 to download to the end.
+     * @throws LiveOperationException if there is an error during the execution of the request.
+     * @throws IllegalArgumentException if the path is empty or an invalid uri, or the range is
+     *         invalid.
+     * @throws NullPointerException if the path is null.
+     */
+    public LiveDownloadOperation download(String path,
+                                          long offset,
+                                          long length) throws LiveOperationException {
         assertValidPath(path);
+        if (offset < 0L || length < -1L) {
+            throw new IllegalArgumentException("Invalid range " + offset + "+" + length);
+        }
 
-        DownloadRequest request = new DownloadRequest(this.session, this.httpClient, path);
+        DownloadRequest request = new DownloadRequest(this.session,
+                                                      this.httpTransport,
+                                                      path,
+                                                      offset,
+                                                      length);
 
         LiveDownloadOperation operation =
                 new LiveDownloadOperation.Builder(request.getMethod(), request.getPath()).build();
@@ -870,7 +893,7 @@ public class LiveConnectClient {
             listener = NULL_DOWNLOAD_OPERATION_LISTENER;
         }
 
-        DownloadRequest request = new DownloadRequest(this.session, this.httpClient, path);
+        DownloadRequest request = new DownloadRequest(this.session, this.httpTransport, path);
         return executeAsync(request, listener, userState);
     }
 
@@ -889,7 +912,7 @@ public class LiveConnectClient {
             listener = NULL_DOWNLOAD_OPERATION_LISTENER;
         }
 
-        DownloadRequest request = new DownloadRequest(this.session, this.httpClient, path);
+        DownloadRequest request = new DownloadRequest(this.session, this.httpTransport, path);
         ApiRequestAsync<InputStream> asyncRequest = ApiRequestAsync.newInstance(request);
 
         LiveDownloadOperation operation =
@@ -920,10 +943,40 @@ public class LiveConnectClient {
     public LiveOperation get(String path) throws LiveOperationException {
         assertValidRelativePath(path);
 
-        GetRequest request = new GetRequest(this.session, this.httpClient, path);
+        GetRequest request = new GetRequest(this.session, this.httpTransport, path);
         return execute(request);
     }
 
+    /**
+     * Performs a synchronous HTTP GET on the Live Connect REST API, and returns the JSON
+     * response body as an {@link java.io.InputStream} instead of parsing it.
+     *
+     * Use this for large responses that the caller decodes incrementally. Errors are
+     * returned in the body with an "error" key, the same as {@link #get(String)}.
+     * The caller must close the stream.
+     *
+     * @param path object_id of the resource to retrieve.
+     * @return The LiveDownloadOperation that contains the response body.
+     * @throws LiveOperationException if there is an error during the execution of the request.
+     * @throws IllegalArgumentException if the path is empty or an absolute uri.
+     * @throws NullPointerException if the path is null.
+     */
+    public LiveDownloadOperation getStream(String path) throws LiveOperationException {
+        assertValidRelativePath(path);
+
+        GetStreamRequest request = new GetStreamRequest(this.session, this.httpTransport, path);
+
+        LiveDownloadOperation operation =
+                new LiveDownloadOperation.Builder(request.getMethod(), request.getPath()).build();
+
+        request.addObserver(new ContentLengthObserver(operation));
+
+        InputStream stream = request.execute();
+        operation.setStream(stream);
+
+        return operation;
+    }
+
     /**
      * Performs an asynchronous HTTP GET on the Live Connect REST API.
      *
@@ -961,7 +1014,7 @@ public class LiveConnectClient {
             listener = NULL_OPERATION_LISTENER;
         }
 
-        GetRequest request = new GetRequest(this.session, this.httpClient, path);
+        GetRequest request = new GetRequest(this.session, this.httpTransport, path);
         return executeAsync(request, listener, userState);
     }
 
@@ -1479,6 +1532,52 @@ public class LiveConnectClient {
         return execute(request);
     }
 
+    /**
+     * Uploads a resource in chunks, so that an interrupted upload can be continued from the
+     * last chunk the server acknowledged instead of starting over.
+     *
+     * The state of the upload is reported to the listener after every chunk. To continue an
+     * interrupted upload, pass a {@link LiveUploadSession} constructed from the last reported
+     * state. Files that fit in a single chunk are uploaded as
+     * {@link #upload(String, String, File, OverwriteOption)} does.
+     *
+     * @param path location to upload to.
+     * @param filename name of the new resource.
+     * @param file contents of the upload. It must not change until the upload completes.
+     * @param overwrite specifies what to do when a file with the same name exists.
+     * @param uploadSession state of the upload, updated as chunks are acknowledged.
+     * @param listener called on the calling thread whenever the state changes.
+     * @return a LiveOperation that contains the JSON result.
+     * @throws LiveOperationException if there is an error during the execution of the request.
+     */
+    public LiveOperation upload(String path,
+                                String filename,
+                                File file,
+                                OverwriteOption overwrite,
+                                LiveUploadSession uploadSession,
+                                LiveUploadSessionListener listener) throws LiveOperationException {
+        assertValidPath(path);
+        LiveConnectUtils.assertNotNullOrEmpty(filename, ParamNames.FILENAME);
+        LiveConnectUtils.assertNotNull(file, ParamNames.FILE);
+        LiveConnectUtils.assertNotNull(overwrite, ParamNames.OVERWRITE);
+        LiveConnectUtils.assertNotNull(uploadSession, ParamNames.UPLOAD_SESSION);
+        LiveConnectUtils.assertNotNull(listener, ParamNames.LISTENER);
+
+        if (file.length() <= ResumableUploadRequest.CHUNK_SIZE) {
+            return this.upload(path, filename, file, overwrite);
+        }
+
+        ResumableUploadRequest request = new ResumableUploadRequest(this.session,
+                                                                    this.httpTransport,
+                                                                    path,
+                                                                    filename,
+                                                                    file,
+                                                                    overwrite,
+                                                                    uploadSession,
+                                                                    listener);
+        return execute(request);
+    }
+
     /**
      * Uploads a resource by performing an asynchronous HTTP PUT on the Live Connect REST API that
      * returns the response as an {@link java.io.InputStream}.
@@ -1742,15 +1841,15 @@ public class LiveConnectClient {
     }
 
     /**
-     * Sets the HttpClient that is used in requests.
+     * Sets the HttpTransport that is used in requests.
      *
      * This is here to be able to mock the server for testing purposes.
      *
-     * @param client
+     * @param transport
      */
-    void setHttpClient(HttpClient client) {
-        assert client != null;
-        this.httpClient = client;
+    void setHttpTransport(HttpTransport transport) {
+        assert transport != null;
+        this.httpTransport = transport;
     }
 
     /**
@@ -1767,7 +1866,7 @@ public class LiveConnectClient {
 
         JSONObject body = LiveConnectClient.createJsonBody(DESTINATION_KEY, destination);
         HttpEntity entity = createJsonEntity(body);
-        return new CopyRequest(this.session, this.httpClient, path, entity);
+        return new CopyRequest(this.session, this.httpTransport, path, entity);
     }
 
     private JsonEntity createJsonEntity(JSONObject body) throws LiveOperationException {
@@ -1787,7 +1886,7 @@ public class LiveConnectClient {
 
         JSONObject body = LiveConnectClient.createJsonBody(DESTINATION_KEY, destination);
         HttpEntity entity = createJsonEntity(body);
-        return new MoveRequest(this.session, this.httpClient, path, entity);
+        return new MoveRequest(this.session, this.httpTransport, path, entity);
     }
 
     private PostRequest createPostRequest(String path,
@@ -1796,7 +1895,7 @@ public class LiveConnectClient {
         assert body != null;
 
         HttpEntity entity = createJsonEntity(body);
-        return new PostRequest(this.session, this.httpClient, path, entity);
+        return new PostRequest(this.session, this.httpTransport, path, entity);
     }
 
     private PutRequest createPutRequest(String path,
@@ -1805,7 +1904,7 @@ public class LiveConnectClient {
         assert body != null;
 
         HttpEntity entity = createJsonEntity(body);
-        return new PutRequest(this.session, this.httpClient, path, entity);
+        return new PutRequest(this.session, this.httpTransport, path, entity);
     }
 
     private UploadRequest createUploadRequest(String path,
@@ -1819,7 +1918,7 @@ public class LiveConnectClient {
 
         InputStreamEntity entity = new InputStreamEntity(is, length);
 
-        return new UploadRequest(this.session, this.httpClient, path, entity, filename, overwrite);
+        return new UploadRequest(this.session, this.httpTransport, path, entity, filename, overwrite);
     }
 
     /**
@@ -61,7 +61,7 @@ public class LiveDownloadOperation {
     }
 
     private final ApiRequestAsync<InputStream> apiRequestAsync;
-    private int contentLength;
+    private long contentLength;
     private final String method;
     private final String path;
     private InputStream stream;
@@ -90,9 +90,18 @@ public class LiveDownloadOperation {
     }
 
     /**
-     * @return The length of the stream.
+     * @return The length of the stream, or -1 if it does not fit in an int.
+     * @deprecated Streams can be longer than 2 GB. Use {@link #getContentLengthLong()}.
      */
+    @Deprecated
     public int getContentLength() {
+        return this.contentLength > Integer.MAX_VALUE ? -1 : (int) this.contentLength;
+    }
+
+    /**
+     * @return The length of the stream. For a ranged download, the length of the range.
+     */
+    public long getContentLengthLong() {
         return this.contentLength;
     }
 
@@ -117,8 +126,8 @@ public class LiveDownloadOperation {
         return this.userState;
     }
 
-    void setContentLength(int contentLength) {
-        assert contentLength >= 0;
+    void setContentLength(long contentLength) {
+        assert contentLength >= 0L;
 
         this.contentLength = contentLength;
     }
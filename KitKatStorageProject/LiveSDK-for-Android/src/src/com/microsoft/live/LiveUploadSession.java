@@ -0,0 +1,52 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+/**
+ * LiveUploadSession is the state of a resumable upload: the URL the chunks are sent to and
+ * the number of bytes the server has acknowledged so far.
+ *
+ * Persist the values reported to {@link LiveUploadSessionListener} and pass them back in a
+ * new LiveUploadSession to continue an interrupted upload of the same file, even from
+ * another process.
+ */
+public class LiveUploadSession {
+
+    private String uploadUrl;
+    private long offset;
+
+    /** Constructs a LiveUploadSession that starts a new upload. */
+    public LiveUploadSession() {
+        this(null, 0L);
+    }
+
+    /**
+     * Constructs a LiveUploadSession that continues an earlier upload.
+     *
+     * @param uploadUrl of the earlier upload, or null to start a new one.
+     * @param offset number of bytes the server acknowledged.
+     */
+    public LiveUploadSession(String uploadUrl, long offset) {
+        this.uploadUrl = uploadUrl;
+        this.offset = uploadUrl == null ? 0L : offset;
+    }
+
+    /** @return the URL the chunks are sent to, or null if the upload has not started. */
+    public String getUploadUrl() {
+        return this.uploadUrl;
+    }
+
+    /** @return the number of bytes the server acknowledged. */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    void update(String uploadUrl, long offset) {
+        this.uploadUrl = uploadUrl;
+        this.offset = uploadUrl == null ? 0L : offset;
+    }
+}
@@ -0,0 +1,22 @@
+//------------------------------------------------------------------------------
+// Copyright (c) 2012 Microsoft Corporation. All rights reserved.
+//
+// Description: See the class level JavaDoc comments.
+//------------------------------------------------------------------------------
+
+package com.microsoft.live;
+
+/**
+ * Called while a resumable upload progresses, so that its {@link LiveUploadSession} can be
+ * persisted and the upload continued later.
+ */
+public interface LiveUploadSessionListener {
+
+    /**
+     * Called on the uploading thread when the session is created, when the server acknowledges
+     * a chunk, and when the session is discarded because the server no longer knows it.
+     *
+     * @param session the current state of the upload.
+     */
+    public void onSessionUpdated(LiveUploadSession session);
+}
@@ -0,0 +1,268 @@
+package com.microsoft.live;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+/**
+ * Measures the throughput of parallel {@link LiveConnectClient#get(String)} calls against a
+ * local server with an artificial latency, for different {@link HttpClientSettings} and
+ * {@link HttpTransport}s. The API uri is pointed at the local server for the duration of a test.
+ * The numbers are logged under the "HttpClientBenchmark" tag.
+ */
+public class HttpClientBenchmarkTest extends InstrumentationTestCase {
+
+    private static final String TAG = "HttpClientBenchmark";
+
+    private static final int THREADS = 8;
+    private static final int REQUESTS_PER_THREAD = 10;
+    private static final long LATENCY_MILLIS = 50;
+    private static final String BODY = "{\"id\":\"file.a6b2a7e8f2515e5e.A6B2A7E8F2515E5E!131\"}";
+    private static final String PATH = "me/skydrive";
+
+    private LatencyServer server;
+    private Uri apiUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.server = new LatencyServer(LATENCY_MILLIS);
+        this.server.start();
+        this.apiUri = Config.INSTANCE.getApiUri();
+        Config.INSTANCE.setApiUri(Uri.parse(this.server.getUri()));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Config.INSTANCE.setApiUri(this.apiUri);
+        this.server.close();
+        super.tearDown();
+    }
+
+    public void testParallelGetWithDefaultRouteLimit() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings.Builder()
+                .maxConnectionsPerRoute(2)
+                .gzipEnabled(false)
+                .build();
+
+        this.benchmark("maxConnectionsPerRoute=2", settings);
+    }
+
+    public void testParallelGetWithPooledConnections() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings.Builder()
+                .maxConnectionsPerRoute(THREADS)
+                .gzipEnabled(false)
+                .build();
+
+        this.benchmark("maxConnectionsPerRoute=" + THREADS, settings);
+
+        // Keep-alive lets the pool reuse its connections instead of opening one per request.
+        assertTrue(this.server.getAcceptedConnections() <= THREADS);
+    }
+
+    public void testParallelGetWithGzip() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings.Builder()
+                .maxConnectionsPerRoute(THREADS)
+                .gzipEnabled(true)
+                .build();
+
+        this.benchmark("maxConnectionsPerRoute=" + THREADS + ", gzip", settings);
+
+        assertEquals(THREADS * REQUESTS_PER_THREAD, this.server.getGzipResponses());
+        // Decompressing must not stop the connections from being reused.
+        assertTrue(this.server.getAcceptedConnections() <= THREADS);
+    }
+
+    public void testParallelGetWithUrlConnection() throws Exception {
+        HttpClientSettings settings = new HttpClientSettings.Builder()
+                .transport(HttpClientSettings.Transport.URL_CONNECTION)
+                .build();
+
+        this.benchmark("HttpURLConnection", settings);
+    }
+
+    private void benchmark(String name, HttpClientSettings settings) throws Exception {
+        HttpTransport transport = HttpClientFactory.newHttpTransport(settings);
+        final LiveConnectClient client = TestUtils.newLiveConnectClient(transport);
+
+        // Warm up, so that the first connection is not part of the measurement.
+        assertEquals(BODY, client.get(PATH).getRawResult());
+        this.server.resetGzipResponses();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Callable<Void> task = new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        LiveOperation operation = client.get(PATH);
+                        assertEquals(BODY, operation.getRawResult());
+                    }
+                    return null;
+                }
+            };
+
+            Future<?>[] futures = new Future<?>[THREADS];
+            long start = System.nanoTime();
+            for (int i = 0; i < THREADS; i++) {
+                futures[i] = executor.submit(task);
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            int requests = THREADS * REQUESTS_PER_THREAD;
+            Log.i(TAG, String.format("%s: %d requests in %d ms (%.1f requests/s), %d connections",
+                                     name,
+                                     requests,
+                                     elapsedMillis,
+                                     requests * 1000.0 / Math.max(elapsedMillis, 1),
+                                     this.server.getAcceptedConnections()));
+        } finally {
+            executor.shutdownNow();
+            if (transport instanceof ApacheHttpTransport) {
+                ((ApacheHttpTransport) transport).getHttpClient().getConnectionManager().shutdown();
+            }
+        }
+    }
+
+    /**
+     * A minimal HTTP/1.1 server that answers every GET with the same JSON body after a delay,
+     * and keeps connections alive.
+     */
+    private static class LatencyServer extends Thread {
+
+        private final ServerSocket serverSocket;
+        private final long latencyMillis;
+        private final ExecutorService workers = Executors.newCachedThreadPool();
+        private final AtomicInteger acceptedConnections = new AtomicInteger();
+        private final AtomicInteger gzipResponses = new AtomicInteger();
+
+        public LatencyServer(long latencyMillis) throws IOException {
+            super("LatencyServer");
+            this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            this.latencyMillis = latencyMillis;
+            this.setDaemon(true);
+        }
+
+        public String getUri() {
+            return "http://127.0.0.1:" + this.serverSocket.getLocalPort();
+        }
+
+        public int getAcceptedConnections() {
+            return this.acceptedConnections.get();
+        }
+
+        public int getGzipResponses() {
+            return this.gzipResponses.get();
+        }
+
+        public void resetGzipResponses() {
+            this.gzipResponses.set(0);
+        }
+
+        public void close() throws IOException {
+            this.serverSocket.close();
+            this.workers.shutdownNow();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Socket socket;
+                try {
+                    socket = this.serverSocket.accept();
+                } catch (IOException e) {
+                    return;
+                }
+
+                this.acceptedConnections.incrementAndGet();
+                try {
+                    // Headers and body are written separately, and Nagle would delay the body
+                    // on a reused connection.
+                    socket.setTcpNoDelay(true);
+                } catch (IOException ignore) {
+                }
+                this.workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            serve(socket);
+                        } catch (IOException e) {
+                            // The client closed the connection.
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException ignore) {
+                            }
+                        }
+                    }
+                });
+            }
+        }
+
+        private void serve(Socket socket) throws IOException {
+            BufferedReader in =
+                    new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = in.readLine()) != null) {
+                boolean gzip = false;
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    String lower = line.toLowerCase();
+                    if (lower.startsWith("accept-encoding:") && lower.contains("gzip")) {
+                        gzip = true;
+                    }
+                }
+
+                try {
+                    Thread.sleep(this.latencyMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                byte[] body = BODY.getBytes("UTF-8");
+                if (gzip) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gzipOut = new GZIPOutputStream(bytes);
+                    gzipOut.write(body);
+                    gzipOut.close();
+                    body = bytes.toByteArray();
+                    this.gzipResponses.incrementAndGet();
+                }
+
+                StringBuilder headers = new StringBuilder()
+                        .append("HTTP/1.1 200 OK\r\n")
+                        .append("Content-Type: application/json; charset=UTF-8\r\n")
+                        .append("Content-Length: ").append(body.length).append("\r\n")
+                        .append("Keep-Alive: timeout=30\r\n");
+                if (gzip) {
+                    headers.append("Content-Encoding: gzip\r\n");
+                }
+                headers.append("\r\n");
+
+                out.write(headers.toString().getBytes("US-ASCII"));
+                out.write(body);
+                out.flush();
+            }
+        }
+    }
+}
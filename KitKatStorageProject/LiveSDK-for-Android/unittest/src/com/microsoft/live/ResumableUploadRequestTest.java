@@ -0,0 +1,120 @@
+package com.microsoft.live;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicStatusLine;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.microsoft.live.constants.Paths;
+import com.microsoft.live.mock.MockHttpEntity;
+import com.microsoft.live.mock.MockHttpResponse;
+
+import android.test.InstrumentationTestCase;
+
+public class ResumableUploadRequestTest extends InstrumentationTestCase {
+
+    private static final String UPLOAD_URL = "http://test.com/session";
+
+    private static MockHttpResponse newJsonResponse(int statusCode, JSONObject body) {
+        MockHttpEntity entity =
+                new MockHttpEntity(new ByteArrayInputStream(body.toString().getBytes()));
+        BasicStatusLine status = new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, "");
+        return new MockHttpResponse(entity, status);
+    }
+
+    private static JSONObject newStatus(long nextOffset) throws Exception {
+        JSONObject status = new JSONObject();
+        status.put("nextExpectedRanges", new JSONArray().put(nextOffset + "-"));
+        return status;
+    }
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File cacheDir = getInstrumentation().getTargetContext().getCacheDir();
+        this.file = File.createTempFile("upload", null, cacheDir);
+        RandomAccessFile out = new RandomAccessFile(this.file, "rw");
+        try {
+            out.setLength(ResumableUploadRequest.CHUNK_SIZE + 100);
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        this.file.delete();
+        super.tearDown();
+    }
+
+    /**
+     * An interrupted upload continues from the offset the server reports, not from the
+     * persisted one, and does not open a new session.
+     */
+    public void testResumeFromServerOffset() throws Throwable {
+        final long total = this.file.length();
+        final long acknowledged = ResumableUploadRequest.CHUNK_SIZE;
+
+        HttpTransport client = new HttpTransport() {
+            @Override
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
+                assertEquals(UPLOAD_URL, request.getURI().toString());
+                assertNull(request.getFirstHeader("Authorization"));
+                try {
+                    if (HttpGet.METHOD_NAME.equals(request.getMethod())) {
+                        return newJsonResponse(HttpStatus.SC_OK, newStatus(acknowledged));
+                    }
+                    assertEquals(HttpPut.METHOD_NAME, request.getMethod());
+                    assertEquals("bytes " + acknowledged + "-" + (total - 1) + "/" + total,
+                                 request.getFirstHeader("Content-Range").getValue());
+
+                    JSONObject item = new JSONObject();
+                    item.put("id", "ABC!12");
+                    return newJsonResponse(HttpStatus.SC_CREATED, item);
+                } catch (Exception e) {
+                    throw new IOException(e.getMessage());
+                }
+            }
+        };
+
+        final List<Long> offsets = new ArrayList<Long>();
+        LiveUploadSessionListener listener = new LiveUploadSessionListener() {
+            @Override
+            public void onSessionUpdated(LiveUploadSession session) {
+                offsets.add(Long.valueOf(session.getOffset()));
+            }
+        };
+
+        LiveConnectSession session = TestUtils.newMockLiveConnectSession();
+        LiveUploadSession uploadSession = new LiveUploadSession(UPLOAD_URL, 0L);
+        ResumableUploadRequest request = new ResumableUploadRequest(session,
+                                                                    client,
+                                                                    Paths.ME_SKYDRIVE,
+                                                                    "filename",
+                                                                    this.file,
+                                                                    OverwriteOption.Overwrite,
+                                                                    uploadSession,
+                                                                    listener);
+
+        JSONObject result = request.execute();
+
+        assertEquals("file.abc.ABC!12", result.getString("id"));
+        assertEquals(2, offsets.size());
+        assertEquals(acknowledged, offsets.get(0).longValue());
+        assertNull(uploadSession.getUploadUrl());
+    }
+}
@@ -4,8 +4,6 @@ package com.microsoft.live;
 import java.util.Arrays;
 import java.util.Calendar;
 
-import org.apache.http.client.HttpClient;
-
 import android.content.Context;
 import android.test.mock.MockApplication;
 
@@ -42,10 +40,10 @@ public final class TestUtils {
         return session;
     }
 
-    public static LiveConnectClient newLiveConnectClient(HttpClient client) {
+    public static LiveConnectClient newLiveConnectClient(HttpTransport transport) {
         LiveConnectSession session = TestUtils.newMockLiveConnectSession();
         LiveConnectClient liveClient = new LiveConnectClient(session);
-        liveClient.setHttpClient(client);
+        liveClient.setHttpTransport(transport);
 
         return liveClient;
     }
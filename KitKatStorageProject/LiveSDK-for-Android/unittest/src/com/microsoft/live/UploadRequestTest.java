@@ -4,21 +4,17 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.message.BasicStatusLine;
-import org.apache.http.params.HttpParams;
-import org.apache.http.protocol.HttpContext;
 import org.json.JSONObject;
 
 import com.microsoft.live.constants.JsonKeys;
@@ -29,7 +25,21 @@ import com.microsoft.live.mock.MockHttpResponse;
 import android.test.InstrumentationTestCase;
 
 public class UploadRequestTest extends InstrumentationTestCase {
-    
+
+    private LiveConnectSession session;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.session = TestUtils.newMockLiveConnectSession();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        UploadLocationCache.INSTANCE.clear();
+        super.tearDown();
+    }
+
     /**
      * WinLive 633441: Make sure the query parameters on path get sent to
      * the HTTP PUT part of the upload.
@@ -43,13 +53,12 @@ public class UploadRequestTest extends InstrumentationTestCase {
         BasicStatusLine ok = new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "");
         final MockHttpResponse uploadLocationResponse = new MockHttpResponse(responseEntity, ok);
         
-        HttpClient client = new HttpClient() {
+        HttpTransport client = new HttpTransport() {
             /** the first request to the client is the upload location request. */
             boolean uploadLocationRequest = true;
             
             @Override
-            public HttpResponse execute(HttpUriRequest request)
-                    throws IOException, ClientProtocolException {
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
                 
                 if (uploadLocationRequest) {
                     uploadLocationRequest = false;
@@ -65,47 +74,6 @@ public class UploadRequestTest extends InstrumentationTestCase {
                 // just return the previous reponse.
                 return uploadLocationResponse;
             }
-            
-            @Override
-            public HttpResponse execute(HttpUriRequest request, HttpContext context) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public HttpResponse execute(HttpHost target, HttpRequest request) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public <T> T execute(HttpUriRequest arg0, ResponseHandler<? extends T> arg1) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            } 
-            
-            @Override
-            public HttpResponse execute(HttpHost target, HttpRequest request, HttpContext context) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public <T> T execute(HttpUriRequest arg0, ResponseHandler<? extends T> arg1, HttpContext arg2) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public <T> T execute(HttpHost arg0, HttpRequest arg1, ResponseHandler<? extends T> arg2) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            }
-
-            @Override
-            public <T> T execute(HttpHost arg0, HttpRequest arg1, ResponseHandler<? extends T> arg2, HttpContext arg3) throws IOException, ClientProtocolException {
-                throw new UnsupportedOperationException();
-            } 
-            
-            @Override
-            public ClientConnectionManager getConnectionManager() { throw new UnsupportedOperationException(); }
-
-            @Override
-            public HttpParams getParams() { throw new UnsupportedOperationException(); }
         };
         
         LiveConnectSession session = TestUtils.newMockLiveConnectSession();
@@ -119,4 +87,59 @@ public class UploadRequestTest extends InstrumentationTestCase {
         
         uploadRequest.execute();
     }
+
+    public void testRetryWithFreshLocationWhenCachedLocationIsGone() throws Throwable {
+        List<String> methods = executeWithCachedLocation(HttpStatus.SC_NOT_FOUND);
+
+        assertEquals(3, methods.size());
+        assertEquals(HttpGet.METHOD_NAME, methods.get(1));
+        assertEquals("http://test.com/fresh",
+                     UploadLocationCache.INSTANCE.get(this.session, Paths.ME_SKYDRIVE));
+    }
+
+    public void testDoNotRetryWhenCachedLocationFailsForAnotherReason() throws Throwable {
+        List<String> methods = executeWithCachedLocation(HttpStatus.SC_CONFLICT);
+
+        assertEquals(1, methods.size());
+        assertEquals("http://test.com/cached",
+                     UploadLocationCache.INSTANCE.get(this.session, Paths.ME_SKYDRIVE));
+    }
+
+    /**
+     * Uploads to a folder whose cached upload location answers with the given status code,
+     * and a freshly fetched one succeeds.
+     *
+     * @return the methods of the requests sent
+     */
+    private List<String> executeWithCachedLocation(final int cachedStatusCode) throws Throwable {
+        UploadLocationCache.INSTANCE.put(this.session, Paths.ME_SKYDRIVE, "http://test.com/cached");
+
+        final List<String> methods = new ArrayList<String>();
+        HttpTransport client = new HttpTransport() {
+            @Override
+            public HttpResponse execute(HttpUriRequest request) throws IOException {
+                methods.add(request.getMethod());
+                if (request.getURI().toString().startsWith("http://test.com/cached")) {
+                    return newResponse(cachedStatusCode, "{\"error\": {}}");
+                }
+                if (HttpGet.METHOD_NAME.equals(request.getMethod())) {
+                    return newResponse(HttpStatus.SC_OK,
+                                       "{\"" + JsonKeys.UPLOAD_LOCATION + "\": \"http://test.com/fresh\"}");
+                }
+                return newResponse(HttpStatus.SC_CREATED, "{\"id\": \"file.1\"}");
+            }
+        };
+
+        HttpEntity entity = new ByteArrayEntity(new byte[1]);
+        UploadRequest uploadRequest =
+                new UploadRequest(this.session, client, Paths.ME_SKYDRIVE, entity, "filename", OverwriteOption.Rename);
+        uploadRequest.execute();
+        return methods;
+    }
+
+    private static HttpResponse newResponse(int statusCode, String body) {
+        InputStream responseStream = new ByteArrayInputStream(body.getBytes());
+        BasicStatusLine statusLine = new BasicStatusLine(HttpVersion.HTTP_1_1, statusCode, "");
+        return new MockHttpResponse(new MockHttpEntity(responseStream), statusLine);
+    }
 }